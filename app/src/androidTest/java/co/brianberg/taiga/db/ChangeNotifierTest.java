@@ -0,0 +1,52 @@
+package co.brianberg.taiga.db;
+
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ChangeNotifierTest extends AndroidTestCase {
+
+  private static final String TABLE = "change_notifier_test";
+
+  private TableChange mReceived;
+
+  private boolean mOnMainThread;
+
+  private boolean mUnregisteredCalled;
+
+  public void testDeliversChangesOnMainThread() throws Exception {
+    final CountDownLatch delivered = new CountDownLatch(1);
+    ChangeNotifier.Listener listener = new ChangeNotifier.Listener() {
+      @Override
+      public void onChange(TableChange change) {
+        mReceived = change;
+        mOnMainThread = Looper.myLooper() == Looper.getMainLooper();
+        delivered.countDown();
+      }
+    };
+    ChangeNotifier.Listener unregistered = new ChangeNotifier.Listener() {
+      @Override
+      public void onChange(TableChange change) {
+        mUnregisteredCalled = true;
+      }
+    };
+    ChangeNotifier notifier = ChangeNotifier.getInstance();
+    notifier.register(TABLE, listener);
+    notifier.register(TABLE, unregistered);
+    notifier.unregister(TABLE, unregistered);
+    try {
+      notifier.publish(TableChange.updated(TABLE, 42));
+      assertTrue(delivered.await(5, TimeUnit.SECONDS));
+    } finally {
+      notifier.unregister(TABLE, listener);
+    }
+    assertTrue(mOnMainThread);
+    assertFalse(mUnregisteredCalled);
+    assertTrue(mReceived.getUpdated().contains(42));
+    assertTrue(mReceived.getChanged().contains(42));
+    assertTrue(mReceived.getInserted().isEmpty());
+  }
+
+}
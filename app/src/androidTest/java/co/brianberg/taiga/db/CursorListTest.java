@@ -0,0 +1,59 @@
+package co.brianberg.taiga.db;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+public class CursorListTest extends AndroidTestCase {
+
+  private int mConversions;
+
+  public void testConvertsRowsOnAccess() throws Exception {
+    CursorList<String> list = new CursorList<>(createCursor(100), new CursorList.RowMapper<String>() {
+      @Override
+      public String fromCursor(Cursor cursor) {
+        mConversions++;
+        return cursor.getString(0);
+      }
+    }, 10);
+    assertEquals(100, list.size());
+    assertEquals(0, mConversions);
+
+    assertEquals("row 42", list.get(42));
+    assertEquals("row 42", list.get(42));
+    assertEquals(1, mConversions);
+
+    // Rows evicted from the cache are converted again
+    for (int i = 0; i < 20; i++) {
+      list.get(i);
+    }
+    list.get(42);
+    assertEquals(22, mConversions);
+    list.close();
+  }
+
+  public void testRejectsInvalidIndex() throws Exception {
+    CursorList<String> list = new CursorList<>(createCursor(3), new CursorList.RowMapper<String>() {
+      @Override
+      public String fromCursor(Cursor cursor) {
+        return cursor.getString(0);
+      }
+    });
+    try {
+      list.get(3);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // Expected
+    }
+    list.close();
+  }
+
+  private static Cursor createCursor(int rows) {
+    MatrixCursor cursor = new MatrixCursor(new String[] { "name" });
+    for (int i = 0; i < rows; i++) {
+      cursor.addRow(new Object[] { "row " + i });
+    }
+    return cursor;
+  }
+
+}
@@ -0,0 +1,62 @@
+package co.brianberg.taiga.db;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+public class CursorPageListTest extends AndroidTestCase {
+
+  private static final CursorList.RowMapper<String> MAPPER = new CursorList.RowMapper<String>() {
+    @Override
+    public String fromCursor(Cursor cursor) {
+      return cursor.getString(1);
+    }
+  };
+
+  public void testReadsRowsAcrossPages() throws Exception {
+    CursorPageList<String> list = new CursorPageList<>();
+    list.addPage(createPage(0, 3));
+    list.addPage(createPage(3, 0));
+    list.addPage(createPage(3, 2));
+    assertEquals(5, list.size());
+    assertEquals("row 0", list.get(0));
+    assertEquals("row 2", list.get(2));
+    assertEquals("row 3", list.get(3));
+    assertEquals("row 4", list.get(4));
+    assertEquals(3, list.getPageStart(2));
+    assertEquals(4, list.getPage(2).getItemId(1));
+    list.close();
+  }
+
+  public void testReplacesPage() throws Exception {
+    CursorPageList<String> list = new CursorPageList<>();
+    list.addPage(createPage(0, 2));
+    list.addPage(createPage(2, 2));
+    CursorList<String> replaced = list.getPage(0);
+    list.setPage(0, createPage(10, 3));
+    assertTrue(isClosed(replaced));
+    assertEquals(5, list.size());
+    assertEquals("row 12", list.get(2));
+    assertEquals("row 2", list.get(3));
+    assertEquals(3, list.getPageStart(1));
+    list.close();
+  }
+
+  private static boolean isClosed(CursorList<String> page) {
+    try {
+      page.get(0);
+      return false;
+    } catch (IllegalStateException e) {
+      return true;
+    }
+  }
+
+  private static CursorList<String> createPage(int first, int rows) {
+    MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "name" });
+    for (int i = first; i < first + rows; i++) {
+      cursor.addRow(new Object[] { i, "row " + i });
+    }
+    return new CursorList<>(cursor, MAPPER);
+  }
+
+}
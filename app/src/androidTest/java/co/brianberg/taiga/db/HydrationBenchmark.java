@@ -0,0 +1,168 @@
+package co.brianberg.taiga.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Date;
+import java.util.List;
+
+import co.brianberg.taiga.db.project.Project;
+import co.brianberg.taiga.db.project.ProjectManager;
+import co.brianberg.taiga.db.timeline.TimelineEntry;
+import co.brianberg.taiga.db.timeline.TimelineEntryManager;
+import co.brianberg.taiga.json.JsonCodec;
+
+/**
+ * Measures the rows hydrated per second and the bytes allocated per row when
+ * reading timeline entries and projects, comparing the manager hydration with
+ * the plain getString and JSON decoding it replaced. Results are logged:
+ *
+ *   adb logcat -s HydrationBenchmark
+ */
+public class HydrationBenchmark extends AndroidTestCase {
+
+  private static final String TAG = HydrationBenchmark.class.getSimpleName();
+
+  private static final int ROWS = 2000;
+
+  private static final int PASSES = 10;
+
+  private static final int MEMBERS = 50;
+
+  private static final String TIMELINE_QUERY = "SELECT timeline_entry._id, content_type, event_type, " +
+      "created_date, project, user_id, item_kind, item_id, item_ref, item_subject, member.name, member.photo " +
+      "FROM timeline_entry LEFT JOIN member ON member._id = timeline_entry.user_id";
+
+  private SQLiteDatabase mDb;
+
+  private Object mSink;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    mDb = SQLiteDatabase.create(null);
+    DatabaseHelper.createSchema(mDb);
+    mDb.execSQL("CREATE TABLE project_json(_id INTEGER PRIMARY KEY, name TEXT NOT NULL, description TEXT, " +
+        "tags TEXT, logo_small TEXT, logo_big TEXT, private INTEGER NOT NULL)");
+    String[] kinds = { TimelineEntry.ITEM_USER_STORY, TimelineEntry.ITEM_TASK, TimelineEntry.ITEM_ISSUE };
+    mDb.beginTransaction();
+    try {
+      for (int i = 0; i < MEMBERS; i++) {
+        mDb.execSQL("INSERT INTO member(_id, name, photo) VALUES(?, ?, ?)",
+            new Object[] { i, "Member " + i, "//media.taiga.io/member-" + i + ".png" });
+      }
+      for (int i = 0; i < ROWS; i++) {
+        String kind = kinds[i % kinds.length];
+        mDb.execSQL("INSERT INTO project(_id, name, description, logo_small, logo_big, private) " +
+            "VALUES(?, ?, ?, NULL, NULL, 0)", new Object[] { i, "Project " + i, "Description of project " + i });
+        mDb.execSQL("INSERT INTO project_tag(project, position, name) VALUES(?, 0, ?)",
+            new Object[] { i, "tag " + (i % 20) });
+        mDb.execSQL("INSERT INTO project_tag(project, position, name) VALUES(?, 1, ?)",
+            new Object[] { i, "tag " + (i % 7) });
+        mDb.execSQL("INSERT INTO project_json(_id, name, description, tags, logo_small, logo_big, private) " +
+            "VALUES(?, ?, ?, ?, NULL, NULL, 0)", new Object[] { i, "Project " + i, "Description of project " + i,
+            "[\"tag " + (i % 20) + "\",\"tag " + (i % 7) + "\"]" });
+        mDb.execSQL("INSERT INTO timeline_entry(_id, content_type, event_type, created_date, project, " +
+            "user_id, item_kind, item_id, item_ref, item_subject) VALUES(?, 35, ?, ?, 0, ?, ?, ?, ?, ?)",
+            new Object[] { i, kind + "s." + kind + ".change", 1470000000000L + i * 60000L, i % MEMBERS, kind, i,
+                i, "Subject " + i });
+      }
+      mDb.setTransactionSuccessful();
+    } finally {
+      mDb.endTransaction();
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    mDb.close();
+    super.tearDown();
+  }
+
+  public void testTimelineEntryHydration() throws Exception {
+    final TimelineEntryManager manager = new TimelineEntryManager(getContext());
+    measure("timeline getString", TIMELINE_QUERY, new CursorList.RowMapper<Object>() {
+      @Override
+      public Object fromCursor(Cursor cursor) {
+        String itemKind = cursor.getString(6);
+        TimelineEntry.Item item = itemKind == null ? null :
+            new TimelineEntry.Item(cursor.getInt(7), cursor.getString(9), cursor.getInt(8));
+        TimelineEntry.Member user = new TimelineEntry.Member(cursor.getInt(5), cursor.getString(10),
+            cursor.getString(11));
+        TimelineEntry.Data data = new TimelineEntry.Data(user,
+            TimelineEntry.ITEM_USER_STORY.equals(itemKind) ? item : null,
+            TimelineEntry.ITEM_TASK.equals(itemKind) ? item : null,
+            TimelineEntry.ITEM_ISSUE.equals(itemKind) ? item : null);
+        return new TimelineEntry(cursor.getInt(0), cursor.getInt(1), cursor.getString(2),
+            new Date(cursor.getLong(3)), data, cursor.getInt(4));
+      }
+    });
+    measure("timeline manager", TIMELINE_QUERY, new CursorList.RowMapper<Object>() {
+      @Override
+      public Object fromCursor(Cursor cursor) {
+        return manager.fromCursor(cursor);
+      }
+    });
+  }
+
+  public void testProjectHydration() throws Exception {
+    final ProjectManager manager = new ProjectManager(getContext());
+    measure("project json", "SELECT _id, name, description, tags, logo_small, logo_big, private FROM project_json",
+        new CursorList.RowMapper<Object>() {
+          @Override
+          public Object fromCursor(Cursor cursor) {
+            List<String> tags = JsonCodec.fromJson(JsonCodec.STRING_LIST, cursor.getString(3));
+            return new Project(cursor.getInt(0), cursor.getString(1), cursor.getString(2), tags,
+                cursor.getString(4), cursor.getString(5), cursor.getInt(6) == 1);
+          }
+        });
+    measure("project manager", "SELECT _id, name, description, " +
+            "(SELECT group_concat(name, char(31)) FROM (SELECT name FROM project_tag " +
+            "WHERE project_tag.project = project._id ORDER BY position)) " +
+            "AS tags, logo_small, logo_big, private FROM project",
+        new CursorList.RowMapper<Object>() {
+          @Override
+          public Object fromCursor(Cursor cursor) {
+            return manager.fromCursor(cursor);
+          }
+        });
+  }
+
+  /**
+   * Hydrate every row of a query several times over and log the throughput
+   * and allocations. The cursor window is filled before measuring, so only
+   * the hydration is measured.
+   */
+  @SuppressWarnings("deprecation")
+  private void measure(String name, String sql, CursorList.RowMapper<Object> mapper) {
+    Cursor cursor = mDb.rawQuery(sql, null);
+    try {
+      assertEquals(ROWS, cursor.getCount());
+      hydrate(cursor, mapper);
+      Debug.resetThreadAllocSize();
+      Debug.startAllocCounting();
+      long start = System.nanoTime();
+      for (int pass = 0; pass < PASSES; pass++) {
+        hydrate(cursor, mapper);
+      }
+      long elapsedNs = System.nanoTime() - start;
+      Debug.stopAllocCounting();
+      long rows = (long) ROWS * PASSES;
+      Log.i(TAG, name + ": " + (rows * 1000000000L / elapsedNs) + " rows/s, " +
+          (Debug.getThreadAllocSize() / rows) + " bytes/row");
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private void hydrate(Cursor cursor, CursorList.RowMapper<Object> mapper) {
+    cursor.moveToPosition(-1);
+    while (cursor.moveToNext()) {
+      mSink = mapper.fromCursor(cursor);
+    }
+  }
+
+}
@@ -0,0 +1,172 @@
+package co.brianberg.taiga.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+public class MigrationsTest extends AndroidTestCase {
+
+  private static final String CREATED_DATE = "2016-08-01 10:15:00";
+
+  private SQLiteDatabase mDb;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    mDb = SQLiteDatabase.create(null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    mDb.close();
+    super.tearDown();
+  }
+
+  public void testStepsCoverEveryVersion() throws Exception {
+    int version = 1;
+    for (Migration step : Migrations.ALL) {
+      assertEquals(++version, step.getVersion());
+    }
+    assertEquals(DatabaseHelper.DATABASE_VERSION, version);
+  }
+
+  public void testUpgradeFromVersion1KeepsData() throws Exception {
+    createVersion1Fixture(mDb);
+    Migrations.migrate(mDb, 1, DatabaseHelper.DATABASE_VERSION);
+
+    assertEquals("Taiga", queryString("SELECT name FROM project WHERE _id = 1"));
+    long created = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).parse(CREATED_DATE).getTime();
+    assertEquals(String.valueOf(created), queryString("SELECT created_date FROM timeline_entry WHERE _id = 10"));
+    assertEquals("userstory", queryString("SELECT item_kind FROM timeline_entry WHERE _id = 10"));
+    assertEquals("7", queryString("SELECT item_ref FROM timeline_entry WHERE _id = 10"));
+    // The newest entry of a member provides its details
+    assertEquals("Jane", queryString("SELECT name FROM member WHERE _id = 5"));
+    assertEquals("1", queryString("SELECT COUNT(*) FROM member"));
+    assertEquals("10",
+        queryString("SELECT docid FROM timeline_entry_search WHERE timeline_entry_search MATCH 'login*'"));
+    assertEquals("1", queryString("SELECT docid FROM project_search WHERE project_search MATCH 'agile*'"));
+    assertEquals("1", queryString("SELECT project FROM project_tag WHERE name = 'web'"));
+  }
+
+  public void testUpgradedSchemaMatchesNewSchema() throws Exception {
+    createVersion1Fixture(mDb);
+    Migrations.migrate(mDb, 1, DatabaseHelper.DATABASE_VERSION);
+    SQLiteDatabase created = SQLiteDatabase.create(null);
+    try {
+      DatabaseHelper.createSchema(created);
+      assertEquals(describeSchema(created), describeSchema(mDb));
+    } finally {
+      created.close();
+    }
+  }
+
+  public void testFailedStepIsRolledBack() throws Exception {
+    List<Migration> steps = Arrays.asList(
+        new Migration(2) {
+          @Override
+          public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE a(_id INTEGER PRIMARY KEY)");
+          }
+        },
+        new Migration(3) {
+          @Override
+          public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE b(_id INTEGER PRIMARY KEY)");
+            throw new IllegalStateException("Failed");
+          }
+        });
+    try {
+      Migrations.migrate(mDb, 1, 3, steps);
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+    assertEquals("1", queryString("SELECT COUNT(*) FROM sqlite_master WHERE name = 'a'"));
+    assertEquals("0", queryString("SELECT COUNT(*) FROM sqlite_master WHERE name = 'b'"));
+  }
+
+  public void testMissingStepFails() throws Exception {
+    try {
+      Migrations.migrate(mDb, 1, DatabaseHelper.DATABASE_VERSION + 1);
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+  }
+
+  /**
+   * Create a database as stored by version 1 of the app
+   */
+  private static void createVersion1Fixture(SQLiteDatabase db) {
+    db.execSQL("CREATE TABLE project(_id INTEGER PRIMARY KEY, name TEXT NOT NULL, description TEXT, tags TEXT, " +
+        "logo_small TEXT, logo_big TEXT, private INTEGER NOT NULL);");
+    db.execSQL("CREATE TABLE timeline_entry(_id INTEGER PRIMARY KEY, content_type INTEGER NOT NULL, " +
+        "event_type TEXT NOT NULL, created_date TEXT NOT NULL, data TEXT, project INTEGER NOT NULL, " +
+        "FOREIGN KEY(project) REFERENCES project(_id))");
+    db.execSQL("INSERT INTO project VALUES(1, 'Taiga', 'Agile project management', '[\"web\"]', NULL, NULL, 0)");
+    db.execSQL("INSERT INTO timeline_entry VALUES(10, 35, 'userstories.userstory.create', '" + CREATED_DATE + "', " +
+        "'{\"user\": {\"id\": 5, \"name\": \"Jane D\", \"photo\": null}, " +
+        "\"userstory\": {\"id\": 3, \"subject\": \"Login page\", \"ref\": 7}}', 1)");
+    db.execSQL("INSERT INTO timeline_entry VALUES(11, 35, 'tasks.task.create', '2016-08-02 09:00:00', " +
+        "'{\"user\": {\"id\": 5, \"name\": \"Jane\", \"photo\": null}, " +
+        "\"task\": {\"id\": 4, \"subject\": \"Style form\", \"ref\": 8}}', 1)");
+  }
+
+  /**
+   * Describe the tables, columns, indexes and triggers of a database,
+   * independent of how the statements creating them were written
+   */
+  private static List<String> describeSchema(SQLiteDatabase db) {
+    List<String> schema = new ArrayList<>();
+    Cursor objects = db.rawQuery("SELECT type, name, tbl_name FROM sqlite_master " +
+        "WHERE name NOT LIKE 'sqlite_%' AND name NOT LIKE 'android_%'", null);
+    try {
+      while (objects.moveToNext()) {
+        String type = objects.getString(0);
+        String name = objects.getString(1);
+        schema.add(type + " " + name + " on " + objects.getString(2));
+        if (type.equals("table")) {
+          Cursor columns = db.rawQuery("PRAGMA table_info(" + name + ")", null);
+          try {
+            while (columns.moveToNext()) {
+              schema.add(name + "." + columns.getString(1) + " " + columns.getString(2) +
+                  " notnull=" + columns.getInt(3) + " pk=" + columns.getInt(5));
+            }
+          } finally {
+            columns.close();
+          }
+          Cursor keys = db.rawQuery("PRAGMA foreign_key_list(" + name + ")", null);
+          try {
+            while (keys.moveToNext()) {
+              schema.add(name + "." + keys.getString(3) + " references " + keys.getString(2) + "." +
+                  keys.getString(4) + " on delete " + keys.getString(6));
+            }
+          } finally {
+            keys.close();
+          }
+        }
+      }
+    } finally {
+      objects.close();
+    }
+    Collections.sort(schema);
+    return schema;
+  }
+
+  private String queryString(String sql) {
+    Cursor cursor = mDb.rawQuery(sql, null);
+    try {
+      return cursor.moveToFirst() ? cursor.getString(0) : null;
+    } finally {
+      cursor.close();
+    }
+  }
+
+}
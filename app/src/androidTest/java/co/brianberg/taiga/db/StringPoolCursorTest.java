@@ -0,0 +1,44 @@
+package co.brianberg.taiga.db;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class StringPoolCursorTest extends AndroidTestCase {
+
+  public void testReturnsSameInstanceForEqualValues() throws Exception {
+    StringPool pool = new StringPool(16);
+    MatrixCursor cursor = createCursor(new String("issues.issue.create"), new String("issues.issue.create"), null);
+    cursor.moveToNext();
+    String first = pool.get(cursor, 0);
+    cursor.moveToNext();
+    String second = pool.get(cursor, 0);
+    assertEquals("issues.issue.create", first);
+    assertSame(first, second);
+    cursor.moveToNext();
+    assertNull(pool.get(cursor, 0));
+    cursor.close();
+  }
+
+  public void testSplitsLists() throws Exception {
+    StringPool pool = new StringPool(16);
+    MatrixCursor cursor = createCursor("web\u001fandroid", "android");
+    cursor.moveToNext();
+    List<String> tags = pool.getList(cursor, 0, '\u001f');
+    assertEquals(Arrays.asList("web", "android"), tags);
+    cursor.moveToNext();
+    assertSame(tags.get(1), pool.getList(cursor, 0, '\u001f').get(0));
+    cursor.close();
+  }
+
+  private static MatrixCursor createCursor(String... values) {
+    MatrixCursor cursor = new MatrixCursor(new String[] { "value" });
+    for (String value : values) {
+      cursor.addRow(new Object[] { value });
+    }
+    return cursor;
+  }
+
+}
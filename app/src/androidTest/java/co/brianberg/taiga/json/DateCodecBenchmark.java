@@ -0,0 +1,114 @@
+package co.brianberg.taiga.json;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Measures the timestamps parsed and the dates formatted per second and the
+ * bytes allocated per call, comparing {@link DateCodec} with the shared
+ * SimpleDateFormat and the per bind SimpleDateFormat it replaced. Results
+ * are logged:
+ *
+ *   adb logcat -s DateCodecBenchmark
+ */
+public class DateCodecBenchmark extends AndroidTestCase {
+
+  private static final String TAG = DateCodecBenchmark.class.getSimpleName();
+
+  private static final int COUNT = 2000;
+
+  private static final int PASSES = 10;
+
+  private final String[] mTimestamps = new String[COUNT];
+
+  private final long[] mEpochs = new long[COUNT];
+
+  private long mSink;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    for (int i = 0; i < COUNT; i++) {
+      mEpochs[i] = 1470000000000L + i * 3700000L;
+      mTimestamps[i] = DateCodec.format(mEpochs[i]);
+    }
+  }
+
+  public void testParse() throws Exception {
+    final DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
+    measure("parse SimpleDateFormat", new Operation() {
+      @Override
+      public long run(int i) throws Exception {
+        synchronized (format) {
+          return format.parse(mTimestamps[i]).getTime();
+        }
+      }
+    });
+    long bytes = measure("parse DateCodec", new Operation() {
+      @Override
+      public long run(int i) {
+        return DateCodec.parse(mTimestamps[i]);
+      }
+    });
+    assertEquals(0, bytes);
+  }
+
+  public void testFormat() throws Exception {
+    measure("format SimpleDateFormat", new Operation() {
+      @Override
+      public long run(int i) {
+        return new SimpleDateFormat("M/dd/yy").format(new Date(mEpochs[i])).length();
+      }
+    });
+    final TimeZone zone = TimeZone.getDefault();
+    final char[] buffer = new char[DateCodec.SHORT_DATE_LENGTH];
+    long bytes = measure("format DateCodec", new Operation() {
+      @Override
+      public long run(int i) {
+        return DateCodec.formatShortDate(mEpochs[i], zone, buffer, 0);
+      }
+    });
+    assertEquals(0, bytes);
+  }
+
+  private interface Operation {
+    long run(int i) throws Exception;
+  }
+
+  /**
+   * Run an operation over every value several times and log the throughput
+   * and allocations
+   *
+   * @return  Bytes allocated by all measured calls
+   */
+  @SuppressWarnings("deprecation")
+  private long measure(String name, Operation operation) throws Exception {
+    run(operation);
+    Debug.resetThreadAllocSize();
+    Debug.startAllocCounting();
+    long start = System.nanoTime();
+    for (int pass = 0; pass < PASSES; pass++) {
+      run(operation);
+    }
+    long elapsedNs = System.nanoTime() - start;
+    Debug.stopAllocCounting();
+    long calls = (long) COUNT * PASSES;
+    long bytes = Debug.getThreadAllocSize();
+    Log.i(TAG, name + ": " + (calls * 1000000000L / elapsedNs) + " calls/s, " + (bytes / calls) + " bytes/call");
+    return bytes;
+  }
+
+  private void run(Operation operation) throws Exception {
+    for (int i = 0; i < COUNT; i++) {
+      mSink += operation.run(i);
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+package co.brianberg.taiga.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import co.brianberg.taiga.db.project.Project;
+import co.brianberg.taiga.json.JsonCodec;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class CoalescingRequestTest extends AndroidTestCase {
+
+  private MockWebServer mServer;
+
+  private String mUrl;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    mServer = new MockWebServer();
+    mServer.start();
+    mUrl = mServer.url("/projects/1").toString();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    mServer.shutdown();
+    super.tearDown();
+  }
+
+  public void testIdenticalRequestsShareOneResponse() throws Exception {
+    mServer.enqueue(new MockResponse()
+        .setBody("{\"id\": 1, \"name\": \"Taiga\"}")
+        .setBodyDelay(500, TimeUnit.MILLISECONDS));
+
+    final Project[] results = new Project[2];
+    final CountDownLatch latch = new CountDownLatch(2);
+    runOnMainThread(new Runnable() {
+      @Override
+      public void run() {
+        send(results, 0, latch);
+        send(results, 1, latch);
+      }
+    });
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertEquals(1, mServer.getRequestCount());
+    assertNotNull(results[0]);
+    assertSame(results[0], results[1]);
+  }
+
+  public void testCancelledLeaderKeepsServingFollowers() throws Exception {
+    mServer.enqueue(new MockResponse()
+        .setBody("{\"id\": 1, \"name\": \"Taiga\"}")
+        .setBodyDelay(500, TimeUnit.MILLISECONDS));
+
+    final Project[] results = new Project[2];
+    final CountDownLatch latch = new CountDownLatch(1);
+    runOnMainThread(new Runnable() {
+      @Override
+      public void run() {
+        send(results, 0, latch).cancel();
+        send(results, 1, latch);
+      }
+    });
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertEquals(1, mServer.getRequestCount());
+    assertNull(results[0]);
+    assertNotNull(results[1]);
+  }
+
+  private RequestHandle send(final Project[] results, final int index, final CountDownLatch latch) {
+    return HttpHelper.request(getContext(), Request.Method.GET, null, mUrl, null, JsonCodec.getGson(),
+        Project.class, HttpHelper.REQUEST_TIMEOUT_MS, new Response.Listener<Project>() {
+          @Override
+          public void onResponse(Project project) {
+            results[index] = project;
+            latch.countDown();
+          }
+        }, new Response.ErrorListener() {
+          @Override
+          public void onErrorResponse(VolleyError error) {
+            latch.countDown();
+          }
+        });
+  }
+
+  private void runOnMainThread(Runnable runnable) {
+    new Handler(Looper.getMainLooper()).post(runnable);
+  }
+
+}
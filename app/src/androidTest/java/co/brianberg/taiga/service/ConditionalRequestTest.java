@@ -0,0 +1,124 @@
+package co.brianberg.taiga.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import co.brianberg.taiga.db.project.Project;
+import co.brianberg.taiga.json.JsonCodec;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class ConditionalRequestTest extends AndroidTestCase {
+
+  private static final String ETAG = "\"5d8c72a5edda8d6a\"";
+
+  private MockWebServer mServer;
+
+  private ValidatorStore mValidators;
+
+  private String mUrl;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    mServer = new MockWebServer();
+    mServer.start();
+    mUrl = mServer.url("/projects/1").toString();
+    mValidators = ValidatorStore.getInstance(getContext());
+    mValidators.remove(mUrl);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    mValidators.remove(mUrl);
+    mServer.shutdown();
+    super.tearDown();
+  }
+
+  public void testRepeatRequestIsConditional() throws Exception {
+    mServer.enqueue(new MockResponse()
+        .setHeader("ETag", ETAG)
+        .setBody("{\"id\": 1, \"name\": \"Taiga\"}"));
+    mServer.enqueue(new MockResponse().setResponseCode(304));
+
+    Result first = send();
+    RecordedRequest firstRequest = mServer.takeRequest();
+    assertNull(firstRequest.getHeader("If-None-Match"));
+    assertNotNull(first.project);
+    assertEquals("Taiga", first.project.getName());
+
+    Result second = send();
+    RecordedRequest secondRequest = mServer.takeRequest();
+    assertEquals(ETAG, secondRequest.getHeader("If-None-Match"));
+    assertNull(second.error);
+    assertNull(second.project);
+  }
+
+  public void testValidatorsAreReplaced() throws Exception {
+    mServer.enqueue(new MockResponse()
+        .setHeader("ETag", ETAG)
+        .setBody("{\"id\": 1, \"name\": \"Taiga\"}"));
+    mServer.enqueue(new MockResponse().setBody("{\"id\": 1, \"name\": \"Renamed\"}"));
+    mServer.enqueue(new MockResponse().setBody("{\"id\": 1, \"name\": \"Renamed\"}"));
+
+    send();
+    mServer.takeRequest();
+    Result second = send();
+    mServer.takeRequest();
+    assertEquals("Renamed", second.project.getName());
+
+    // The second response carried no validators so the third request is unconditional
+    send();
+    assertNull(mServer.takeRequest().getHeader("If-None-Match"));
+  }
+
+  private Result send() throws InterruptedException {
+    final Result result = new Result();
+    final CountDownLatch latch = new CountDownLatch(1);
+    HttpHelper.request(getContext(), Request.Method.GET, null, mUrl, null, JsonCodec.getGson(), Project.class,
+        mValidators, RequestPriority.FOREGROUND, BackoffPolicy.NONE, HttpHelper.REQUEST_TIMEOUT_MS,
+        new Response.Listener<Project>() {
+          @Override
+          public void onResponse(Project project) {
+            result.project = project;
+            latch.countDown();
+          }
+        }, new Response.ErrorListener() {
+          @Override
+          public void onErrorResponse(VolleyError error) {
+            result.error = error;
+            latch.countDown();
+          }
+        });
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    // Validators are stored right after delivery, on the main thread
+    waitForMainThread();
+    return result;
+  }
+
+  private void waitForMainThread() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    new Handler(Looper.getMainLooper()).post(new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    });
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+  }
+
+  private static class Result {
+    Project project;
+    VolleyError error;
+  }
+
+}
@@ -6,15 +6,12 @@ import android.app.ProgressDialog;
 import android.content.CursorLoader;
 import android.content.Intent;
 import android.content.Loader;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.database.Cursor;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.provider.ContactsContract;
 import android.support.annotation.NonNull;
 import android.support.design.widget.Snackbar;
@@ -36,13 +33,13 @@ import android.widget.TextView;
 
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
-import com.google.gson.Gson;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import co.brianberg.taiga.R;
 import co.brianberg.taiga.projects.ProjectListActivity;
+import co.brianberg.taiga.service.RequestHandle;
 import co.brianberg.taiga.service.Taiga;
 
 import static android.Manifest.permission.READ_CONTACTS;
@@ -52,15 +49,17 @@ import static android.Manifest.permission.READ_CONTACTS;
  */
 public class LoginActivity extends AppCompatActivity implements LoaderCallbacks<Cursor> {
 
+  private static final String TAG = LoginActivity.class.getSimpleName();
+
   /**
    * ID to identity READ_CONTACTS permission request.
    */
   private static final int REQUEST_READ_CONTACTS = 0;
 
   /**
-   * Keep track of the login task to ensure we can cancel it if requested.
+   * Keep track of the login request to ensure we can cancel it if requested.
    */
-  private BasicLoginTask mAuthTask;
+  private RequestHandle mAuthRequest;
 
   /**
    * Authenticated user reference
@@ -80,10 +79,7 @@ public class LoginActivity extends AppCompatActivity implements LoaderCallbacks<
     setContentView(R.layout.activity_login);
 
     // Load credentials
-    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(LoginActivity.this.getBaseContext());
-    if (prefs.contains("user")) {
-      mUser  = new Gson().fromJson(prefs.getString("user", null), User.class);
-    }
+    mUser = Session.getInstance(this).getUser();
 
     mLogoView = (ImageView) findViewById(R.id.app_logo);
 
@@ -126,6 +122,15 @@ public class LoginActivity extends AppCompatActivity implements LoaderCallbacks<
     }
   }
 
+  @Override
+  protected void onDestroy() {
+    if (mAuthRequest != null) {
+      mAuthRequest.cancel();
+      mAuthRequest = null;
+    }
+    super.onDestroy();
+  }
+
   @Override
   public void onConfigurationChanged(Configuration newConfig) {
     super.onConfigurationChanged(newConfig);
@@ -190,7 +195,7 @@ public class LoginActivity extends AppCompatActivity implements LoaderCallbacks<
    * errors are presented and no actual login attempt is made.
    */
   private void attemptLogin() {
-    if (mAuthTask != null) {
+    if (mAuthRequest != null) {
       return;
     }
 
@@ -228,11 +233,10 @@ public class LoginActivity extends AppCompatActivity implements LoaderCallbacks<
       // form field with an error.
       focusView.requestFocus();
     } else {
-      // Show a progress spinner, and kick off a background task to
+      // Show a progress spinner, and kick off an asynchronous request to
       // perform the user login attempt.
       showProgressDialog();
-      mAuthTask = new BasicLoginTask(email, password);
-      mAuthTask.execute((Void) null);
+      signIn(email, password);
     }
   }
 
@@ -256,10 +260,7 @@ public class LoginActivity extends AppCompatActivity implements LoaderCallbacks<
   }
 
   private void onLoginSuccess(User user) {
-    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(LoginActivity.this.getBaseContext());
-    SharedPreferences.Editor editor = prefs.edit();
-    editor.putString("user", new Gson().toJson(user));
-    editor.apply();
+    Session.getInstance(this).signIn(user);
     Bundle args = new Bundle();
     args.putInt(ProjectListActivity.ARG_MEMBER_ID, user.getId());
     Intent projectListIntent = new Intent(LoginActivity.this, ProjectListActivity.class);
@@ -318,52 +319,32 @@ public class LoginActivity extends AppCompatActivity implements LoaderCallbacks<
   }
 
   /**
-   * Represents an asynchronous login/registration task used to authenticate
-   * the user.
+   * Sends an asynchronous login request used to authenticate the user.
+   *
+   * @param username  Username or email
+   * @param password  Password
    */
-  public class BasicLoginTask extends AsyncTask<Void, Void, User> {
-
-    private final String TAG = BasicLoginTask.class.getSimpleName();
-    private final String mUsername;
-    private final String mPassword;
-
-    BasicLoginTask(String username, String password) {
-      mUsername = username;
-      mPassword = password;
-    }
-
-    @Override
-    protected User doInBackground(Void... params) {
-      return Taiga.signIn(LoginActivity.this.getBaseContext(), mUsername, mPassword,
-          new Response.ErrorListener() {
-            @Override
-            public void onErrorResponse(VolleyError error) {
-              Log.d(TAG, error.toString());
-              runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                  Snackbar.make(mLoginForm, R.string.auth_invalid_credentials, Snackbar.LENGTH_LONG);
-                }
-              });
+  private void signIn(String username, String password) {
+    mAuthRequest = Taiga.signIn(getBaseContext(), username, password,
+        new Response.Listener<User>() {
+          @Override
+          public void onResponse(User user) {
+            mAuthRequest = null;
+            dismissProgressDialog();
+            if (user != null) {
+              onLoginSuccess(user);
             }
           }
-      );
-    }
-
-    @Override
-    protected void onPostExecute(final User user) {
-      mAuthTask = null;
-      dismissProgressDialog();
-      if (user != null) {
-          onLoginSuccess(user);
-      }
-    }
-
-    @Override
-    protected void onCancelled() {
-      mAuthTask = null;
-      dismissProgressDialog();
-    }
+        },
+        new Response.ErrorListener() {
+          @Override
+          public void onErrorResponse(VolleyError error) {
+            Log.d(TAG, error.toString());
+            mAuthRequest = null;
+            dismissProgressDialog();
+            Snackbar.make(mLoginForm, R.string.auth_invalid_credentials, Snackbar.LENGTH_LONG).show();
+          }
+        }
+    );
   }
 }
-
@@ -0,0 +1,89 @@
+package co.brianberg.taiga.auth;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import co.brianberg.taiga.json.JsonCodec;
+
+/**
+ * Holds the signed in user in memory. The user is read from the preferences
+ * once, and the authorization headers sent with each API request are built
+ * once per sign in.
+ */
+public class Session {
+
+  private static final String PREF_USER = "user";
+
+  private static Session sInstance;
+
+  private final SharedPreferences mPrefs;
+
+  private boolean mLoaded;
+
+  private User mUser;
+
+  private Map<String, String> mAuthHeaders = Collections.emptyMap();
+
+  private Session(Context context) {
+    mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+  }
+
+  public static synchronized Session getInstance(Context context) {
+    if (sInstance == null) {
+      sInstance = new Session(context.getApplicationContext());
+    }
+    return sInstance;
+  }
+
+  /**
+   * @return  Signed in user or null
+   */
+  public synchronized User getUser() {
+    load();
+    return mUser;
+  }
+
+  /**
+   * @return  Unmodifiable authorization headers of the signed in user, empty if signed out
+   */
+  public synchronized Map<String, String> getAuthHeaders() {
+    load();
+    return mAuthHeaders;
+  }
+
+  /**
+   * Store a newly signed in user, replacing the previous one
+   *
+   * @param user  Signed in user
+   */
+  public synchronized void signIn(User user) {
+    mPrefs.edit()
+        .putString(PREF_USER, JsonCodec.toJson(JsonCodec.USER, user))
+        .apply();
+    setUser(user);
+  }
+
+  private void load() {
+    if (!mLoaded) {
+      setUser(JsonCodec.fromJson(JsonCodec.USER, mPrefs.getString(PREF_USER, null)));
+    }
+  }
+
+  private void setUser(User user) {
+    mUser = user;
+    mLoaded = true;
+    if (user != null && user.getAuthToken() != null) {
+      Map<String, String> headers = new HashMap<>();
+      headers.put("Authorization", "Bearer " + user.getAuthToken());
+      mAuthHeaders = Collections.unmodifiableMap(headers);
+    } else {
+      mAuthHeaders = Collections.emptyMap();
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+package co.brianberg.taiga.db;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publishes the rows changed by the data managers, so that screens can read
+ * again only the rows which changed instead of reloading whole lists. Changes
+ * are published once the write has been committed and delivered on the main
+ * thread to the listeners registered for the table at that time.
+ */
+public class ChangeNotifier {
+
+  /**
+   * Receives the changes of a table on the main thread
+   */
+  public interface Listener {
+
+    void onChange(TableChange change);
+
+  }
+
+  private static ChangeNotifier sInstance;
+
+  private final Map<String, List<Listener>> mListeners = new ConcurrentHashMap<>();
+
+  private final Handler mMainHandler;
+
+  private ChangeNotifier() {
+    mMainHandler = new Handler(Looper.getMainLooper());
+  }
+
+  public static synchronized ChangeNotifier getInstance() {
+    if (sInstance == null) {
+      sInstance = new ChangeNotifier();
+    }
+    return sInstance;
+  }
+
+  /**
+   * Register a listener for the changes of a table, it must be unregistered
+   * when its screen is destroyed
+   *
+   * @param table       Table
+   * @param listener    Listener
+   */
+  public synchronized void register(String table, Listener listener) {
+    List<Listener> listeners = mListeners.get(table);
+    if (listeners == null) {
+      listeners = new CopyOnWriteArrayList<>();
+      mListeners.put(table, listeners);
+    }
+    listeners.add(listener);
+  }
+
+  /**
+   * Unregister a listener, it is not called anymore even for changes
+   * published before
+   *
+   * @param table       Table
+   * @param listener    Listener
+   */
+  public synchronized void unregister(String table, Listener listener) {
+    List<Listener> listeners = mListeners.get(table);
+    if (listeners != null) {
+      listeners.remove(listener);
+    }
+  }
+
+  /**
+   * Publish a committed change, from any thread
+   *
+   * @param change  Change
+   */
+  public void publish(final TableChange change) {
+    if (change.isEmpty()) {
+      return;
+    }
+    mMainHandler.post(new Runnable() {
+      @Override
+      public void run() {
+        List<Listener> listeners = mListeners.get(change.getTable());
+        if (listeners == null) {
+          return;
+        }
+        for (Listener listener : listeners) {
+          listener.onChange(change);
+        }
+      }
+    });
+  }
+
+}
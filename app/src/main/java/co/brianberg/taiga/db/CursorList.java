@@ -0,0 +1,108 @@
+package co.brianberg.taiga.db;
+
+import android.database.Cursor;
+import android.provider.BaseColumns;
+import android.util.LruCache;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+
+/**
+ * Read-only list backed by a database cursor. Rows are converted to objects
+ * only when they are accessed, e.g. when a RecyclerView binds them, and a
+ * small number of recently accessed rows is kept, so the memory held by the
+ * list is proportional to the rows in use rather than to the rows queried.
+ *
+ * The list may be created on a background thread, which reads the rows into
+ * the cursor window, and then handed over to the thread using it. It must be
+ * used from a single thread afterwards and closed when no longer needed.
+ */
+public class CursorList<T> extends AbstractList<T> implements Closeable {
+
+  /**
+   * Converts the current row of a cursor to an object
+   */
+  public interface RowMapper<T> {
+    T fromCursor(Cursor cursor);
+  }
+
+  /**
+   * Number of converted rows kept by default, a few screens worth
+   */
+  private static final int DEFAULT_CACHE_SIZE = 50;
+
+  private final Cursor mCursor;
+
+  private final RowMapper<T> mMapper;
+
+  private final LruCache<Integer, T> mRows;
+
+  private final int mSize;
+
+  /**
+   * @param cursor  Cursor, owned by the list from now on
+   * @param mapper  Row mapper
+   */
+  public CursorList(Cursor cursor, RowMapper<T> mapper) {
+    this(cursor, mapper, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * @param cursor      Cursor, owned by the list from now on
+   * @param mapper      Row mapper
+   * @param cacheSize   Number of converted rows to keep
+   */
+  public CursorList(Cursor cursor, RowMapper<T> mapper, int cacheSize) {
+    mCursor = cursor;
+    mMapper = mapper;
+    mRows = new LruCache<>(cacheSize);
+    mSize = cursor.getCount();
+  }
+
+  @Override
+  public T get(int location) {
+    if (location < 0 || location >= mSize) {
+      throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + mSize);
+    }
+    T row = mRows.get(location);
+    if (row == null) {
+      if (mCursor.isClosed() || !mCursor.moveToPosition(location)) {
+        throw new IllegalStateException("Cursor closed or unable to move to row " + location);
+      }
+      row = mMapper.fromCursor(mCursor);
+      mRows.put(location, row);
+    }
+    return row;
+  }
+
+  /**
+   * Read the ID of a row without converting it, the cursor must have an _id column
+   *
+   * @param location  Row position
+   * @return          Row ID
+   */
+  public long getItemId(int location) {
+    if (location < 0 || location >= mSize) {
+      throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + mSize);
+    }
+    if (mCursor.isClosed() || !mCursor.moveToPosition(location)) {
+      throw new IllegalStateException("Cursor closed or unable to move to row " + location);
+    }
+    return mCursor.getLong(mCursor.getColumnIndexOrThrow(BaseColumns._ID));
+  }
+
+  @Override
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Close the underlying cursor, the list cannot be read afterwards
+   */
+  @Override
+  public void close() {
+    mRows.evictAll();
+    mCursor.close();
+  }
+
+}
@@ -0,0 +1,112 @@
+package co.brianberg.taiga.db;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only list made of consecutive pages, each backed by its own bounded
+ * {@link CursorList}. Pages are read one at a time as the list grows, so no
+ * query ever covers more than a page and a page is never read again when the
+ * list is scrolled, and a page can be replaced when its rows change.
+ *
+ * The list must be used from a single thread and closed when no longer
+ * needed, which closes its pages.
+ */
+public class CursorPageList<T> extends AbstractList<T> implements Closeable {
+
+  private final List<CursorList<T>> mPages = new ArrayList<>();
+
+  /**
+   * Position of the first row of each page
+   */
+  private final List<Integer> mStarts = new ArrayList<>();
+
+  private int mSize;
+
+  /**
+   * Append a page
+   *
+   * @param page  Page, owned by the list from now on
+   */
+  public void addPage(CursorList<T> page) {
+    mPages.add(page);
+    mStarts.add(mSize);
+    mSize += page.size();
+  }
+
+  /**
+   * Replace a page, the replaced page is closed
+   *
+   * @param index   Page index
+   * @param page    Page, owned by the list from now on
+   */
+  public void setPage(int index, CursorList<T> page) {
+    mPages.set(index, page).close();
+    mSize = mStarts.get(index);
+    for (int i = index; i < mPages.size(); i++) {
+      mStarts.set(i, mSize);
+      mSize += mPages.get(i).size();
+    }
+  }
+
+  public CursorList<T> getPage(int index) {
+    return mPages.get(index);
+  }
+
+  public int getPageCount() {
+    return mPages.size();
+  }
+
+  /**
+   * @param index   Page index
+   * @return        Position of the first row of the page
+   */
+  public int getPageStart(int index) {
+    return mStarts.get(index);
+  }
+
+  @Override
+  public T get(int location) {
+    if (location < 0 || location >= mSize) {
+      throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + mSize);
+    }
+    int index = findPage(location);
+    return mPages.get(index).get(location - mStarts.get(index));
+  }
+
+  @Override
+  public int size() {
+    return mSize;
+  }
+
+  @Override
+  public void close() {
+    for (CursorList<T> page : mPages) {
+      page.close();
+    }
+    mPages.clear();
+    mStarts.clear();
+    mSize = 0;
+  }
+
+  /**
+   * @param location  Row position
+   * @return          Index of the page holding the row, the last one starting at or before it
+   */
+  private int findPage(int location) {
+    int low = 0;
+    int high = mPages.size() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (mStarts.get(mid) <= location) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+}
@@ -6,21 +6,34 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
 import co.brianberg.taiga.db.project.Project;
-import co.brianberg.taiga.db.status.task.TaskStatus;
-import co.brianberg.taiga.db.status.us.UserStoryStatus;
 import co.brianberg.taiga.db.timeline.TimelineEntry;
 
 /**
  * Database helper containing wrapper functions for
- * interacting with the SQLite database
+ * interacting with the SQLite database.
+ *
+ * The helper and its connection are shared by the whole process and stay
+ * open for its lifetime, they must not be closed by individual screens.
+ * Write-ahead logging lets reads proceed while a write is in progress,
+ * and writes are serialized through {@link DatabaseWriter}. Schema upgrades
+ * keep the stored data, see {@link Migrations}.
+ *
+ * Foreign keys are enforced once the database is open, so deleting a project
+ * deletes its timeline. Old rows are pruned and freed pages reclaimed by
+ * {@link DatabaseMaintenance}.
  */
 public class DatabaseHelper extends SQLiteOpenHelper {
 
   private static final String DATABASE_NAME = "taiga.db";
-  private static final int DATABASE_VERSION = 1;
+  static final int DATABASE_VERSION = 8;
 
   public static final String TABLE_PROJECT = "project";
   public static final String TABLE_TIMELINE_ENTRY = "timeline_entry";
+  public static final String TABLE_MEMBER = "member";
+  public static final String TABLE_PROJECT_TAG = "project_tag";
+  public static final String TABLE_PROJECT_MEMBER = "project_member";
+  public static final String TABLE_PROJECT_SEARCH = "project_search";
+  public static final String TABLE_TIMELINE_ENTRY_SEARCH = "timeline_entry_search";
 
   // Projects table creation statement
   private static final String CREATE_PROJECTS_TABLE =
@@ -28,27 +41,79 @@ public class DatabaseHelper extends SQLiteOpenHelper {
           Project._ID + " INTEGER PRIMARY KEY, " +
           Project.NAME + " TEXT NOT NULL, " +
           Project.DESC + " TEXT, " +
-          Project.TAGS + " TEXT, " +
           Project.LOGO_SMALL + " TEXT, " +
           Project.LOGO_BIG + " TEXT, " +
           Project.PRIVATE + " INTEGER NOT NULL" +
           ");";
 
-  private static final String CREATE_TIMELINE_ENTRY_TABLE =
-      "CREATE TABLE " + TABLE_TIMELINE_ENTRY + "(" +
-          TimelineEntry._ID + " INTEGER PRIMARY KEY, " +
-          TimelineEntry.CONTENT_TYPE + " INTEGER NOT NULL, " +
-          TimelineEntry.EVENT_TYPE + " TEXT NOT NULL, " +
-          TimelineEntry.CREATED_DATE + " TEXT NOT NULL, " + 
-          TimelineEntry.DATA + " TEXT, " +
-          TimelineEntry.PROJECT + " INTEGER NOT NULL, " +
-          "FOREIGN KEY(" + TimelineEntry.PROJECT + ") " + 
-            "REFERENCES " + TABLE_PROJECT + "(" + Project._ID + ")" + 
+  // Project tags table creation statement, one row per tag in the order the project lists them.
+  // Tags are deleted along with their project.
+  private static final String CREATE_PROJECT_TAG_TABLE =
+      "CREATE TABLE " + TABLE_PROJECT_TAG + "(" +
+          Project.Tag.PROJECT + " INTEGER NOT NULL, " +
+          Project.Tag.POSITION + " INTEGER NOT NULL, " +
+          Project.Tag.NAME + " TEXT NOT NULL, " +
+          "PRIMARY KEY(" + Project.Tag.PROJECT + ", " + Project.Tag.POSITION + "), " +
+          "FOREIGN KEY(" + Project.Tag.PROJECT + ") " +
+            "REFERENCES " + TABLE_PROJECT + "(" + Project._ID + ") ON DELETE CASCADE" +
+          ")";
+
+  // Index serving the projects filtered by tag and the tags ordered by use
+  private static final String CREATE_PROJECT_TAG_NAME_INDEX =
+      "CREATE INDEX " + TABLE_PROJECT_TAG + "_name ON " + TABLE_PROJECT_TAG + "(" +
+          Project.Tag.NAME + ", " +
+          Project.Tag.PROJECT +
+          ")";
+
+  // Project members table creation statement, one row per project of each member whose project list was
+  // retrieved, so that the list can be served from the database. Rows are deleted along with their project.
+  private static final String CREATE_PROJECT_MEMBER_TABLE =
+      "CREATE TABLE " + TABLE_PROJECT_MEMBER + "(" +
+          Project.Membership.MEMBER + " INTEGER NOT NULL, " +
+          Project.Membership.PROJECT + " INTEGER NOT NULL, " +
+          "PRIMARY KEY(" + Project.Membership.MEMBER + ", " + Project.Membership.PROJECT + "), " +
+          "FOREIGN KEY(" + Project.Membership.PROJECT + ") " +
+            "REFERENCES " + TABLE_PROJECT + "(" + Project._ID + ") ON DELETE CASCADE" +
+          ")";
+
+  // Members table creation statement, keyed by Taiga user ID
+  private static final String CREATE_MEMBER_TABLE =
+      "CREATE TABLE " + TABLE_MEMBER + "(" +
+          TimelineEntry.Member._ID + " INTEGER PRIMARY KEY, " +
+          TimelineEntry.Member.NAME + " TEXT, " +
+          TimelineEntry.Member.PHOTO + " TEXT" +
+          ")";
+
+  // Timeline entry table creation statement, created dates are stored as epoch milliseconds,
+  // the entry data is flattened into item columns and the user is a reference to a member.
+  // Entries are deleted along with their project.
+  private static final String CREATE_TIMELINE_ENTRY_TABLE = createTimelineEntryTable(TABLE_TIMELINE_ENTRY);
+
+  // Index serving the per-project timeline, newest first
+  private static final String CREATE_TIMELINE_ENTRY_PROJECT_INDEX =
+      "CREATE INDEX " + TABLE_TIMELINE_ENTRY + "_project_created ON " + TABLE_TIMELINE_ENTRY + "(" +
+          TimelineEntry.PROJECT + ", " +
+          TimelineEntry.CREATED_DATE +
+          ")";
+
+  // Full-text index of project names and descriptions, reading its content from the projects table
+  private static final String CREATE_PROJECT_SEARCH_TABLE =
+      "CREATE VIRTUAL TABLE " + TABLE_PROJECT_SEARCH + " USING fts4(" +
+          "content=\"" + TABLE_PROJECT + "\", " +
+          Project.NAME + ", " +
+          Project.DESC +
+          ")";
+
+  // Full-text index of timeline entry item subjects, reading its content from the timeline entry table
+  private static final String CREATE_TIMELINE_ENTRY_SEARCH_TABLE =
+      "CREATE VIRTUAL TABLE " + TABLE_TIMELINE_ENTRY_SEARCH + " USING fts4(" +
+          "content=\"" + TABLE_TIMELINE_ENTRY + "\", " +
+          TimelineEntry.ITEM_SUBJECT +
           ")";
 
   private static DatabaseHelper sInstance;
 
-  public static DatabaseHelper getInstance(Context context) {
+  public static synchronized DatabaseHelper getInstance(Context context) {
     if (sInstance == null) {
       sInstance = new DatabaseHelper(context.getApplicationContext());
     }
@@ -57,23 +122,112 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
   private DatabaseHelper(Context context) {
     super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    setWriteAheadLoggingEnabled(true);
+  }
+
+  @Override
+  public void onConfigure(SQLiteDatabase db) {
+    // Only takes effect before the first table is created, existing databases
+    // are switched over by a full vacuum during maintenance
+    db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+  }
+
+  @Override
+  public void onOpen(SQLiteDatabase db) {
+    // Enabled after any upgrade has run, migration steps rebuilding a table
+    // would otherwise trip over the references to it
+    if (!db.isReadOnly()) {
+      db.setForeignKeyConstraintsEnabled(true);
+    }
   }
 
   @Override
   public void onCreate(SQLiteDatabase db) {
-    db.execSQL(CREATE_PROJECTS_TABLE);
-    db.execSQL(CREATE_TIMELINE_ENTRY_TABLE);
+    createSchema(db);
   }
 
 
   @Override
   public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-    Log.w(DatabaseHelper.class.getName(),
-        "Upgrading database from version " + oldVersion + " to " + newVersion +
-            ", which will destroy all old data");
-    db.execSQL("DROP TABLE IF EXISTS " + TABLE_PROJECT);
-    db.execSQL("DROP TABLE IF EXISTS " + TABLE_TIMELINE_ENTRY);
-    onCreate(db);
+    Log.i(DatabaseHelper.class.getName(),
+        "Upgrading database from version " + oldVersion + " to " + newVersion);
+    Migrations.migrate(db, oldVersion, newVersion);
+  }
+
+  /**
+   * Create the current schema
+   *
+   * @param db  Empty database
+   */
+  static void createSchema(SQLiteDatabase db) {
+    db.execSQL(CREATE_PROJECTS_TABLE);
+    db.execSQL(CREATE_PROJECT_TAG_TABLE);
+    db.execSQL(CREATE_PROJECT_TAG_NAME_INDEX);
+    db.execSQL(CREATE_PROJECT_MEMBER_TABLE);
+    db.execSQL(CREATE_MEMBER_TABLE);
+    db.execSQL(CREATE_TIMELINE_ENTRY_TABLE);
+    db.execSQL(CREATE_TIMELINE_ENTRY_PROJECT_INDEX);
+    createSearchTables(db);
+  }
+
+  /**
+   * Create the full-text search tables along with the triggers keeping them in
+   * sync with their content tables. The triggers are dropped with their content
+   * table, so they must be created again when a content table is rebuilt.
+   *
+   * @param db  Database
+   */
+  private static void createSearchTables(SQLiteDatabase db) {
+    db.execSQL(CREATE_PROJECT_SEARCH_TABLE);
+    createSearchTriggers(db, TABLE_PROJECT, TABLE_PROJECT_SEARCH, Project.NAME, Project.DESC);
+    db.execSQL(CREATE_TIMELINE_ENTRY_SEARCH_TABLE);
+    createSearchTriggers(db, TABLE_TIMELINE_ENTRY, TABLE_TIMELINE_ENTRY_SEARCH, TimelineEntry.ITEM_SUBJECT);
+  }
+
+  /**
+   * Create the triggers keeping an external content full-text table in sync.
+   * Old rows are removed from the index before they change, while the content
+   * table still holds the indexed values, and new rows are indexed afterwards.
+   *
+   * @param db            Database
+   * @param table         Content table
+   * @param searchTable   Full-text table
+   * @param columns       Indexed columns
+   */
+  static void createSearchTriggers(SQLiteDatabase db, String table, String searchTable, String... columns) {
+    String oldRow = "DELETE FROM " + searchTable + " WHERE docid = old.rowid;";
+    StringBuilder newRow = new StringBuilder("INSERT INTO " + searchTable + "(docid");
+    for (String column : columns) {
+      newRow.append(", ").append(column);
+    }
+    newRow.append(") VALUES (new.rowid");
+    for (String column : columns) {
+      newRow.append(", new.").append(column);
+    }
+    newRow.append(");");
+    db.execSQL("CREATE TRIGGER " + searchTable + "_bu BEFORE UPDATE ON " + table + " BEGIN " + oldRow + " END");
+    db.execSQL("CREATE TRIGGER " + searchTable + "_bd BEFORE DELETE ON " + table + " BEGIN " + oldRow + " END");
+    db.execSQL("CREATE TRIGGER " + searchTable + "_au AFTER UPDATE ON " + table + " BEGIN " + newRow + " END");
+    db.execSQL("CREATE TRIGGER " + searchTable + "_ai AFTER INSERT ON " + table + " BEGIN " + newRow + " END");
+  }
+
+  private static String createTimelineEntryTable(String table) {
+    return "CREATE TABLE " + table + "(" +
+        TimelineEntry._ID + " INTEGER PRIMARY KEY, " +
+        TimelineEntry.CONTENT_TYPE + " INTEGER NOT NULL, " +
+        TimelineEntry.EVENT_TYPE + " TEXT NOT NULL, " +
+        TimelineEntry.CREATED_DATE + " INTEGER NOT NULL, " +
+        TimelineEntry.PROJECT + " INTEGER NOT NULL, " +
+        TimelineEntry.USER_ID + " INTEGER, " +
+        TimelineEntry.ITEM_KIND + " TEXT, " +
+        TimelineEntry.ITEM_ID + " INTEGER, " +
+        TimelineEntry.ITEM_REF + " INTEGER, " +
+        TimelineEntry.ITEM_SUBJECT + " TEXT, " +
+        "FOREIGN KEY(" + TimelineEntry.PROJECT + ") " +
+          "REFERENCES " + TABLE_PROJECT + "(" + Project._ID + ") ON DELETE CASCADE, " +
+        "FOREIGN KEY(" + TimelineEntry.USER_ID + ") " +
+          "REFERENCES " + TABLE_MEMBER + "(" + TimelineEntry.Member._ID + ")" +
+        ")";
   }
 
 }
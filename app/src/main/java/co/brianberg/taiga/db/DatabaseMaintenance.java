@@ -0,0 +1,82 @@
+package co.brianberg.taiga.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import co.brianberg.taiga.db.timeline.MemberManager;
+import co.brianberg.taiga.db.timeline.TimelineEntryManager;
+
+/**
+ * Periodic database maintenance keeping the cache bounded: prunes the
+ * timeline according to a retention policy, drops members no longer
+ * referenced, refreshes the query planner statistics and returns the freed
+ * pages to the file system.
+ *
+ * Maintenance writes to the database, so it must run on the writer thread,
+ * see {@link DatabaseWriter}, and is scheduled by {@link MaintenanceJobService}.
+ */
+public class DatabaseMaintenance {
+
+  private static final String TAG = DatabaseMaintenance.class.getSimpleName();
+
+  // PRAGMA auto_vacuum value of a database in incremental mode
+  private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+  private final SQLiteDatabase mDatabase;
+
+  private final TimelineEntryManager mTimelineEntryManager;
+
+  private final MemberManager mMemberManager;
+
+  private final RetentionPolicy mPolicy;
+
+  /**
+   * @param context   Context
+   * @param policy    Retention policy of the timeline
+   */
+  public DatabaseMaintenance(Context context, RetentionPolicy policy) {
+    mDatabase = DatabaseHelper.getInstance(context).getWritableDatabase();
+    mTimelineEntryManager = new TimelineEntryManager(context);
+    mMemberManager = new MemberManager(context);
+    mPolicy = policy;
+  }
+
+  /**
+   * Run the maintenance, on the writer thread
+   */
+  public void run() {
+    int entries = mTimelineEntryManager.pruneTimelineEntries(mPolicy, System.currentTimeMillis());
+    int members = mMemberManager.deleteUnreferencedMembers();
+    Log.i(TAG, "Pruned " + entries + " timeline entries and " + members + " members");
+
+    // Merge the full-text index segments left behind by the deleted rows
+    mDatabase.execSQL("INSERT INTO " + DatabaseHelper.TABLE_TIMELINE_ENTRY_SEARCH + "(" +
+        DatabaseHelper.TABLE_TIMELINE_ENTRY_SEARCH + ") VALUES('optimize')");
+    mDatabase.execSQL("ANALYZE");
+
+    if (queryInt("PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+      // Databases created before incremental vacuum was enabled need a full
+      // vacuum, once, for the setting to take effect
+      Log.i(TAG, "Switching database to incremental vacuum");
+      mDatabase.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+      mDatabase.execSQL("VACUUM");
+    } else {
+      // Each result row is a freed page, the cursor must be filled for all of them to be freed
+      Cursor cursor = mDatabase.rawQuery("PRAGMA incremental_vacuum", null);
+      cursor.getCount();
+      cursor.close();
+    }
+  }
+
+  private int queryInt(String sql) {
+    Cursor cursor = mDatabase.rawQuery(sql, null);
+    try {
+      return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+    } finally {
+      cursor.close();
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+package co.brianberg.taiga.db;
+
+import android.database.sqlite.SQLiteException;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the database reads of screens on a dedicated thread and delivers their
+ * results on the main thread, so that screens never block on the database.
+ * Reads run one at a time in the order they were queued, alongside the writes
+ * of {@link DatabaseWriter} thanks to write-ahead logging.
+ */
+public class DatabaseReader {
+
+  /**
+   * Read to be run on the reader thread
+   */
+  public interface Query<T> {
+
+    T run();
+
+  }
+
+  /**
+   * Receives the outcome of a read on the main thread
+   */
+  public interface Callback<T> {
+
+    void onResult(T result);
+
+    void onError(SQLiteException e);
+
+  }
+
+  private static DatabaseReader sInstance;
+
+  private final ExecutorService mExecutor;
+
+  private final Handler mMainHandler;
+
+  private DatabaseReader() {
+    mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return new Thread(runnable, "DatabaseReader");
+      }
+    });
+    mMainHandler = new Handler(Looper.getMainLooper());
+  }
+
+  public static synchronized DatabaseReader getInstance() {
+    if (sInstance == null) {
+      sInstance = new DatabaseReader();
+    }
+    return sInstance;
+  }
+
+  /**
+   * Queue a read and deliver its result
+   *
+   * @param query       Read to be run on the reader thread
+   * @param callback    Called on the main thread once the read has completed or failed
+   */
+  public <T> void execute(final Query<T> query, final Callback<T> callback) {
+    mExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final T result;
+        try {
+          result = query.run();
+        } catch (final SQLiteException e) {
+          mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              callback.onError(e);
+            }
+          });
+          return;
+        }
+        mMainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            callback.onResult(result);
+          }
+        });
+      }
+    });
+  }
+
+}
@@ -0,0 +1,104 @@
+package co.brianberg.taiga.db;
+
+import android.database.sqlite.SQLiteException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs database writes one at a time on a dedicated thread, so that writes
+ * never contend with each other for the connection and never block the main
+ * thread. Reads may run concurrently on any thread thanks to write-ahead logging.
+ */
+public class DatabaseWriter {
+
+  private static final String TAG = DatabaseWriter.class.getSimpleName();
+
+  /**
+   * Receives the outcome of a write on the main thread
+   */
+  public interface Callback {
+
+    void onComplete();
+
+    void onError(SQLiteException e);
+
+  }
+
+  private static DatabaseWriter sInstance;
+
+  private final ExecutorService mExecutor;
+
+  private final Handler mMainHandler;
+
+  private DatabaseWriter() {
+    mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return new Thread(runnable, "DatabaseWriter");
+      }
+    });
+    mMainHandler = new Handler(Looper.getMainLooper());
+  }
+
+  public static synchronized DatabaseWriter getInstance() {
+    if (sInstance == null) {
+      sInstance = new DatabaseWriter();
+    }
+    return sInstance;
+  }
+
+  /**
+   * Queue a write, failures are logged
+   *
+   * @param write   Write to be run on the writer thread
+   */
+  public void execute(final Runnable write) {
+    mExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          write.run();
+        } catch (SQLiteException e) {
+          Log.e(TAG, "Database write failed", e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Queue a write and report its outcome
+   *
+   * @param write       Write to be run on the writer thread
+   * @param callback    Called on the main thread once the write has completed or failed
+   */
+  public void execute(final Runnable write, final Callback callback) {
+    mExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          write.run();
+        } catch (final SQLiteException e) {
+          mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              callback.onError(e);
+            }
+          });
+          return;
+        }
+        mMainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            callback.onComplete();
+          }
+        });
+      }
+    });
+  }
+
+}
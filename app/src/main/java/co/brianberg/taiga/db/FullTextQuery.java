@@ -0,0 +1,47 @@
+package co.brianberg.taiga.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds full-text MATCH expressions from text typed by the user
+ */
+public abstract class FullTextQuery {
+
+  /**
+   * Convert search text to a MATCH expression which finds rows containing
+   * words starting with each of the words of the text. Characters which are
+   * not part of a word, including MATCH operators, are ignored.
+   *
+   * @param text  Search text
+   * @return      MATCH expression or null if the text contains no words
+   */
+  public static String fromUserInput(String text) {
+    if (text == null) {
+      return null;
+    }
+    List<String> terms = new ArrayList<>();
+    StringBuilder term = new StringBuilder();
+    for (int i = 0; i <= text.length(); i++) {
+      char c = i < text.length() ? text.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(c)) {
+        term.append(c);
+      } else if (term.length() > 0) {
+        terms.add(term.append('*').toString());
+        term.setLength(0);
+      }
+    }
+    if (terms.isEmpty()) {
+      return null;
+    }
+    StringBuilder match = new StringBuilder();
+    for (String t : terms) {
+      if (match.length() > 0) {
+        match.append(' ');
+      }
+      match.append(t);
+    }
+    return match.toString();
+  }
+
+}
@@ -0,0 +1,76 @@
+package co.brianberg.taiga.db;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Job running the {@link DatabaseMaintenance} once a day while the device is
+ * idle and charging
+ */
+public class MaintenanceJobService extends JobService {
+
+  private static final String TAG = MaintenanceJobService.class.getSimpleName();
+
+  private static final int JOB_ID = 1;
+
+  private static final long INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+
+  /**
+   * Schedule the maintenance job unless it is already scheduled
+   *
+   * @param context   Context
+   */
+  public static void schedule(Context context) {
+    JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    for (JobInfo job : scheduler.getAllPendingJobs()) {
+      if (job.getId() == JOB_ID) {
+        return;
+      }
+    }
+    JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, MaintenanceJobService.class))
+        .setPeriodic(INTERVAL_MS)
+        .setRequiresDeviceIdle(true)
+        .setRequiresCharging(true)
+        .setPersisted(true)
+        .build();
+    scheduler.schedule(job);
+  }
+
+  @Override
+  public boolean onStartJob(final JobParameters params) {
+    final DatabaseMaintenance maintenance = new DatabaseMaintenance(this, RetentionPolicy.DEFAULT);
+    DatabaseWriter.getInstance().execute(new Runnable() {
+      @Override
+      public void run() {
+        maintenance.run();
+      }
+    }, new DatabaseWriter.Callback() {
+      @Override
+      public void onComplete() {
+        jobFinished(params, false);
+      }
+
+      @Override
+      public void onError(SQLiteException e) {
+        Log.e(TAG, "Database maintenance failed", e);
+        jobFinished(params, false);
+      }
+    });
+    return true;
+  }
+
+  @Override
+  public boolean onStopJob(JobParameters params) {
+    // A queued write cannot be interrupted, the next period runs it again
+    return false;
+  }
+
+}
@@ -0,0 +1,34 @@
+package co.brianberg.taiga.db;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Step upgrading the database schema by one version while keeping the
+ * stored data, see {@link Migrations}
+ */
+public abstract class Migration {
+
+  private final int mVersion;
+
+  /**
+   * @param version   Version the step upgrades to from the previous version
+   */
+  protected Migration(int version) {
+    mVersion = version;
+  }
+
+  /**
+   * @return  Version the step upgrades to
+   */
+  public int getVersion() {
+    return mVersion;
+  }
+
+  /**
+   * Upgrade the database from the previous version
+   *
+   * @param db  Database
+   */
+  public abstract void migrate(SQLiteDatabase db);
+
+}
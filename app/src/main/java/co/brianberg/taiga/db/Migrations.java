@@ -0,0 +1,513 @@
+package co.brianberg.taiga.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered schema migrations, one step per database version. Upgrading runs
+ * every step between the stored version and the current one, each in its own
+ * transaction, so that cached data survives an app update.
+ *
+ * Steps spell out their SQL and decode stored JSON themselves rather than
+ * using the schema constants or the JSON codec, so that each step keeps
+ * producing the schema and data of its own version as the current code
+ * evolves. A new schema version adds a step at the end of the list; existing
+ * steps must not be changed.
+ */
+public abstract class Migrations {
+
+  private static final String TAG = Migrations.class.getSimpleName();
+
+  /**
+   * Store timeline entry created dates as epoch milliseconds instead of local
+   * time text and index the timeline by project and created date
+   */
+  private static final Migration TO_VERSION_2 = new Migration(2) {
+    @Override
+    public void migrate(SQLiteDatabase db) {
+      db.execSQL("CREATE TABLE timeline_entry_v2(" +
+          "_id INTEGER PRIMARY KEY, " +
+          "content_type INTEGER NOT NULL, " +
+          "event_type TEXT NOT NULL, " +
+          "created_date INTEGER NOT NULL, " +
+          "data TEXT, " +
+          "project INTEGER NOT NULL, " +
+          "FOREIGN KEY(project) REFERENCES project(_id))");
+      // Version 1 dates are local time, the 'utc' modifier converts them before taking the epoch seconds
+      String epochSeconds = "strftime('%s', created_date, 'utc')";
+      db.execSQL("INSERT INTO timeline_entry_v2(_id, content_type, event_type, created_date, data, project) " +
+          "SELECT _id, content_type, event_type, CAST(" + epochSeconds + " AS INTEGER) * 1000, data, project " +
+          "FROM timeline_entry WHERE " + epochSeconds + " IS NOT NULL");
+      db.execSQL("DROP TABLE timeline_entry");
+      db.execSQL("ALTER TABLE timeline_entry_v2 RENAME TO timeline_entry");
+      db.execSQL("CREATE INDEX timeline_entry_project_created ON timeline_entry(project, created_date)");
+    }
+  };
+
+  /**
+   * Replace the timeline entry data JSON with typed user and item columns, so
+   * that reading an entry does not parse JSON and entries can be filtered by
+   * user or item
+   */
+  private static final Migration TO_VERSION_3 = new Migration(3) {
+    @Override
+    public void migrate(SQLiteDatabase db) {
+      db.execSQL("CREATE TABLE timeline_entry_v3(" +
+          "_id INTEGER PRIMARY KEY, " +
+          "content_type INTEGER NOT NULL, " +
+          "event_type TEXT NOT NULL, " +
+          "created_date INTEGER NOT NULL, " +
+          "project INTEGER NOT NULL, " +
+          "user_id INTEGER, " +
+          "user_name TEXT, " +
+          "user_photo TEXT, " +
+          "item_kind TEXT, " +
+          "item_id INTEGER, " +
+          "item_ref INTEGER, " +
+          "item_subject TEXT, " +
+          "FOREIGN KEY(project) REFERENCES project(_id))");
+      Cursor cursor = db.rawQuery(
+          "SELECT _id, content_type, event_type, created_date, project, data FROM timeline_entry", null);
+      try {
+        while (cursor.moveToNext()) {
+          ContentValues values = new ContentValues();
+          values.put("_id", cursor.getInt(0));
+          values.put("content_type", cursor.getInt(1));
+          values.put("event_type", cursor.getString(2));
+          values.put("created_date", cursor.getLong(3));
+          values.put("project", cursor.getInt(4));
+          ContentValues data = new ContentValues();
+          try {
+            readTimelineData(cursor.getString(5), data);
+          } catch (IOException | IllegalStateException | NumberFormatException e) {
+            // Entries with malformed data keep their other columns
+            data.clear();
+          }
+          values.putAll(data);
+          db.insert("timeline_entry_v3", null, values);
+        }
+      } finally {
+        cursor.close();
+      }
+      db.execSQL("DROP TABLE timeline_entry");
+      db.execSQL("ALTER TABLE timeline_entry_v3 RENAME TO timeline_entry");
+      db.execSQL("CREATE INDEX timeline_entry_project_created ON timeline_entry(project, created_date)");
+    }
+  };
+
+  /**
+   * Move timeline entry authors into a member table referenced by the entries,
+   * so that each member is stored once. Where a member's details differ
+   * between entries the newest entry wins.
+   */
+  private static final Migration TO_VERSION_4 = new Migration(4) {
+    @Override
+    public void migrate(SQLiteDatabase db) {
+      db.execSQL("CREATE TABLE member(_id INTEGER PRIMARY KEY, name TEXT, photo TEXT)");
+      db.execSQL("INSERT OR REPLACE INTO member(_id, name, photo) " +
+          "SELECT user_id, user_name, user_photo FROM timeline_entry " +
+          "WHERE user_id IS NOT NULL ORDER BY created_date");
+      db.execSQL("CREATE TABLE timeline_entry_v4(" +
+          "_id INTEGER PRIMARY KEY, " +
+          "content_type INTEGER NOT NULL, " +
+          "event_type TEXT NOT NULL, " +
+          "created_date INTEGER NOT NULL, " +
+          "project INTEGER NOT NULL, " +
+          "user_id INTEGER, " +
+          "item_kind TEXT, " +
+          "item_id INTEGER, " +
+          "item_ref INTEGER, " +
+          "item_subject TEXT, " +
+          "FOREIGN KEY(project) REFERENCES project(_id), " +
+          "FOREIGN KEY(user_id) REFERENCES member(_id))");
+      String columns = "_id, content_type, event_type, created_date, project, user_id, " +
+          "item_kind, item_id, item_ref, item_subject";
+      db.execSQL("INSERT INTO timeline_entry_v4(" + columns + ") SELECT " + columns + " FROM timeline_entry");
+      db.execSQL("DROP TABLE timeline_entry");
+      db.execSQL("ALTER TABLE timeline_entry_v4 RENAME TO timeline_entry");
+      db.execSQL("CREATE INDEX timeline_entry_project_created ON timeline_entry(project, created_date)");
+    }
+  };
+
+  /**
+   * Add full-text indexes of projects and timeline entry subjects, built from
+   * the rows already stored
+   */
+  private static final Migration TO_VERSION_5 = new Migration(5) {
+    @Override
+    public void migrate(SQLiteDatabase db) {
+      db.execSQL("CREATE VIRTUAL TABLE project_search USING fts4(content=\"project\", name, description)");
+      db.execSQL("CREATE TRIGGER project_search_bu BEFORE UPDATE ON project BEGIN " +
+          "DELETE FROM project_search WHERE docid = old.rowid; END");
+      db.execSQL("CREATE TRIGGER project_search_bd BEFORE DELETE ON project BEGIN " +
+          "DELETE FROM project_search WHERE docid = old.rowid; END");
+      db.execSQL("CREATE TRIGGER project_search_au AFTER UPDATE ON project BEGIN " +
+          "INSERT INTO project_search(docid, name, description) VALUES (new.rowid, new.name, new.description); END");
+      db.execSQL("CREATE TRIGGER project_search_ai AFTER INSERT ON project BEGIN " +
+          "INSERT INTO project_search(docid, name, description) VALUES (new.rowid, new.name, new.description); END");
+      db.execSQL("CREATE VIRTUAL TABLE timeline_entry_search USING fts4(content=\"timeline_entry\", item_subject)");
+      db.execSQL("CREATE TRIGGER timeline_entry_search_bu BEFORE UPDATE ON timeline_entry BEGIN " +
+          "DELETE FROM timeline_entry_search WHERE docid = old.rowid; END");
+      db.execSQL("CREATE TRIGGER timeline_entry_search_bd BEFORE DELETE ON timeline_entry BEGIN " +
+          "DELETE FROM timeline_entry_search WHERE docid = old.rowid; END");
+      db.execSQL("CREATE TRIGGER timeline_entry_search_au AFTER UPDATE ON timeline_entry BEGIN " +
+          "INSERT INTO timeline_entry_search(docid, item_subject) VALUES (new.rowid, new.item_subject); END");
+      db.execSQL("CREATE TRIGGER timeline_entry_search_ai AFTER INSERT ON timeline_entry BEGIN " +
+          "INSERT INTO timeline_entry_search(docid, item_subject) VALUES (new.rowid, new.item_subject); END");
+      db.execSQL("INSERT INTO project_search(project_search) VALUES('rebuild')");
+      db.execSQL("INSERT INTO timeline_entry_search(timeline_entry_search) VALUES('rebuild')");
+    }
+  };
+
+  /**
+   * Delete timeline entries along with their project, now that foreign keys
+   * are enforced. Entries of projects that are already gone are dropped and
+   * references to missing members cleared, so the rebuilt table satisfies its
+   * constraints.
+   */
+  private static final Migration TO_VERSION_6 = new Migration(6) {
+    @Override
+    public void migrate(SQLiteDatabase db) {
+      db.execSQL("CREATE TABLE timeline_entry_v6(" +
+          "_id INTEGER PRIMARY KEY, " +
+          "content_type INTEGER NOT NULL, " +
+          "event_type TEXT NOT NULL, " +
+          "created_date INTEGER NOT NULL, " +
+          "project INTEGER NOT NULL, " +
+          "user_id INTEGER, " +
+          "item_kind TEXT, " +
+          "item_id INTEGER, " +
+          "item_ref INTEGER, " +
+          "item_subject TEXT, " +
+          "FOREIGN KEY(project) REFERENCES project(_id) ON DELETE CASCADE, " +
+          "FOREIGN KEY(user_id) REFERENCES member(_id))");
+      db.execSQL("INSERT INTO timeline_entry_v6(_id, content_type, event_type, created_date, project, user_id, " +
+          "item_kind, item_id, item_ref, item_subject) " +
+          "SELECT _id, content_type, event_type, created_date, project, " +
+          "CASE WHEN user_id IN (SELECT _id FROM member) THEN user_id END, " +
+          "item_kind, item_id, item_ref, item_subject FROM timeline_entry " +
+          "WHERE project IN (SELECT _id FROM project)");
+      // Dropping the table drops its index and search triggers as well
+      db.execSQL("DROP TABLE timeline_entry");
+      db.execSQL("ALTER TABLE timeline_entry_v6 RENAME TO timeline_entry");
+      db.execSQL("CREATE INDEX timeline_entry_project_created ON timeline_entry(project, created_date)");
+      db.execSQL("CREATE TRIGGER timeline_entry_search_bu BEFORE UPDATE ON timeline_entry BEGIN " +
+          "DELETE FROM timeline_entry_search WHERE docid = old.rowid; END");
+      db.execSQL("CREATE TRIGGER timeline_entry_search_bd BEFORE DELETE ON timeline_entry BEGIN " +
+          "DELETE FROM timeline_entry_search WHERE docid = old.rowid; END");
+      db.execSQL("CREATE TRIGGER timeline_entry_search_au AFTER UPDATE ON timeline_entry BEGIN " +
+          "INSERT INTO timeline_entry_search(docid, item_subject) VALUES (new.rowid, new.item_subject); END");
+      db.execSQL("CREATE TRIGGER timeline_entry_search_ai AFTER INSERT ON timeline_entry BEGIN " +
+          "INSERT INTO timeline_entry_search(docid, item_subject) VALUES (new.rowid, new.item_subject); END");
+      db.execSQL("INSERT INTO timeline_entry_search(timeline_entry_search) VALUES('rebuild')");
+    }
+  };
+
+  /**
+   * Move project tags from a JSON column of the project table into a project
+   * tag table indexed by tag name, so that projects can be filtered by tag
+   * and reading a project does not parse JSON
+   */
+  private static final Migration TO_VERSION_7 = new Migration(7) {
+    @Override
+    public void migrate(SQLiteDatabase db) {
+      db.execSQL("CREATE TABLE project_tag(" +
+          "project INTEGER NOT NULL, " +
+          "position INTEGER NOT NULL, " +
+          "name TEXT NOT NULL, " +
+          "PRIMARY KEY(project, position), " +
+          "FOREIGN KEY(project) REFERENCES project(_id) ON DELETE CASCADE)");
+      db.execSQL("CREATE INDEX project_tag_name ON project_tag(name, project)");
+      Cursor cursor = db.rawQuery("SELECT _id, tags FROM project WHERE tags IS NOT NULL", null);
+      try {
+        while (cursor.moveToNext()) {
+          List<String> tags;
+          try {
+            tags = readStringList(cursor.getString(1));
+          } catch (IOException | IllegalStateException e) {
+            tags = null;
+          }
+          if (tags == null) {
+            continue;
+          }
+          for (int i = 0; i < tags.size(); i++) {
+            ContentValues values = new ContentValues();
+            values.put("project", cursor.getInt(0));
+            values.put("position", i);
+            values.put("name", tags.get(i));
+            db.insert("project_tag", null, values);
+          }
+        }
+      } finally {
+        cursor.close();
+      }
+      db.execSQL("CREATE TABLE project_v7(" +
+          "_id INTEGER PRIMARY KEY, " +
+          "name TEXT NOT NULL, " +
+          "description TEXT, " +
+          "logo_small TEXT, " +
+          "logo_big TEXT, " +
+          "private INTEGER NOT NULL)");
+      db.execSQL("INSERT INTO project_v7(_id, name, description, logo_small, logo_big, private) " +
+          "SELECT _id, name, description, logo_small, logo_big, private FROM project");
+      // Dropping the table drops its search triggers as well
+      db.execSQL("DROP TABLE project");
+      db.execSQL("ALTER TABLE project_v7 RENAME TO project");
+      db.execSQL("CREATE TRIGGER project_search_bu BEFORE UPDATE ON project BEGIN " +
+          "DELETE FROM project_search WHERE docid = old.rowid; END");
+      db.execSQL("CREATE TRIGGER project_search_bd BEFORE DELETE ON project BEGIN " +
+          "DELETE FROM project_search WHERE docid = old.rowid; END");
+      db.execSQL("CREATE TRIGGER project_search_au AFTER UPDATE ON project BEGIN " +
+          "INSERT INTO project_search(docid, name, description) VALUES (new.rowid, new.name, new.description); END");
+      db.execSQL("CREATE TRIGGER project_search_ai AFTER INSERT ON project BEGIN " +
+          "INSERT INTO project_search(docid, name, description) VALUES (new.rowid, new.name, new.description); END");
+      db.execSQL("INSERT INTO project_search(project_search) VALUES('rebuild')");
+    }
+  };
+
+  /**
+   * Record the projects of each member, so that a member's project list can be
+   * served from the database. The members of the projects already stored are
+   * unknown, their lists are retrieved again.
+   */
+  private static final Migration TO_VERSION_8 = new Migration(8) {
+    @Override
+    public void migrate(SQLiteDatabase db) {
+      db.execSQL("CREATE TABLE project_member(" +
+          "member INTEGER NOT NULL, " +
+          "project INTEGER NOT NULL, " +
+          "PRIMARY KEY(member, project), " +
+          "FOREIGN KEY(project) REFERENCES project(_id) ON DELETE CASCADE)");
+    }
+  };
+
+  /**
+   * All steps in version order
+   */
+  static final List<Migration> ALL = Collections.unmodifiableList(Arrays.asList(
+      TO_VERSION_2,
+      TO_VERSION_3,
+      TO_VERSION_4,
+      TO_VERSION_5,
+      TO_VERSION_6,
+      TO_VERSION_7,
+      TO_VERSION_8
+  ));
+
+  /**
+   * Upgrade a database by running the steps between two versions
+   *
+   * @param db            Database
+   * @param oldVersion    Version of the stored schema
+   * @param newVersion    Version to upgrade to
+   */
+  public static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+    migrate(db, oldVersion, newVersion, ALL);
+  }
+
+  /**
+   * Upgrade a database by running the given steps between two versions. Each
+   * step runs in its own transaction, nested in the upgrade transaction when
+   * called from {@link DatabaseHelper#onUpgrade}, so a failing step leaves the
+   * database at the version before the upgrade.
+   *
+   * @param db            Database
+   * @param oldVersion    Version of the stored schema
+   * @param newVersion    Version to upgrade to
+   * @param steps         Steps in version order
+   * @throws IllegalStateException if there is no step for one of the versions
+   */
+  static void migrate(SQLiteDatabase db, int oldVersion, int newVersion, List<Migration> steps) {
+    int version = oldVersion;
+    for (Migration step : steps) {
+      if (step.getVersion() <= version || step.getVersion() > newVersion) {
+        continue;
+      }
+      if (step.getVersion() != version + 1) {
+        break;
+      }
+      Log.i(TAG, "Migrating database from version " + version + " to " + step.getVersion());
+      db.beginTransaction();
+      try {
+        step.migrate(db);
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+      version = step.getVersion();
+    }
+    if (version != newVersion) {
+      throw new IllegalStateException("No migration from database version " + version + " to " + (version + 1));
+    }
+  }
+
+  /**
+   * Decode the timeline entry data JSON stored up to version 2 into the user
+   * and item columns of version 3. The item is the user story, task or issue
+   * the entry is about, in that order of preference.
+   *
+   * @param json    Data JSON, may be null
+   * @param values  Receives the user and item columns
+   * @throws IOException if the JSON is malformed
+   */
+  private static void readTimelineData(String json, ContentValues values) throws IOException {
+    if (json == null) {
+      return;
+    }
+    JsonReader in = new JsonReader(new StringReader(json));
+    in.setLenient(true);
+    if (in.peek() == JsonToken.NULL) {
+      return;
+    }
+    ContentValues user = null;
+    ContentValues userStory = null;
+    ContentValues task = null;
+    ContentValues issue = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "user":
+          user = readUser(in);
+          break;
+        case "userstory":
+          userStory = readItem(in);
+          break;
+        case "task":
+          task = readItem(in);
+          break;
+        case "issue":
+          issue = readItem(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    if (user != null) {
+      values.putAll(user);
+    }
+    if (userStory != null) {
+      values.putAll(userStory);
+      values.put("item_kind", "userstory");
+    } else if (task != null) {
+      values.putAll(task);
+      values.put("item_kind", "task");
+    } else if (issue != null) {
+      values.putAll(issue);
+      values.put("item_kind", "issue");
+    }
+  }
+
+  /**
+   * Decode a version 2 member object into the user columns
+   *
+   * @param in  JSON reader positioned at the object
+   * @return    Column values, null if the object is null
+   * @throws IOException if the JSON is malformed
+   */
+  private static ContentValues readUser(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    ContentValues values = new ContentValues();
+    values.put("user_id", 0);
+    values.putNull("user_name");
+    values.putNull("user_photo");
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+      } else if (name.equals("id")) {
+        values.put("user_id", in.nextInt());
+      } else if (name.equals("name")) {
+        values.put("user_name", in.nextString());
+      } else if (name.equals("photo")) {
+        values.put("user_photo", in.nextString());
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    return values;
+  }
+
+  /**
+   * Decode a version 2 user story, task or issue object into the item columns
+   *
+   * @param in  JSON reader positioned at the object
+   * @return    Column values, null if the object is null
+   * @throws IOException if the JSON is malformed
+   */
+  private static ContentValues readItem(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    ContentValues values = new ContentValues();
+    values.put("item_id", 0);
+    values.putNull("item_subject");
+    values.put("item_ref", 0);
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+      } else if (name.equals("id")) {
+        values.put("item_id", in.nextInt());
+      } else if (name.equals("subject")) {
+        values.put("item_subject", in.nextString());
+      } else if (name.equals("ref")) {
+        values.put("item_ref", in.nextInt());
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    return values;
+  }
+
+  /**
+   * Decode the project tags JSON stored up to version 6
+   *
+   * @param json  JSON array of strings, may be null
+   * @return      Tags, null if there are none
+   * @throws IOException if the JSON is malformed
+   */
+  private static List<String> readStringList(String json) throws IOException {
+    if (json == null) {
+      return null;
+    }
+    JsonReader in = new JsonReader(new StringReader(json));
+    in.setLenient(true);
+    if (in.peek() == JsonToken.NULL) {
+      return null;
+    }
+    List<String> list = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        list.add(null);
+      } else {
+        list.add(in.nextString());
+      }
+    }
+    in.endArray();
+    return list;
+  }
+
+}
@@ -0,0 +1,38 @@
+package co.brianberg.taiga.db;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retention policy for the cached timeline: how many entries are kept per
+ * project and how old entries may get before they are pruned. Pruned entries
+ * are fetched again from the server should they be paged into view.
+ */
+public class RetentionPolicy {
+
+  /**
+   * Keep the latest 2000 entries of each project, dropping entries older than 180 days
+   */
+  public static final RetentionPolicy DEFAULT = new RetentionPolicy(2000, TimeUnit.DAYS.toMillis(180));
+
+  private final int maxEntriesPerProject;
+
+  private final long maxAgeMs;
+
+  /**
+   * @param maxEntriesPerProject  Maximum number of entries kept per project, the newest are kept
+   * @param maxAgeMs              Maximum age of an entry in milliseconds
+   */
+  public RetentionPolicy(int maxEntriesPerProject, long maxAgeMs) {
+    this.maxEntriesPerProject = maxEntriesPerProject;
+    this.maxAgeMs = maxAgeMs;
+  }
+
+  public int getMaxEntriesPerProject() {
+    return maxEntriesPerProject;
+  }
+
+  public long getMaxAgeMs() {
+    return maxAgeMs;
+  }
+
+}
@@ -0,0 +1,130 @@
+package co.brianberg.taiga.db;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Canonical instances of text column values drawn from a small set, such as
+ * event types or tags. Values are copied from the cursor into a reused buffer
+ * and matched against the strings read before, so reading a value seen before
+ * allocates nothing. Once the pool is full further values are read as new
+ * strings.
+ */
+public class StringPool {
+
+  private final String[] mStrings;
+
+  private final int mMaxSize;
+
+  private CharArrayBuffer mBuffer;
+
+  private int mSize;
+
+  /**
+   * @param maxSize   Maximum number of distinct strings kept
+   */
+  public StringPool(int maxSize) {
+    int capacity = Integer.highestOneBit(Math.max(maxSize, 1)) * 4;
+    mStrings = new String[capacity];
+    mMaxSize = maxSize;
+  }
+
+  /**
+   * Read a text column of the current row
+   *
+   * @param cursor  Cursor
+   * @param column  Column index
+   * @return        Canonical value or null if the column is null
+   */
+  public synchronized String get(Cursor cursor, int column) {
+    if (cursor.isNull(column)) {
+      return null;
+    }
+    CharArrayBuffer buffer = getBuffer();
+    cursor.copyStringToBuffer(column, buffer);
+    return intern(buffer.data, 0, buffer.sizeCopied);
+  }
+
+  /**
+   * Read a text column of the current row holding a list of values
+   *
+   * @param cursor      Cursor
+   * @param column      Column index
+   * @param separator   Character separating the values
+   * @return            Canonical values or null if the column is null
+   */
+  public synchronized List<String> getList(Cursor cursor, int column, char separator) {
+    if (cursor.isNull(column)) {
+      return null;
+    }
+    CharArrayBuffer buffer = getBuffer();
+    cursor.copyStringToBuffer(column, buffer);
+    char[] data = buffer.data;
+    int length = buffer.sizeCopied;
+    List<String> values = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i <= length; i++) {
+      if (i == length || data[i] == separator) {
+        values.add(intern(data, start, i - start));
+        start = i + 1;
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Get the canonical instance of a string
+   *
+   * @param chars   Characters of the string
+   * @param offset  Offset of the string in the characters
+   * @param length  Length of the string
+   * @return        Canonical instance
+   */
+  synchronized String intern(char[] chars, int offset, int length) {
+    int hash = 0;
+    for (int i = offset; i < offset + length; i++) {
+      hash = 31 * hash + chars[i];
+    }
+    int mask = mStrings.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      String string = mStrings[slot];
+      if (string == null) {
+        string = new String(chars, offset, length);
+        if (mSize < mMaxSize) {
+          mStrings[slot] = string;
+          mSize++;
+        }
+        return string;
+      }
+      if (string.hashCode() == hash && matches(string, chars, offset, length)) {
+        return string;
+      }
+    }
+  }
+
+  /**
+   * @return  Buffer the column values are copied into, created on first use
+   */
+  private CharArrayBuffer getBuffer() {
+    if (mBuffer == null) {
+      mBuffer = new CharArrayBuffer(64);
+    }
+    return mBuffer;
+  }
+
+  private static boolean matches(String string, char[] chars, int offset, int length) {
+    if (string.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (string.charAt(i) != chars[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,78 @@
+package co.brianberg.taiga.db;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Rows of a table inserted, updated or deleted by a write, identified by
+ * their IDs, see {@link ChangeNotifier}
+ */
+public class TableChange {
+
+  private final String mTable;
+
+  private final Set<Integer> mInserted;
+
+  private final Set<Integer> mUpdated;
+
+  private final Set<Integer> mDeleted;
+
+  /**
+   * @param table     Table
+   * @param inserted  IDs of the inserted rows
+   * @param updated   IDs of the updated rows
+   * @param deleted   IDs of the deleted rows
+   */
+  public TableChange(String table, Set<Integer> inserted, Set<Integer> updated, Set<Integer> deleted) {
+    mTable = table;
+    mInserted = Collections.unmodifiableSet(new HashSet<>(inserted));
+    mUpdated = Collections.unmodifiableSet(new HashSet<>(updated));
+    mDeleted = Collections.unmodifiableSet(new HashSet<>(deleted));
+  }
+
+  public static TableChange inserted(String table, int id) {
+    return new TableChange(table, Collections.singleton(id), Collections.<Integer>emptySet(),
+        Collections.<Integer>emptySet());
+  }
+
+  public static TableChange updated(String table, int id) {
+    return new TableChange(table, Collections.<Integer>emptySet(), Collections.singleton(id),
+        Collections.<Integer>emptySet());
+  }
+
+  public static TableChange deleted(String table, int id) {
+    return new TableChange(table, Collections.<Integer>emptySet(), Collections.<Integer>emptySet(),
+        Collections.singleton(id));
+  }
+
+  public String getTable() {
+    return mTable;
+  }
+
+  public Set<Integer> getInserted() {
+    return mInserted;
+  }
+
+  public Set<Integer> getUpdated() {
+    return mUpdated;
+  }
+
+  public Set<Integer> getDeleted() {
+    return mDeleted;
+  }
+
+  /**
+   * @return  IDs of the inserted and updated rows, which can be read again
+   */
+  public Set<Integer> getChanged() {
+    Set<Integer> changed = new HashSet<>(mInserted);
+    changed.addAll(mUpdated);
+    return changed;
+  }
+
+  public boolean isEmpty() {
+    return mInserted.isEmpty() && mUpdated.isEmpty() && mDeleted.isEmpty();
+  }
+
+}
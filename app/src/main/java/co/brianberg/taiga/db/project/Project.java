@@ -16,11 +16,33 @@ public class Project implements BaseColumns, Parcelable {
   // Table column names
   public static final String NAME = "name";
   public static final String DESC = "description";
+  // Tags are stored in their own table and read as a single column, see ProjectManager
   public static final String TAGS = "tags";
   public static final String LOGO_SMALL = "logo_small";
   public static final String LOGO_BIG = "logo_big";
   public static final String PRIVATE = "private";
 
+  /**
+   * Column names of the project tags table
+   */
+  public static final class Tag {
+    public static final String PROJECT = "project";
+    public static final String POSITION = "position";
+    public static final String NAME = "name";
+
+    private Tag() {}
+  }
+
+  /**
+   * Column names of the project members table
+   */
+  public static final class Membership {
+    public static final String MEMBER = "member";
+    public static final String PROJECT = "project";
+
+    private Membership() {}
+  }
+
   private int id;
 
   private String name;
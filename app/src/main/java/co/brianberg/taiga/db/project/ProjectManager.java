@@ -3,23 +3,34 @@ package co.brianberg.taiga.db.project;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
-
-import com.google.gson.Gson;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import co.brianberg.taiga.db.ChangeNotifier;
 import co.brianberg.taiga.db.DatabaseHelper;
+import co.brianberg.taiga.db.FullTextQuery;
+import co.brianberg.taiga.db.StringPool;
+import co.brianberg.taiga.db.TableChange;
+import co.brianberg.taiga.db.timeline.TimelineEntry;
 
 /**
- * Project manager class responsible for storing and retrieving projects
+ * Project manager class responsible for storing and retrieving projects.
+ * Changes to projects, including their tags, are published through the
+ * {@link ChangeNotifier}.
  */
 public class ProjectManager {
 
-  // Table columns
+  // Table columns, in the order of allColumns so rows are read by position
   private static final int COLUMN_ID = 0;
   private static final int COLUMN_NAME = 1;
   private static final int COLUMN_DESC = 2;
@@ -28,6 +39,12 @@ public class ProjectManager {
   private static final int COLUMN_LOGO_BIG = 5;
   private static final int COLUMN_PRIVATE = 6;
 
+  // Separates the tags read as a single column, a control character no tag contains
+  private static final char TAG_SEPARATOR = '\u001f';
+
+  // Canonical tag names shared by all projects, so rows with known tags do not allocate them
+  private static final StringPool TAG_POOL = new StringPool(512);
+
   private SQLiteDatabase database;
 
   private DatabaseHelper dbHelper;
@@ -36,7 +53,11 @@ public class ProjectManager {
       Project._ID,
       Project.NAME,
       Project.DESC,
-      Project.TAGS,
+      // group_concat follows the order of the rows it reads, so the tags are read from an ordered subquery
+      "(SELECT group_concat(" + Project.Tag.NAME + ", char(31)) FROM (SELECT " + Project.Tag.NAME + " FROM " +
+          DatabaseHelper.TABLE_PROJECT_TAG + " WHERE " + DatabaseHelper.TABLE_PROJECT_TAG + "." + Project.Tag.PROJECT +
+          " = " + DatabaseHelper.TABLE_PROJECT + "." + Project._ID + " ORDER BY " + Project.Tag.POSITION + ")) AS " +
+          Project.TAGS,
       Project.LOGO_SMALL,
       Project.LOGO_BIG,
       Project.PRIVATE
@@ -44,10 +65,12 @@ public class ProjectManager {
 
   public ProjectManager(Context context) {
     dbHelper = DatabaseHelper.getInstance(context);
+    database = dbHelper.getWritableDatabase();
   }
 
   /**
-   * Open the database
+   * Open the database. The shared connection is opened by the constructor
+   * already, this is kept for callers which open the database explicitly.
    *
    * @throws SQLException
    */
@@ -56,11 +79,10 @@ public class ProjectManager {
   }
 
   /**
-   * Close the database
+   * Release the manager. The shared connection stays open for other managers
+   * and is closed with the process.
    */
-  public void close() {
-    dbHelper.close();
-  }
+  public void close() {}
 
   /**
    * Add a project
@@ -79,11 +101,10 @@ public class ProjectManager {
     values.put(Project._ID, id);
     values.put(Project.NAME, name);
     values.put(Project.DESC, description);
-    values.put(Project.TAGS, new Gson().toJson(tags));
     values.put(Project.LOGO_SMALL, logoSmall);
     values.put(Project.LOGO_BIG, logoBig);
     values.put(Project.PRIVATE, isPrivate ? 1 : 0);
-    return createProject(values);
+    return createProject(values, tags);
   }
 
   /**
@@ -101,16 +122,24 @@ public class ProjectManager {
    * Retrieve a project from the database
    *
    * @param id    Project ID
-   * @return      Retrieved project
+   * @return      Retrieved project or null if not found
    */
   public Project getProject(int id) {
     Cursor cursor = getProject(String.valueOf(id));
-    cursor.moveToFirst();
-    Project project = fromCursor(cursor);
+    Project project = cursor.moveToFirst() ? fromCursor(cursor) : null;
     cursor.close();
     return project;
   }
 
+  /**
+   * Get the number of stored projects
+   *
+   * @return  Number of projects
+   */
+  public long getProjectCount() {
+    return DatabaseUtils.queryNumEntries(database, DatabaseHelper.TABLE_PROJECT);
+  }
+
   /**
    * Update a project
    *
@@ -121,11 +150,23 @@ public class ProjectManager {
     ContentValues values = new ContentValues();
     values.put(Project.NAME, project.getName());
     values.put(Project.DESC, project.getDescription());
-    values.put(Project.TAGS, new Gson().toJson(project.getTags()));
     values.put(Project.LOGO_SMALL, project.getLogoSmallUrl());
     values.put(Project.LOGO_BIG, project.getLogoBigUrl());
     values.put(Project.PRIVATE, project.isPrivate() ? 1 : 0);
-    int rowsAffected = updateProject(String.valueOf(project.getId()), values);
+    int rowsAffected;
+    database.beginTransaction();
+    try {
+      rowsAffected = update(String.valueOf(project.getId()), values);
+      if (rowsAffected > 0) {
+        storeTags(project.getId(), project.getTags());
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+    if (rowsAffected > 0) {
+      ChangeNotifier.getInstance().publish(TableChange.updated(DatabaseHelper.TABLE_PROJECT, project.getId()));
+    }
     return rowsAffected > 0;
   }
 
@@ -140,17 +181,149 @@ public class ProjectManager {
   }
 
   /**
-   * Delete a project
+   * Upsert a batch of projects in a single transaction. Each project is
+   * written with a precompiled UPDATE, falling back to an INSERT when the
+   * project is not stored yet, its tags are replaced and nothing is read back.
+   *
+   * @param projects  Projects to be updated or inserted
+   */
+  public void upsertProjects(List<Project> projects) {
+    Set<Integer> inserted = new HashSet<>();
+    Set<Integer> updated = new HashSet<>();
+    database.beginTransaction();
+    try {
+      writeProjects(projects, inserted, updated);
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+    ChangeNotifier.getInstance().publish(new TableChange(DatabaseHelper.TABLE_PROJECT, inserted, updated,
+        Collections.<Integer>emptySet()));
+  }
+
+  /**
+   * Upsert the projects of a member, see {@link #upsertProjects}, and replace
+   * the member's stored project list with them in the same transaction
+   *
+   * @param memberId  Member ID
+   * @param projects  All projects of the member
+   */
+  public void upsertMemberProjects(int memberId, List<Project> projects) {
+    SQLiteStatement insertMembership = database.compileStatement(
+        "INSERT OR IGNORE INTO " + DatabaseHelper.TABLE_PROJECT_MEMBER + "(" +
+            Project.Membership.MEMBER + ", " +
+            Project.Membership.PROJECT +
+            ") VALUES (?, ?)");
+    Set<Integer> inserted = new HashSet<>();
+    Set<Integer> updated = new HashSet<>();
+    database.beginTransaction();
+    try {
+      writeProjects(projects, inserted, updated);
+      // Projects dropped from the member's list are published as updated so that the list reads them again
+      Cursor cursor = database.query(DatabaseHelper.TABLE_PROJECT_MEMBER, new String[] { Project.Membership.PROJECT },
+          Project.Membership.MEMBER + " = ?", new String[] { String.valueOf(memberId) }, null, null, null);
+      while (cursor.moveToNext()) {
+        if (!inserted.contains(cursor.getInt(0))) {
+          updated.add(cursor.getInt(0));
+        }
+      }
+      cursor.close();
+      database.delete(DatabaseHelper.TABLE_PROJECT_MEMBER, Project.Membership.MEMBER + " = ?",
+          new String[] { String.valueOf(memberId) });
+      for (Project project : projects) {
+        insertMembership.bindLong(1, memberId);
+        insertMembership.bindLong(2, project.getId());
+        insertMembership.executeInsert();
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+      insertMembership.close();
+    }
+    ChangeNotifier.getInstance().publish(new TableChange(DatabaseHelper.TABLE_PROJECT, inserted, updated,
+        Collections.<Integer>emptySet()));
+  }
+
+  /**
+   * Write a batch of projects within the caller's transaction
+   *
+   * @param projects  Projects to be updated or inserted
+   * @param inserted  Receives the IDs of the inserted projects
+   * @param updated   Receives the IDs of the updated projects
+   */
+  private void writeProjects(List<Project> projects, Set<Integer> inserted, Set<Integer> updated) {
+    SQLiteStatement update = database.compileStatement(
+        "UPDATE " + DatabaseHelper.TABLE_PROJECT + " SET " +
+            Project.NAME + " = ?, " +
+            Project.DESC + " = ?, " +
+            Project.LOGO_SMALL + " = ?, " +
+            Project.LOGO_BIG + " = ?, " +
+            Project.PRIVATE + " = ? " +
+            "WHERE " + Project._ID + " = ?");
+    SQLiteStatement insert = database.compileStatement(
+        "INSERT INTO " + DatabaseHelper.TABLE_PROJECT + "(" +
+            Project.NAME + ", " +
+            Project.DESC + ", " +
+            Project.LOGO_SMALL + ", " +
+            Project.LOGO_BIG + ", " +
+            Project.PRIVATE + ", " +
+            Project._ID +
+            ") VALUES (?, ?, ?, ?, ?, ?)");
+    SQLiteStatement deleteTags = compileDeleteTags();
+    SQLiteStatement insertTag = compileInsertTag();
+    try {
+      for (Project project : projects) {
+        bindProject(update, project);
+        if (update.executeUpdateDelete() > 0) {
+          updated.add(project.getId());
+        } else {
+          bindProject(insert, project);
+          insert.executeInsert();
+          inserted.add(project.getId());
+        }
+        storeTags(deleteTags, insertTag, project.getId(), project.getTags());
+      }
+    } finally {
+      update.close();
+      insert.close();
+      deleteTags.close();
+      insertTag.close();
+    }
+  }
+
+  /**
+   * Delete a project, its timeline entries are deleted along with it and
+   * their deletion is published as well
    *
    * @param id  Project ID
    * @return    Database rows affected
    */
   public int deleteProject(String id) {
-    return database.delete(
-        DatabaseHelper.TABLE_PROJECT,
-        Project._ID + " = ?",
-        new String[]{id}
-    );
+    Set<Integer> entryIds = new HashSet<>();
+    int rowsAffected;
+    database.beginTransaction();
+    try {
+      Cursor cursor = database.query(DatabaseHelper.TABLE_TIMELINE_ENTRY, new String[] { TimelineEntry._ID },
+          TimelineEntry.PROJECT + " = ?", new String[] { id }, null, null, null);
+      while (cursor.moveToNext()) {
+        entryIds.add(cursor.getInt(0));
+      }
+      cursor.close();
+      rowsAffected = database.delete(
+          DatabaseHelper.TABLE_PROJECT,
+          Project._ID + " = ?",
+          new String[]{id}
+      );
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+    if (rowsAffected > 0) {
+      ChangeNotifier.getInstance().publish(TableChange.deleted(DatabaseHelper.TABLE_PROJECT, Integer.parseInt(id)));
+      ChangeNotifier.getInstance().publish(new TableChange(DatabaseHelper.TABLE_TIMELINE_ENTRY,
+          Collections.<Integer>emptySet(), Collections.<Integer>emptySet(), entryIds));
+    }
+    return rowsAffected;
   }
 
   /**
@@ -184,6 +357,33 @@ public class ProjectManager {
     return projects;
   }
 
+  /**
+   * Get the stored project list of a member, as last retrieved for the member
+   *
+   * @param memberId  Member ID
+   * @return          Projects of the member ordered by name
+   */
+  public List<Project> getMemberProjects(int memberId) {
+    List<Project> projects = new ArrayList<>();
+    Cursor cursor = getProjects(getMemberSelection(memberId), null, parseColumn(COLUMN_NAME) + " ASC");
+    while (cursor.moveToNext()) {
+      projects.add(fromCursor(cursor));
+    }
+    cursor.close();
+    return projects;
+  }
+
+  /**
+   * Get the number of projects in the stored project list of a member
+   *
+   * @param memberId  Member ID
+   * @return          Number of projects, 0 if the member's list was never stored
+   */
+  public long getMemberProjectCount(int memberId) {
+    return DatabaseUtils.queryNumEntries(database, DatabaseHelper.TABLE_PROJECT_MEMBER,
+        Project.Membership.MEMBER + " = ?", new String[] { String.valueOf(memberId) });
+  }
+
   /**
    * Get a project by name
    *
@@ -211,11 +411,140 @@ public class ProjectManager {
    * @return                Database cursor
    */
   public Cursor getProjects(String[] selectionArgs) {
-    String selection = COLUMN_NAME + " LIKE ?";
-    String sortOrder = COLUMN_NAME + " ASC";
+    String selection = parseColumn(COLUMN_NAME) + " LIKE ?";
+    String sortOrder = parseColumn(COLUMN_NAME) + " ASC";
     return getProjects(selection, selectionArgs, sortOrder);
   }
 
+  /**
+   * Search projects using the full-text indexes. A project matches if its name
+   * or description contains the words searched for, or if one of its stored
+   * timeline entries does.
+   *
+   * @param text  Search text, each word is matched as a prefix
+   * @return      Matching projects ordered by name
+   */
+  public List<Project> searchProjects(String text) {
+    return searchProjects(text, null);
+  }
+
+  /**
+   * Search the projects having a tag using the full-text indexes, see
+   * {@link #searchProjects(String)}
+   *
+   * @param text  Search text, each word is matched as a prefix, null to match any project
+   * @param tag   Tag name, null to match any project
+   * @return      Matching projects ordered by name
+   */
+  public List<Project> searchProjects(String text, String tag) {
+    return searchProjects(text, tag, null);
+  }
+
+  /**
+   * Search some of the projects having a tag using the full-text indexes, to
+   * find which of the changed projects a filtered list shows
+   *
+   * @param text  Search text, each word is matched as a prefix, null to match any project
+   * @param tag   Tag name, null to match any project
+   * @param ids   Project IDs, null to match any project
+   * @return      Matching projects ordered by name
+   */
+  public List<Project> searchProjects(String text, String tag, Collection<Integer> ids) {
+    return searchProjects(null, text, tag, ids);
+  }
+
+  /**
+   * Search some of the projects in the stored project list of a member, see
+   * {@link #searchProjects(String, String, Collection)}
+   *
+   * @param memberId  Member ID
+   * @param text      Search text, each word is matched as a prefix, null to match any project
+   * @param tag       Tag name, null to match any project
+   * @param ids       Project IDs, null to match any project
+   * @return          Matching projects ordered by name
+   */
+  public List<Project> searchMemberProjects(int memberId, String text, String tag, Collection<Integer> ids) {
+    return searchProjects(getMemberSelection(memberId), text, tag, ids);
+  }
+
+  private List<Project> searchProjects(String selection, String text, String tag, Collection<Integer> ids) {
+    List<Project> projects = new ArrayList<>();
+    String match = FullTextQuery.fromUserInput(text);
+    if (match == null && text != null) {
+      return projects;
+    }
+    List<String> conditions = new ArrayList<>();
+    List<String> args = new ArrayList<>();
+    if (selection != null) {
+      conditions.add(selection);
+    }
+    if (match != null) {
+      conditions.add("(" +
+          Project._ID + " IN (SELECT docid FROM " + DatabaseHelper.TABLE_PROJECT_SEARCH +
+              " WHERE " + DatabaseHelper.TABLE_PROJECT_SEARCH + " MATCH ?) OR " +
+          Project._ID + " IN (SELECT " + TimelineEntry.PROJECT + " FROM " + DatabaseHelper.TABLE_TIMELINE_ENTRY +
+              " WHERE " + TimelineEntry._ID + " IN (SELECT docid FROM " + DatabaseHelper.TABLE_TIMELINE_ENTRY_SEARCH +
+              " WHERE " + DatabaseHelper.TABLE_TIMELINE_ENTRY_SEARCH + " MATCH ?)))");
+      args.add(match);
+      args.add(match);
+    }
+    if (tag != null) {
+      conditions.add(Project._ID + " IN (SELECT " + Project.Tag.PROJECT + " FROM " + DatabaseHelper.TABLE_PROJECT_TAG +
+          " WHERE " + Project.Tag.NAME + " = ?)");
+      args.add(tag);
+    }
+    if (ids != null) {
+      conditions.add(Project._ID + " IN (" + TextUtils.join(", ", ids) + ")");
+    }
+    Cursor cursor = database.query(
+        DatabaseHelper.TABLE_PROJECT,
+        allColumns,
+        conditions.isEmpty() ? null : TextUtils.join(" AND ", conditions),
+        args.toArray(new String[args.size()]),
+        null,
+        null,
+        parseColumn(COLUMN_NAME) + " ASC"
+    );
+    while (cursor.moveToNext()) {
+      projects.add(fromCursor(cursor));
+    }
+    cursor.close();
+    return projects;
+  }
+
+  /**
+   * Get the projects having a tag, looked up through the tag name index
+   *
+   * @param tag   Tag name
+   * @return      Projects having the tag ordered by name
+   */
+  public List<Project> getProjectsByTag(String tag) {
+    return searchProjects(null, tag);
+  }
+
+  /**
+   * Get the tags of the stored projects
+   *
+   * @return  Tag names, the ones used by the most projects first
+   */
+  public List<String> getTags() {
+    List<String> tags = new ArrayList<>();
+    Cursor cursor = database.query(
+        DatabaseHelper.TABLE_PROJECT_TAG,
+        new String[] { Project.Tag.NAME },
+        null,
+        null,
+        Project.Tag.NAME,
+        null,
+        "COUNT(DISTINCT " + Project.Tag.PROJECT + ") DESC, " + Project.Tag.NAME + " ASC"
+    );
+    while (cursor.moveToNext()) {
+      tags.add(cursor.getString(0));
+    }
+    cursor.close();
+    return tags;
+  }
+
   /**
    * Get projects with selection and order criteria
    *
@@ -263,12 +592,26 @@ public class ProjectManager {
    * @param values  Project values
    * @return        Created project
    */
-  private Project createProject(ContentValues values) {
-    database.insert(DatabaseHelper.TABLE_PROJECT, null, values);
+  private Project createProject(ContentValues values, List<String> tags) {
+    int id = values.getAsInteger(Project._ID);
+    long rowId;
+    database.beginTransaction();
+    try {
+      rowId = database.insert(DatabaseHelper.TABLE_PROJECT, null, values);
+      if (rowId != -1) {
+        storeTags(id, tags);
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+    if (rowId != -1) {
+      ChangeNotifier.getInstance().publish(TableChange.inserted(DatabaseHelper.TABLE_PROJECT, id));
+    }
     Cursor cursor = database.query(
         DatabaseHelper.TABLE_PROJECT,
         allColumns,
-        Project._ID + " = " + values.getAsInteger(Project._ID),
+        Project._ID + " = " + id,
         null, null, null, null
     );
     cursor.moveToFirst();
@@ -285,6 +628,14 @@ public class ProjectManager {
    * @return        Rows affected
    */
   public int updateProject(String id, ContentValues values) {
+    int rowsAffected = update(id, values);
+    if (rowsAffected > 0) {
+      ChangeNotifier.getInstance().publish(TableChange.updated(DatabaseHelper.TABLE_PROJECT, Integer.parseInt(id)));
+    }
+    return rowsAffected;
+  }
+
+  private int update(String id, ContentValues values) {
     return database.update(
         DatabaseHelper.TABLE_PROJECT,
         values,
@@ -305,11 +656,7 @@ public class ProjectManager {
     String description = cursor.getString(COLUMN_DESC);
     boolean isPrivate = cursor.getInt(COLUMN_PRIVATE) == 1;
 
-    List<String> tags = null;
-    String[] tagArray = new Gson().fromJson(cursor.getString(COLUMN_TAGS), String[].class);
-    if (tagArray != null && tagArray.length > 0) {
-      tags = new ArrayList<>(Arrays.asList(tagArray));
-    }
+    List<String> tags = TAG_POOL.getList(cursor, COLUMN_TAGS, TAG_SEPARATOR);
 
     String logoSmallUrl = cursor.getString(COLUMN_LOGO_SMALL);
     String logoBigUrl = cursor.getString(COLUMN_LOGO_BIG);
@@ -317,6 +664,96 @@ public class ProjectManager {
     return new Project(id, name, description, tags, logoSmallUrl, logoBigUrl, isPrivate);
   }
 
+  /**
+   * Bind a project to an upsert statement, in column order followed by the ID
+   *
+   * @param statement   UPDATE or INSERT statement
+   * @param project     Project
+   */
+  private void bindProject(SQLiteStatement statement, Project project) {
+    statement.clearBindings();
+    bindString(statement, 1, project.getName());
+    bindString(statement, 2, project.getDescription());
+    bindString(statement, 3, project.getLogoSmallUrl());
+    bindString(statement, 4, project.getLogoBigUrl());
+    statement.bindLong(5, project.isPrivate() ? 1 : 0);
+    statement.bindLong(6, project.getId());
+  }
+
+  /**
+   * Replace the stored tags of a project
+   *
+   * @param projectId   Project ID
+   * @param tags        Tags, may be null
+   */
+  private void storeTags(int projectId, List<String> tags) {
+    SQLiteStatement deleteTags = compileDeleteTags();
+    SQLiteStatement insertTag = compileInsertTag();
+    try {
+      storeTags(deleteTags, insertTag, projectId, tags);
+    } finally {
+      deleteTags.close();
+      insertTag.close();
+    }
+  }
+
+  /**
+   * Replace the stored tags of a project using precompiled statements
+   *
+   * @param deleteTags  Statement deleting the tags of a project
+   * @param insertTag   Statement inserting a tag
+   * @param projectId   Project ID
+   * @param tags        Tags, may be null
+   */
+  private void storeTags(SQLiteStatement deleteTags, SQLiteStatement insertTag, int projectId, List<String> tags) {
+    deleteTags.bindLong(1, projectId);
+    deleteTags.executeUpdateDelete();
+    if (tags == null) {
+      return;
+    }
+    int position = 0;
+    for (String tag : tags) {
+      if (tag == null) {
+        continue;
+      }
+      insertTag.bindLong(1, projectId);
+      insertTag.bindLong(2, position++);
+      insertTag.bindString(3, tag);
+      insertTag.executeInsert();
+    }
+  }
+
+  /**
+   * @param memberId  Member ID
+   * @return          Selection of the projects in the stored project list of a member
+   */
+  private static String getMemberSelection(int memberId) {
+    return Project._ID + " IN (SELECT " + Project.Membership.PROJECT + " FROM " + DatabaseHelper.TABLE_PROJECT_MEMBER +
+        " WHERE " + Project.Membership.MEMBER + " = " + memberId + ")";
+  }
+
+  private SQLiteStatement compileDeleteTags() {
+    return database.compileStatement(
+        "DELETE FROM " + DatabaseHelper.TABLE_PROJECT_TAG + " WHERE " + Project.Tag.PROJECT + " = ?");
+  }
+
+  private SQLiteStatement compileInsertTag() {
+    return database.compileStatement(
+        "INSERT INTO " + DatabaseHelper.TABLE_PROJECT_TAG + "(" +
+            Project.Tag.PROJECT + ", " +
+            Project.Tag.POSITION + ", " +
+            Project.Tag.NAME +
+            ") VALUES (?, ?, ?)");
+  }
+
+  private static void bindString(SQLiteStatement statement, int index, String value) {
+    if (value != null) {
+      statement.bindString(index, value);
+    } else {
+      statement.bindNull(index);
+    }
+  }
+
   /**
    * Covert column number into column name
    *
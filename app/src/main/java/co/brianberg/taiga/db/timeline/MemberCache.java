@@ -0,0 +1,118 @@
+package co.brianberg.taiga.db.timeline;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+/**
+ * In-memory cache of the members referenced by timeline entries. Entries of
+ * the same member share one {@link TimelineEntry.Member} instance, whose photo
+ * URL has already been made absolute, so a long timeline holds each member
+ * once however many entries it has.
+ *
+ * Safe to use from any thread.
+ */
+public class MemberCache {
+
+  /**
+   * Maximum number of members kept in memory
+   */
+  private static final int MAX_MEMBERS = 256;
+
+  private static MemberCache sInstance;
+
+  private final LruCache<Integer, TimelineEntry.Member> mMembers = new LruCache<>(MAX_MEMBERS);
+
+  private final MemberManager mMemberManager;
+
+  public static synchronized MemberCache getInstance(Context context) {
+    if (sInstance == null) {
+      sInstance = new MemberCache(context.getApplicationContext());
+    }
+    return sInstance;
+  }
+
+  private MemberCache(Context context) {
+    mMemberManager = new MemberManager(context);
+  }
+
+  /**
+   * Get a member, loading it from the database if it is not in memory
+   *
+   * @param id    Member ID
+   * @return      Shared member instance or null if not found
+   */
+  public TimelineEntry.Member get(int id) {
+    TimelineEntry.Member member = mMembers.get(id);
+    if (member == null) {
+      member = intern(mMemberManager.getMember(id));
+    }
+    return member;
+  }
+
+  /**
+   * Get the shared instance of a member, replacing the cached one if the
+   * member's details have changed
+   *
+   * @param member  Member, e.g. as received from the server
+   * @return        Shared member instance or null if the member is null
+   */
+  public TimelineEntry.Member intern(TimelineEntry.Member member) {
+    if (member == null) {
+      return null;
+    }
+    String photoUrl = getAbsoluteUrl(member.getPhotoUrl());
+    TimelineEntry.Member cached = mMembers.get(member.getId());
+    if (cached != null && TextUtils.equals(cached.getName(), member.getName())
+        && TextUtils.equals(cached.getPhotoUrl(), photoUrl)) {
+      return cached;
+    }
+    if (!TextUtils.equals(photoUrl, member.getPhotoUrl())) {
+      member = new TimelineEntry.Member(member.getId(), member.getName(), photoUrl);
+    }
+    mMembers.put(member.getId(), member);
+    return member;
+  }
+
+  /**
+   * Get the shared instance of a member read along with another row. No
+   * member is created while the cached one is up to date.
+   *
+   * @param id          Member ID
+   * @param name        Member name
+   * @param photoUrl    Photo URL, which may be protocol relative
+   * @return            Shared member instance
+   */
+  public TimelineEntry.Member intern(int id, String name, String photoUrl) {
+    TimelineEntry.Member cached = mMembers.get(id);
+    if (cached != null && TextUtils.equals(cached.getName(), name) && isSameUrl(cached.getPhotoUrl(), photoUrl)) {
+      return cached;
+    }
+    return intern(new TimelineEntry.Member(id, name, photoUrl));
+  }
+
+  /**
+   * @param absoluteUrl   Absolute photo URL
+   * @param url           Photo URL, which may be protocol relative
+   * @return              True if both URLs are the same once made absolute
+   */
+  private static boolean isSameUrl(String absoluteUrl, String url) {
+    if (url != null && url.startsWith("//")) {
+      return absoluteUrl != null && absoluteUrl.startsWith("https:") && absoluteUrl.endsWith(url)
+          && absoluteUrl.length() == url.length() + "https:".length();
+    }
+    return TextUtils.equals(absoluteUrl, url);
+  }
+
+  /**
+   * @param url   Photo URL, which may be protocol relative
+   * @return      Absolute photo URL
+   */
+  private static String getAbsoluteUrl(String url) {
+    if (url != null && url.startsWith("//")) {
+      return "https:" + url;
+    }
+    return url;
+  }
+
+}
@@ -0,0 +1,136 @@
+package co.brianberg.taiga.db.timeline;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Collection;
+
+import co.brianberg.taiga.db.DatabaseHelper;
+
+/**
+ * Member manager class responsible for storing and retrieving the members
+ * referenced by timeline entries
+ */
+public class MemberManager {
+
+  // Table columns
+  private static final int COLUMN_ID = 0;
+  private static final int COLUMN_NAME = 1;
+  private static final int COLUMN_PHOTO = 2;
+
+  private SQLiteDatabase database;
+
+  private String[] allColumns = {
+      TimelineEntry.Member._ID,
+      TimelineEntry.Member.NAME,
+      TimelineEntry.Member.PHOTO
+  };
+
+  public MemberManager(Context context) {
+    database = DatabaseHelper.getInstance(context).getWritableDatabase();
+  }
+
+
+  /**
+   * Retrieve a member from the database
+   *
+   * @param id    Member ID
+   * @return      Retrieved member or null if not found
+   */
+  public TimelineEntry.Member getMember(int id) {
+    Cursor cursor = database.query(
+        DatabaseHelper.TABLE_MEMBER,
+        allColumns,
+        TimelineEntry.Member._ID + " = ?",
+        new String[] { String.valueOf(id) },
+        null, null, null,
+        "1"
+    );
+    TimelineEntry.Member member = cursor.moveToFirst() ? fromCursor(cursor) : null;
+    cursor.close();
+    return member;
+  }
+
+
+  /**
+   * Upsert a batch of members in a single transaction, joining the transaction
+   * of the caller if there is one
+   *
+   * @param members   Members to be updated or inserted
+   */
+  public void upsertMembers(Collection<TimelineEntry.Member> members) {
+    SQLiteStatement update = database.compileStatement(
+        "UPDATE " + DatabaseHelper.TABLE_MEMBER + " SET " +
+            TimelineEntry.Member.NAME + " = ?, " +
+            TimelineEntry.Member.PHOTO + " = ? " +
+            "WHERE " + TimelineEntry.Member._ID + " = ?");
+    SQLiteStatement insert = database.compileStatement(
+        "INSERT INTO " + DatabaseHelper.TABLE_MEMBER + "(" +
+            TimelineEntry.Member.NAME + ", " +
+            TimelineEntry.Member.PHOTO + ", " +
+            TimelineEntry.Member._ID +
+            ") VALUES (?, ?, ?)");
+    database.beginTransaction();
+    try {
+      for (TimelineEntry.Member member : members) {
+        bindMember(update, member);
+        if (update.executeUpdateDelete() == 0) {
+          bindMember(insert, member);
+          insert.executeInsert();
+        }
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+      update.close();
+      insert.close();
+    }
+  }
+
+
+  /**
+   * Delete the members no timeline entry refers to anymore
+   *
+   * @return  Number of deleted members
+   */
+  public int deleteUnreferencedMembers() {
+    return database.delete(
+        DatabaseHelper.TABLE_MEMBER,
+        TimelineEntry.Member._ID + " NOT IN (SELECT " + TimelineEntry.USER_ID + " FROM " +
+            DatabaseHelper.TABLE_TIMELINE_ENTRY + " WHERE " + TimelineEntry.USER_ID + " IS NOT NULL)",
+        null
+    );
+  }
+
+
+  /**
+   * Covert a database cursor to a member
+   *
+   * @param cursor  Database cursor to be converted
+   * @return        Converted member
+   */
+  private TimelineEntry.Member fromCursor(Cursor cursor) {
+    return new TimelineEntry.Member(cursor.getInt(COLUMN_ID), cursor.getString(COLUMN_NAME),
+        cursor.getString(COLUMN_PHOTO));
+  }
+
+  /**
+   * Bind a member to an upsert statement, in column order followed by the ID
+   *
+   * @param statement   UPDATE or INSERT statement
+   * @param member      Member
+   */
+  private void bindMember(SQLiteStatement statement, TimelineEntry.Member member) {
+    statement.clearBindings();
+    if (member.getName() != null) {
+      statement.bindString(1, member.getName());
+    }
+    if (member.getPhotoUrl() != null) {
+      statement.bindString(2, member.getPhotoUrl());
+    }
+    statement.bindLong(3, member.getId());
+  }
+
+}
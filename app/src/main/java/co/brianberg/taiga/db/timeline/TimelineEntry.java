@@ -4,11 +4,12 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.provider.BaseColumns;
 
-import com.google.gson.Gson;
 import com.google.gson.annotations.SerializedName;
 
 import java.util.Date;
 
+import co.brianberg.taiga.json.JsonCodec;
+
 /**
  * Represents timeline entry item
  */
@@ -18,8 +19,17 @@ public class TimelineEntry implements BaseColumns, Parcelable {
   public static final String CONTENT_TYPE = "content_type";
   public static final String EVENT_TYPE = "event_type";
   public static final String CREATED_DATE = "created_date";
-  public static final String DATA = "data";
   public static final String PROJECT = "project";
+  public static final String USER_ID = "user_id";
+  public static final String ITEM_KIND = "item_kind";
+  public static final String ITEM_ID = "item_id";
+  public static final String ITEM_REF = "item_ref";
+  public static final String ITEM_SUBJECT = "item_subject";
+
+  // Item kinds, named after the data keys of the item
+  public static final String ITEM_USER_STORY = "userstory";
+  public static final String ITEM_TASK = "task";
+  public static final String ITEM_ISSUE = "issue";
 
   // User story event
   private static final String EVENT_US_CREATE = "userstories.userstory.create";
@@ -73,8 +83,9 @@ public class TimelineEntry implements BaseColumns, Parcelable {
   private TimelineEntry(Parcel parcel) {
     id = parcel.readInt();
     contentType = parcel.readInt();
+    eventType = parcel.readString();
     createdDate = new Date(parcel.readLong());
-    data = new Gson().fromJson(parcel.readString(), Data.class);
+    data = JsonCodec.fromJson(JsonCodec.TIMELINE_DATA, parcel.readString());
     projectId = parcel.readInt();
   }
 
@@ -161,14 +172,14 @@ public class TimelineEntry implements BaseColumns, Parcelable {
     parcel.writeInt(contentType);
     parcel.writeString(eventType);
     parcel.writeLong(createdDate.getTime());
-    parcel.writeString(new Gson().toJson(data));
+    parcel.writeString(JsonCodec.toJson(JsonCodec.TIMELINE_DATA, data));
     parcel.writeInt(projectId);
   }
 
   /**
    * Represents timeline entry data
    */
-  public class Data {
+  public static class Data {
 
     private Member user;
 
@@ -179,8 +190,13 @@ public class TimelineEntry implements BaseColumns, Parcelable {
 
     private Item issue;
 
-    public Data() {}
-    
+    public Data(Member user, Item userStory, Item task, Item issue) {
+      this.user = user;
+      this.userStory = userStory;
+      this.task = task;
+      this.issue = issue;
+    }
+
     public Member getUser() {
       return user;
     }
@@ -197,12 +213,42 @@ public class TimelineEntry implements BaseColumns, Parcelable {
       return issue;
     }
 
+    /**
+     * @return  Kind of the item the entry is about, null if there is none
+     */
+    public String getItemKind() {
+      if (userStory != null) {
+        return ITEM_USER_STORY;
+      } else if (task != null) {
+        return ITEM_TASK;
+      } else if (issue != null) {
+        return ITEM_ISSUE;
+      }
+      return null;
+    }
+
+    /**
+     * @return  Item the entry is about, null if there is none
+     */
+    public Item getItem() {
+      if (userStory != null) {
+        return userStory;
+      } else if (task != null) {
+        return task;
+      }
+      return issue;
+    }
+
   }
 
   /**
    * Represents member information for timeline entry
    */
-  public class Member {
+  public static class Member implements BaseColumns {
+
+    // Table column names
+    public static final String NAME = "name";
+    public static final String PHOTO = "photo";
 
     private int id;
     
@@ -234,7 +280,7 @@ public class TimelineEntry implements BaseColumns, Parcelable {
   /**
    * Represents timeline entry data item
    */
-  public class Item {
+  public static class Item {
 
     private int id;
 
@@ -3,55 +3,93 @@ package co.brianberg.taiga.db.timeline;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
-
-import com.google.gson.Gson;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 
 import java.sql.SQLException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import co.brianberg.taiga.db.ChangeNotifier;
+import co.brianberg.taiga.db.CursorList;
 import co.brianberg.taiga.db.DatabaseHelper;
+import co.brianberg.taiga.db.FullTextQuery;
+import co.brianberg.taiga.db.RetentionPolicy;
+import co.brianberg.taiga.db.StringPool;
+import co.brianberg.taiga.db.TableChange;
 
 /**
- * Timeline entry manager
+ * Timeline entry manager. Stored, updated and deleted entries are published
+ * through the {@link ChangeNotifier}, pruned entries are not.
  */
 public class TimelineEntryManager {
 
-  // Table columns
+  // Table columns, in the order of allColumns so rows are read by position
   private static final int COLUMN_ID = 0;
   private static final int COLUMN_CONTENT_TYPE = 1;
   private static final int COLUMN_EVENT_TYPE = 2;
   private static final int COLUMN_CREATED_DATE = 3;
-  private static final int COLUMN_DATA = 4;
-  private static final int COLUMN_PROJECT = 5;
+  private static final int COLUMN_PROJECT = 4;
+  private static final int COLUMN_USER_ID = 5;
+  private static final int COLUMN_ITEM_KIND = 6;
+  private static final int COLUMN_ITEM_ID = 7;
+  private static final int COLUMN_ITEM_REF = 8;
+  private static final int COLUMN_ITEM_SUBJECT = 9;
+  private static final int COLUMN_USER_NAME = 10;
+  private static final int COLUMN_USER_PHOTO = 11;
+
+  // Entries are read along with their author, so converting a row never queries the member table
+  private static final String TABLE_ENTRY_MEMBER = DatabaseHelper.TABLE_TIMELINE_ENTRY +
+      " LEFT JOIN " + DatabaseHelper.TABLE_MEMBER + " ON " +
+      DatabaseHelper.TABLE_MEMBER + "." + TimelineEntry.Member._ID + " = " +
+      DatabaseHelper.TABLE_TIMELINE_ENTRY + "." + TimelineEntry.USER_ID;
+
+  // Canonical event types and item kinds, a few dozen values repeated by every entry
+  private static final StringPool STRING_POOL = new StringPool(128);
 
   private SQLiteDatabase database;
 
   private DatabaseHelper dbHelper;
 
+  private MemberManager memberManager;
+
+  private MemberCache memberCache;
+
   private String[] allColumns = {
-      TimelineEntry._ID,
-      TimelineEntry.CONTENT_TYPE,
-      TimelineEntry.EVENT_TYPE,
-      TimelineEntry.CREATED_DATE,
-      TimelineEntry.DATA,
-      TimelineEntry.PROJECT
+      parseColumn(COLUMN_ID),
+      parseColumn(COLUMN_CONTENT_TYPE),
+      parseColumn(COLUMN_EVENT_TYPE),
+      parseColumn(COLUMN_CREATED_DATE),
+      parseColumn(COLUMN_PROJECT),
+      parseColumn(COLUMN_USER_ID),
+      parseColumn(COLUMN_ITEM_KIND),
+      parseColumn(COLUMN_ITEM_ID),
+      parseColumn(COLUMN_ITEM_REF),
+      parseColumn(COLUMN_ITEM_SUBJECT),
+      parseColumn(COLUMN_USER_NAME),
+      parseColumn(COLUMN_USER_PHOTO)
   };
 
-  private SimpleDateFormat dateFormat;
-
   public TimelineEntryManager(Context context) {
     dbHelper = DatabaseHelper.getInstance(context);
-    dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    database = dbHelper.getWritableDatabase();
+    memberManager = new MemberManager(context);
+    memberCache = MemberCache.getInstance(context);
   }
 
 
   /**
-   * Open the database
+   * Open the database. The shared connection is opened by the constructor
+   * already, this is kept for callers which open the database explicitly.
    *
    * @throws SQLException
    */
@@ -60,11 +98,10 @@ public class TimelineEntryManager {
   }
 
   /**
-   * Close the database
+   * Release the manager. The shared connection stays open for other managers
+   * and is closed with the process.
    */
-  public void close() {
-    dbHelper.close();
-  }
+  public void close() {}
 
 
   /**
@@ -80,14 +117,9 @@ public class TimelineEntryManager {
    */
   public TimelineEntry addTimelineEntry(int id, int contentType, String eventType, Date createdDate,
                                         TimelineEntry.Data data, int projectId) {
-    ContentValues values = new ContentValues();
-    values.put(TimelineEntry._ID, id);
-    values.put(TimelineEntry.CONTENT_TYPE, contentType);
-    values.put(TimelineEntry.EVENT_TYPE, eventType);
-    values.put(TimelineEntry.CREATED_DATE, dateFormat.format(createdDate));
-    values.put(TimelineEntry.DATA, new Gson().toJson(data));
-    values.put(TimelineEntry.PROJECT, projectId);
-    return createTimelineEntry(values);
+    storeMember(data);
+    return createTimelineEntry(toContentValues(new TimelineEntry(id, contentType, eventType, createdDate, data,
+        projectId)));
   }
 
   /**
@@ -124,15 +156,9 @@ public class TimelineEntryManager {
    * @return        True if successful, false if not
    */
   public boolean updateTimelineEntry(TimelineEntry entry) {
-    ContentValues values = new ContentValues();
-    values.put(TimelineEntry._ID, entry.getId());
-    values.put(TimelineEntry.CONTENT_TYPE, entry.getContentType());
-    values.put(TimelineEntry.EVENT_TYPE, entry.getEventType());
-    values.put(TimelineEntry.CREATED_DATE, dateFormat.format(entry.getCreatedDate()));
-    values.put(TimelineEntry.DATA, new Gson().toJson(entry.getData()));
-    values.put(TimelineEntry.PROJECT, entry.getProjectId());
-    int rowsAffected = updateTimelineEntry(String.valueOf(entry.getId()), values);
-    return rowsAffected > 0;
+    storeMember(entry.getData());
+    ContentValues values = toContentValues(entry);
+    return updateTimelineEntry(String.valueOf(entry.getId()), values) > 0;
   }
 
   /**
@@ -146,6 +172,76 @@ public class TimelineEntryManager {
   }
 
 
+  /**
+   * Upsert a batch of timeline entries in a single transaction. Each entry is
+   * written with a precompiled UPDATE, falling back to an INSERT when the
+   * entry is not stored yet, and nothing is read back. The authors of the
+   * entries are stored once each in the same transaction.
+   *
+   * @param entries   Timeline entries to be updated or inserted
+   */
+  public void upsertTimelineEntries(List<TimelineEntry> entries) {
+    SQLiteStatement update = database.compileStatement(
+        "UPDATE " + DatabaseHelper.TABLE_TIMELINE_ENTRY + " SET " +
+            TimelineEntry.CONTENT_TYPE + " = ?, " +
+            TimelineEntry.EVENT_TYPE + " = ?, " +
+            TimelineEntry.CREATED_DATE + " = ?, " +
+            TimelineEntry.PROJECT + " = ?, " +
+            TimelineEntry.USER_ID + " = ?, " +
+            TimelineEntry.ITEM_KIND + " = ?, " +
+            TimelineEntry.ITEM_ID + " = ?, " +
+            TimelineEntry.ITEM_REF + " = ?, " +
+            TimelineEntry.ITEM_SUBJECT + " = ? " +
+            "WHERE " + TimelineEntry._ID + " = ?");
+    SQLiteStatement insert = database.compileStatement(
+        "INSERT INTO " + DatabaseHelper.TABLE_TIMELINE_ENTRY + "(" +
+            TimelineEntry.CONTENT_TYPE + ", " +
+            TimelineEntry.EVENT_TYPE + ", " +
+            TimelineEntry.CREATED_DATE + ", " +
+            TimelineEntry.PROJECT + ", " +
+            TimelineEntry.USER_ID + ", " +
+            TimelineEntry.ITEM_KIND + ", " +
+            TimelineEntry.ITEM_ID + ", " +
+            TimelineEntry.ITEM_REF + ", " +
+            TimelineEntry.ITEM_SUBJECT + ", " +
+            TimelineEntry._ID +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    Map<Integer, TimelineEntry.Member> members = new LinkedHashMap<>();
+    for (TimelineEntry entry : entries) {
+      TimelineEntry.Member user = entry.getData() != null ? entry.getData().getUser() : null;
+      if (user != null) {
+        members.put(user.getId(), user);
+      }
+    }
+    Set<Integer> inserted = new HashSet<>();
+    Set<Integer> updated = new HashSet<>();
+    database.beginTransaction();
+    try {
+      memberManager.upsertMembers(members.values());
+      for (TimelineEntry entry : entries) {
+        bindTimelineEntry(update, entry);
+        if (update.executeUpdateDelete() > 0) {
+          updated.add(entry.getId());
+        } else {
+          bindTimelineEntry(insert, entry);
+          insert.executeInsert();
+          inserted.add(entry.getId());
+        }
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+      update.close();
+      insert.close();
+    }
+    for (TimelineEntry.Member member : members.values()) {
+      memberCache.intern(member);
+    }
+    ChangeNotifier.getInstance().publish(new TableChange(DatabaseHelper.TABLE_TIMELINE_ENTRY, inserted, updated,
+        Collections.<Integer>emptySet()));
+  }
+
+
   /**
    * Delete a timeline entry
    *
@@ -153,11 +249,59 @@ public class TimelineEntryManager {
    * @return    Database rows affected
    */
   public int deleteTimelineEntry(String id) {
-    return database.delete(
+    int rowsAffected = database.delete(
         DatabaseHelper.TABLE_TIMELINE_ENTRY,
         TimelineEntry._ID + " = ?",
         new String[]{id}
     );
+    if (rowsAffected > 0) {
+      ChangeNotifier.getInstance().publish(
+          TableChange.deleted(DatabaseHelper.TABLE_TIMELINE_ENTRY, Integer.parseInt(id)));
+    }
+    return rowsAffected;
+  }
+
+
+  /**
+   * Delete the timeline entries falling outside a retention policy, in a
+   * single transaction. Each project is pruned through the
+   * (project, created_date) index.
+   *
+   * @param policy  Retention policy
+   * @param nowMs   Current time in epoch milliseconds
+   * @return        Number of deleted entries
+   */
+  public int pruneTimelineEntries(RetentionPolicy policy, long nowMs) {
+    String cutoff = String.valueOf(nowMs - policy.getMaxAgeMs());
+    String projectColumn = parseColumn(COLUMN_PROJECT);
+    String createdColumn = parseColumn(COLUMN_CREATED_DATE);
+    String idColumn = parseColumn(COLUMN_ID);
+    int deleted = 0;
+    database.beginTransaction();
+    try {
+      List<String> projectIds = new ArrayList<>();
+      Cursor cursor = database.query(true, DatabaseHelper.TABLE_TIMELINE_ENTRY, new String[] { projectColumn },
+          null, null, null, null, null, null);
+      while (cursor.moveToNext()) {
+        projectIds.add(cursor.getString(0));
+      }
+      cursor.close();
+      for (String projectId : projectIds) {
+        deleted += database.delete(DatabaseHelper.TABLE_TIMELINE_ENTRY,
+            projectColumn + " = ? AND " + createdColumn + " < ?", new String[] { projectId, cutoff });
+        // Entries beyond the newest allowed ones
+        deleted += database.delete(DatabaseHelper.TABLE_TIMELINE_ENTRY,
+            projectColumn + " = ? AND " + idColumn + " IN (SELECT " + idColumn +
+                " FROM " + DatabaseHelper.TABLE_TIMELINE_ENTRY + " WHERE " + projectColumn + " = ?" +
+                " ORDER BY " + createdColumn + " DESC, " + idColumn + " DESC" +
+                " LIMIT -1 OFFSET " + policy.getMaxEntriesPerProject() + ")",
+            new String[] { projectId, projectId });
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+    return deleted;
   }
 
 
@@ -171,7 +315,8 @@ public class TimelineEntryManager {
   }
 
   /**
-   * Get a timeline entries by project ID ordered by created date
+   * Get a timeline entries by project ID, newest first. Served by the
+   * (project, created_date) index without sorting.
    *
    * @param projectId   Timeline entry project ID
    * @param limit       Limit number of rows
@@ -179,7 +324,7 @@ public class TimelineEntryManager {
    */
   public List<TimelineEntry> getTimelineEntriesByProject(int projectId, String limit) {
     List<TimelineEntry> entries = new ArrayList<>();
-    String sortOrder = "date(" + parseColumn(COLUMN_CREATED_DATE) + ") DESC";
+    String sortOrder = parseColumn(COLUMN_CREATED_DATE) + " DESC, " + parseColumn(COLUMN_ID) + " DESC";
     String selection = parseColumn(COLUMN_PROJECT) + " = " + projectId;
     Cursor cursor = getTimelineEntries(selection, null, sortOrder, limit);
     cursor.moveToFirst();
@@ -193,15 +338,141 @@ public class TimelineEntryManager {
   }
 
 
-  public List<TimelineEntry> getAllTimelineEntries(int column, boolean asc, String limit) {
+  /**
+   * Get a range of a project's timeline entries, newest first, as a list
+   * which converts entries only when they are accessed. Like
+   * {@link #getTimelineEntriesBefore} the range is found by seeking the
+   * (project, created_date) index, so it is meant to be read a page at a
+   * time. The rows are read into the cursor window before returning, so the
+   * list can be opened off the main thread and then used on it. The caller
+   * must close the list.
+   *
+   * @param projectId   Timeline entry project ID
+   * @param after       Entry the range follows, null to start from the newest entry
+   * @param until       Last entry of the range, null to end the range at the limit
+   * @param limit       Maximum number of entries, 0 for no limit
+   * @return            Lazily converted timeline entries
+   */
+  public CursorList<TimelineEntry> getLazyTimelineEntriesByProject(int projectId, TimelineEntry after,
+                                                                   TimelineEntry until, int limit) {
+    String sortOrder = parseColumn(COLUMN_CREATED_DATE) + " DESC, " + parseColumn(COLUMN_ID) + " DESC";
+    String selection = parseColumn(COLUMN_PROJECT) + " = " + projectId;
+    if (after != null) {
+      selection += " AND " + getOlderSelection(after.getCreatedDate().getTime(), after.getId());
+    }
+    if (until != null) {
+      selection += " AND " + getAtOrNewerSelection(until.getCreatedDate().getTime(), until.getId());
+    }
+    Cursor cursor = getTimelineEntries(selection, null, sortOrder, limit > 0 ? String.valueOf(limit) : null);
+    return new CursorList<>(cursor, new CursorList.RowMapper<TimelineEntry>() {
+      @Override
+      public TimelineEntry fromCursor(Cursor cursor) {
+        return TimelineEntryManager.this.fromCursor(cursor);
+      }
+    });
+  }
+
+
+  /**
+   * Get some of a project's timeline entries, to read again the entries
+   * which changed
+   *
+   * @param projectId   Timeline entry project ID
+   * @param ids         Timeline entry IDs
+   * @return            Entries of the project among the given ones, newest first
+   */
+  public List<TimelineEntry> getTimelineEntries(int projectId, Collection<Integer> ids) {
     List<TimelineEntry> entries = new ArrayList<>();
-    String tableColumn = parseColumn(column);
-    String sortOrder;
-    if (column == COLUMN_CREATED_DATE) {
-      sortOrder = "date(" + tableColumn + ") " + (asc ?  "ASC" :  "DESC");
-    } else {
-      sortOrder = tableColumn + (asc ? " ASC" : " DESC");
+    if (ids.isEmpty()) {
+      return entries;
+    }
+    String selection = parseColumn(COLUMN_PROJECT) + " = " + projectId +
+        " AND " + parseColumn(COLUMN_ID) + " IN (" + TextUtils.join(", ", ids) + ")";
+    String sortOrder = parseColumn(COLUMN_CREATED_DATE) + " DESC, " + parseColumn(COLUMN_ID) + " DESC";
+    Cursor cursor = getTimelineEntries(selection, null, sortOrder, null);
+    while (cursor.moveToNext()) {
+      entries.add(fromCursor(cursor));
+    }
+    cursor.close();
+    return entries;
+  }
+
+
+  /**
+   * Get the page of a project's timeline entries following a given entry,
+   * newest first. Pages are found by seeking the (project, created_date)
+   * index from the last entry of the previous page, so every page costs the
+   * same however deep into the timeline it is.
+   *
+   * @param projectId     Timeline entry project ID
+   * @param createdDate   Created date of the last entry of the previous page
+   * @param id            ID of the last entry of the previous page
+   * @param limit         Maximum number of entries
+   * @return              Entries older than the given one
+   */
+  public List<TimelineEntry> getTimelineEntriesBefore(int projectId, Date createdDate, int id, int limit) {
+    List<TimelineEntry> entries = new ArrayList<>();
+    String selection = parseColumn(COLUMN_PROJECT) + " = " + projectId +
+        " AND " + getOlderSelection(createdDate.getTime(), id);
+    String sortOrder = parseColumn(COLUMN_CREATED_DATE) + " DESC, " + parseColumn(COLUMN_ID) + " DESC";
+    Cursor cursor = getTimelineEntries(selection, null, sortOrder, String.valueOf(limit));
+    cursor.moveToFirst();
+    while (!cursor.isAfterLast()) {
+      entries.add(fromCursor(cursor));
+      cursor.moveToNext();
+    }
+    cursor.close();
+    return entries;
+  }
+
+
+  /**
+   * Search timeline entries by item subject using the full-text index
+   *
+   * @param text    Search text, each word is matched as a prefix
+   * @param limit   Limit number of rows
+   * @return        Matching timeline entries, newest first
+   */
+  public List<TimelineEntry> searchTimelineEntries(String text, String limit) {
+    List<TimelineEntry> entries = new ArrayList<>();
+    String match = FullTextQuery.fromUserInput(text);
+    if (match == null) {
+      return entries;
     }
+    Cursor cursor = database.query(
+        TABLE_ENTRY_MEMBER,
+        allColumns,
+        parseColumn(COLUMN_ID) + " IN (SELECT docid FROM " + DatabaseHelper.TABLE_TIMELINE_ENTRY_SEARCH +
+            " WHERE " + DatabaseHelper.TABLE_TIMELINE_ENTRY_SEARCH + " MATCH ?)",
+        new String[] { match },
+        null,
+        null,
+        parseColumn(COLUMN_CREATED_DATE) + " DESC, " + parseColumn(COLUMN_ID) + " DESC",
+        limit
+    );
+    while (cursor.moveToNext()) {
+      entries.add(fromCursor(cursor));
+    }
+    cursor.close();
+    return entries;
+  }
+
+
+  /**
+   * Get the number of stored timeline entries of a project
+   *
+   * @param projectId   Timeline entry project ID
+   * @return            Number of timeline entries
+   */
+  public long getTimelineEntryCount(int projectId) {
+    return DatabaseUtils.queryNumEntries(database, DatabaseHelper.TABLE_TIMELINE_ENTRY,
+        parseColumn(COLUMN_PROJECT) + " = ?", new String[]{String.valueOf(projectId)});
+  }
+
+
+  public List<TimelineEntry> getAllTimelineEntries(int column, boolean asc, String limit) {
+    List<TimelineEntry> entries = new ArrayList<>();
+    String sortOrder = parseColumn(column) + (asc ? " ASC" : " DESC");
     Cursor cursor = getTimelineEntries(null, null, sortOrder, limit);
     cursor.moveToFirst();
     while (!cursor.isAfterLast()) {
@@ -227,7 +498,7 @@ public class TimelineEntryManager {
       selectionArgs[0] = "%" + selectionArgs[0] + "%";
     }
     return database.query(
-        DatabaseHelper.TABLE_TIMELINE_ENTRY,
+        TABLE_ENTRY_MEMBER,
         allColumns,
         selection,
         selectionArgs,
@@ -248,7 +519,7 @@ public class TimelineEntryManager {
   public Cursor getTimelineEntry(String id) {
     String[] selectionArgs = new String[] { id };
     return database.query(
-        DatabaseHelper.TABLE_TIMELINE_ENTRY,
+        TABLE_ENTRY_MEMBER,
         allColumns,
         parseColumn(COLUMN_ID) + " = ?",
         selectionArgs,
@@ -265,11 +536,14 @@ public class TimelineEntryManager {
    * @return        Created timeline entry
    */
   private TimelineEntry createTimelineEntry(ContentValues values) {
-    database.insert(DatabaseHelper.TABLE_TIMELINE_ENTRY, null, values);
+    int id = values.getAsInteger(TimelineEntry._ID);
+    if (database.insert(DatabaseHelper.TABLE_TIMELINE_ENTRY, null, values) != -1) {
+      ChangeNotifier.getInstance().publish(TableChange.inserted(DatabaseHelper.TABLE_TIMELINE_ENTRY, id));
+    }
     Cursor cursor = database.query(
-        DatabaseHelper.TABLE_TIMELINE_ENTRY,
+        TABLE_ENTRY_MEMBER,
         allColumns,
-        TimelineEntry._ID + " = " + values.getAsInteger(TimelineEntry._ID),
+        parseColumn(COLUMN_ID) + " = " + id,
         null, null, null, null
     );
     cursor.moveToFirst();
@@ -286,15 +560,45 @@ public class TimelineEntryManager {
    * @return        Rows affected
    */
   public int updateTimelineEntry(String id, ContentValues values) {
-    return database.update(
+    int rowsAffected = database.update(
         DatabaseHelper.TABLE_TIMELINE_ENTRY,
         values,
         TimelineEntry._ID + " = ?",
         new String[] { id }
     );
+    if (rowsAffected > 0) {
+      ChangeNotifier.getInstance().publish(
+          TableChange.updated(DatabaseHelper.TABLE_TIMELINE_ENTRY, Integer.parseInt(id)));
+    }
+    return rowsAffected;
   }
 
 
+  /**
+   * Convert a timeline entry to database values, the entry data is flattened
+   * into the item columns and a reference to the author
+   *
+   * @param entry   Timeline entry to be converted
+   * @return        Timeline entry values
+   */
+  private ContentValues toContentValues(TimelineEntry entry) {
+    ContentValues values = new ContentValues();
+    values.put(TimelineEntry._ID, entry.getId());
+    values.put(TimelineEntry.CONTENT_TYPE, entry.getContentType());
+    values.put(TimelineEntry.EVENT_TYPE, entry.getEventType());
+    values.put(TimelineEntry.CREATED_DATE, entry.getCreatedDate().getTime());
+    values.put(TimelineEntry.PROJECT, entry.getProjectId());
+    TimelineEntry.Data data = entry.getData();
+    TimelineEntry.Member user = data != null ? data.getUser() : null;
+    TimelineEntry.Item item = data != null ? data.getItem() : null;
+    values.put(TimelineEntry.USER_ID, user != null ? user.getId() : null);
+    values.put(TimelineEntry.ITEM_KIND, item != null ? data.getItemKind() : null);
+    values.put(TimelineEntry.ITEM_ID, item != null ? item.getId() : null);
+    values.put(TimelineEntry.ITEM_REF, item != null ? item.getRef() : null);
+    values.put(TimelineEntry.ITEM_SUBJECT, item != null ? item.getSubject() : null);
+    return values;
+  }
+
   /**
    * Covert a database cursor to a timeline entry
    *
@@ -302,45 +606,149 @@ public class TimelineEntryManager {
    * @return        Converted timeline entry
    */
   public TimelineEntry fromCursor(Cursor cursor) {
-    try {
-      int id = cursor.getInt(COLUMN_ID);
-      int contentType = cursor.getInt(COLUMN_CONTENT_TYPE);
-      String eventType = cursor.getString(COLUMN_EVENT_TYPE);
-      Date createdDate = dateFormat.parse(cursor.getString(COLUMN_CREATED_DATE));
-      TimelineEntry.Data data = new Gson().fromJson(cursor.getString(COLUMN_DATA), TimelineEntry.Data.class);
-      int projectId = cursor.getInt(COLUMN_PROJECT);
-      return new TimelineEntry(id, contentType, eventType, createdDate, data, projectId);
-    } catch (ParseException e) {
-      e.printStackTrace();
-      return null;
+    int id = cursor.getInt(COLUMN_ID);
+    int contentType = cursor.getInt(COLUMN_CONTENT_TYPE);
+    String eventType = STRING_POOL.get(cursor, COLUMN_EVENT_TYPE);
+    Date createdDate = new Date(cursor.getLong(COLUMN_CREATED_DATE));
+    int projectId = cursor.getInt(COLUMN_PROJECT);
+
+    TimelineEntry.Member user = null;
+    if (!cursor.isNull(COLUMN_USER_ID)) {
+      user = memberCache.intern(cursor.getInt(COLUMN_USER_ID), cursor.getString(COLUMN_USER_NAME),
+          cursor.getString(COLUMN_USER_PHOTO));
+    }
+    String itemKind = STRING_POOL.get(cursor, COLUMN_ITEM_KIND);
+    TimelineEntry.Item item = null;
+    if (itemKind != null) {
+      item = new TimelineEntry.Item(cursor.getInt(COLUMN_ITEM_ID), cursor.getString(COLUMN_ITEM_SUBJECT),
+          cursor.getInt(COLUMN_ITEM_REF));
+    }
+    TimelineEntry.Data data = new TimelineEntry.Data(user,
+        TimelineEntry.ITEM_USER_STORY.equals(itemKind) ? item : null,
+        TimelineEntry.ITEM_TASK.equals(itemKind) ? item : null,
+        TimelineEntry.ITEM_ISSUE.equals(itemKind) ? item : null);
+    return new TimelineEntry(id, contentType, eventType, createdDate, data, projectId);
+  }
+
+
+  /**
+   * Bind a timeline entry to an upsert statement, in column order followed by the ID
+   *
+   * @param statement   UPDATE or INSERT statement
+   * @param entry       Timeline entry
+   */
+  private void bindTimelineEntry(SQLiteStatement statement, TimelineEntry entry) {
+    statement.clearBindings();
+    statement.bindLong(1, entry.getContentType());
+    statement.bindString(2, entry.getEventType());
+    statement.bindLong(3, entry.getCreatedDate().getTime());
+    statement.bindLong(4, entry.getProjectId());
+    TimelineEntry.Data data = entry.getData();
+    TimelineEntry.Member user = data != null ? data.getUser() : null;
+    if (user != null) {
+      statement.bindLong(5, user.getId());
     }
+    TimelineEntry.Item item = data != null ? data.getItem() : null;
+    if (item != null) {
+      statement.bindString(6, data.getItemKind());
+      statement.bindLong(7, item.getId());
+      statement.bindLong(8, item.getRef());
+      bindString(statement, 9, item.getSubject());
+    }
+    statement.bindLong(10, entry.getId());
   }
 
+  /**
+   * Store the author of a timeline entry
+   *
+   * @param data  Timeline entry data
+   */
+  private void storeMember(TimelineEntry.Data data) {
+    if (data != null && data.getUser() != null) {
+      memberManager.upsertMembers(Collections.singletonList(data.getUser()));
+      memberCache.intern(data.getUser());
+    }
+  }
 
   /**
-   * Covert column number into column name
+   * Bind a nullable string to a statement
+   *
+   * @param statement   Statement
+   * @param index       Parameter index
+   * @param value       Value, bound as NULL if null
+   */
+  private void bindString(SQLiteStatement statement, int index, String value) {
+    if (value != null) {
+      statement.bindString(index, value);
+    } else {
+      statement.bindNull(index);
+    }
+  }
+
+
+  /**
+   * @param created   Created date of an entry in epoch milliseconds
+   * @param id        ID of the entry
+   * @return          Selection of the entries following the entry, newest first
+   */
+  private String getOlderSelection(long created, int id) {
+    String createdColumn = parseColumn(COLUMN_CREATED_DATE);
+    // The redundant bound on created_date lets SQLite seek the index instead of filtering the project
+    return createdColumn + " <= " + created +
+        " AND (" + createdColumn + " < " + created + " OR " + parseColumn(COLUMN_ID) + " < " + id + ")";
+  }
+
+  /**
+   * @param created   Created date of an entry in epoch milliseconds
+   * @param id        ID of the entry
+   * @return          Selection of the entry and the entries preceding it, newest first
+   */
+  private String getAtOrNewerSelection(long created, int id) {
+    String createdColumn = parseColumn(COLUMN_CREATED_DATE);
+    return createdColumn + " >= " + created +
+        " AND (" + createdColumn + " > " + created + " OR " + parseColumn(COLUMN_ID) + " >= " + id + ")";
+  }
+
+  /**
+   * Covert column number into column name, qualified by its table as the
+   * entries are read joined with their author
    *
    * @param column  Column number
    * @return        column name
    */
-  private String parseColumn(int column) {
+  private static String parseColumn(int column) {
     switch(column) {
-      case COLUMN_ID:
-        return TimelineEntry._ID;
       case COLUMN_CONTENT_TYPE:
-        return TimelineEntry.CONTENT_TYPE;
+        return qualify(TimelineEntry.CONTENT_TYPE);
       case COLUMN_EVENT_TYPE:
-        return TimelineEntry.EVENT_TYPE;
+        return qualify(TimelineEntry.EVENT_TYPE);
       case COLUMN_CREATED_DATE:
-        return TimelineEntry.CREATED_DATE;
-      case COLUMN_DATA:
-        return TimelineEntry.DATA;
+        return qualify(TimelineEntry.CREATED_DATE);
       case COLUMN_PROJECT:
-        return TimelineEntry.PROJECT;
+        return qualify(TimelineEntry.PROJECT);
+      case COLUMN_USER_ID:
+        return qualify(TimelineEntry.USER_ID);
+      case COLUMN_ITEM_KIND:
+        return qualify(TimelineEntry.ITEM_KIND);
+      case COLUMN_ITEM_ID:
+        return qualify(TimelineEntry.ITEM_ID);
+      case COLUMN_ITEM_REF:
+        return qualify(TimelineEntry.ITEM_REF);
+      case COLUMN_ITEM_SUBJECT:
+        return qualify(TimelineEntry.ITEM_SUBJECT);
+      case COLUMN_USER_NAME:
+        return DatabaseHelper.TABLE_MEMBER + "." + TimelineEntry.Member.NAME;
+      case COLUMN_USER_PHOTO:
+        return DatabaseHelper.TABLE_MEMBER + "." + TimelineEntry.Member.PHOTO;
+      case COLUMN_ID:
       default:
-        return TimelineEntry._ID;
+        return qualify(TimelineEntry._ID);
     }
   }
 
+  private static String qualify(String column) {
+    return DatabaseHelper.TABLE_TIMELINE_ENTRY + "." + column;
+  }
+
 }
 
@@ -0,0 +1,264 @@
+package co.brianberg.taiga.json;
+
+import java.util.TimeZone;
+
+/**
+ * Conversion between epoch milliseconds and the ISO-8601 timestamps of the
+ * Taiga API, e.g. 2016-06-21T08:40:57+0000, and formatting of dates for
+ * display. The methods keep no state, so they are safe to call from any
+ * thread, and parsing or formatting into a buffer allocates nothing.
+ */
+public abstract class DateCodec {
+
+  /**
+   * Maximum length of a formatted timestamp, yyyy-MM-ddTHH:mm:ss.SSS+0000
+   */
+  public static final int TIMESTAMP_LENGTH = 28;
+
+  /**
+   * Maximum length of a formatted short date, M/dd/yy
+   */
+  public static final int SHORT_DATE_LENGTH = 8;
+
+  private static final long MS_PER_MINUTE = 60 * 1000L;
+
+  private static final long MS_PER_DAY = 24 * 60 * MS_PER_MINUTE;
+
+  /**
+   * Days between 0000-03-01 and 1970-01-01
+   */
+  private static final int EPOCH_DAYS = 719468;
+
+  /**
+   * Days in a 400 year cycle of the Gregorian calendar
+   */
+  private static final int DAYS_PER_ERA = 146097;
+
+  /**
+   * Parse an ISO-8601 timestamp. Fractions of a second beyond milliseconds
+   * are ignored. The zone offset is required and is either Z, +hh, +hhmm or
+   * +hh:mm.
+   *
+   * @param value   Timestamp such as 2016-06-21T08:40:57.123+0000
+   * @return        Epoch milliseconds
+   * @throws IllegalArgumentException if the value is not a valid timestamp
+   */
+  public static long parse(String value) {
+    int length = value.length();
+    if (length < 20 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T' ||
+        value.charAt(13) != ':' || value.charAt(16) != ':') {
+      throw invalid(value);
+    }
+    int year = digits(value, 0, 4);
+    int month = digits(value, 5, 2);
+    int day = digits(value, 8, 2);
+    int hour = digits(value, 11, 2);
+    int minute = digits(value, 14, 2);
+    int second = digits(value, 17, 2);
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) ||
+        hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      throw invalid(value);
+    }
+
+    int i = 19;
+    int millis = 0;
+    if (value.charAt(i) == '.') {
+      int start = ++i;
+      while (i < length && isDigit(value.charAt(i))) {
+        if (i - start < 3) {
+          millis = millis * 10 + value.charAt(i) - '0';
+        }
+        i++;
+      }
+      if (i == start) {
+        throw invalid(value);
+      }
+      for (int scale = i - start; scale < 3; scale++) {
+        millis *= 10;
+      }
+    }
+
+    int offsetMinutes;
+    if (i == length - 1 && value.charAt(i) == 'Z') {
+      offsetMinutes = 0;
+    } else if (i < length && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+      int sign = value.charAt(i) == '-' ? -1 : 1;
+      int offsetHours = digits(value, i + 1, 2);
+      int offsetMins;
+      switch (length - i) {
+        case 3:
+          offsetMins = 0;
+          break;
+        case 5:
+          offsetMins = digits(value, i + 3, 2);
+          break;
+        case 6:
+          offsetMins = value.charAt(i + 3) == ':' ? digits(value, i + 4, 2) : -1;
+          break;
+        default:
+          offsetMins = -1;
+      }
+      if (offsetHours < 0 || offsetHours > 23 || offsetMins < 0 || offsetMins > 59) {
+        throw invalid(value);
+      }
+      offsetMinutes = sign * (offsetHours * 60 + offsetMins);
+    } else {
+      throw invalid(value);
+    }
+
+    long days = daysFromCivil(year, month, day);
+    return days * MS_PER_DAY + ((hour * 60L + minute - offsetMinutes) * 60 + second) * 1000 + millis;
+  }
+
+  /**
+   * Format epoch milliseconds as an ISO-8601 timestamp in UTC
+   *
+   * @param epochMs   Epoch milliseconds
+   * @return          Timestamp such as 2016-06-21T08:40:57+0000
+   */
+  public static String format(long epochMs) {
+    char[] buffer = new char[TIMESTAMP_LENGTH];
+    return new String(buffer, 0, format(epochMs, buffer, 0));
+  }
+
+  /**
+   * Format epoch milliseconds as an ISO-8601 timestamp in UTC. Milliseconds
+   * are written only when they are not zero.
+   *
+   * @param epochMs   Epoch milliseconds between the years 0 and 9999
+   * @param buffer    Buffer with room for {@link #TIMESTAMP_LENGTH} characters
+   * @param offset    Offset in the buffer
+   * @return          Number of characters written
+   */
+  public static int format(long epochMs, char[] buffer, int offset) {
+    long days = floorDiv(epochMs, MS_PER_DAY);
+    int msOfDay = (int) (epochMs - days * MS_PER_DAY);
+    int date = civilFromDays(days);
+    int i = offset;
+    i = write(buffer, i, date / 10000, 4);
+    buffer[i++] = '-';
+    i = write(buffer, i, date / 100 % 100, 2);
+    buffer[i++] = '-';
+    i = write(buffer, i, date % 100, 2);
+    buffer[i++] = 'T';
+    i = write(buffer, i, msOfDay / 3600000, 2);
+    buffer[i++] = ':';
+    i = write(buffer, i, msOfDay / 60000 % 60, 2);
+    buffer[i++] = ':';
+    i = write(buffer, i, msOfDay / 1000 % 60, 2);
+    if (msOfDay % 1000 != 0) {
+      buffer[i++] = '.';
+      i = write(buffer, i, msOfDay % 1000, 3);
+    }
+    buffer[i++] = '+';
+    i = write(buffer, i, 0, 4);
+    return i - offset;
+  }
+
+  /**
+   * Format epoch milliseconds as a short date in a time zone
+   *
+   * @param epochMs   Epoch milliseconds
+   * @param zone      Time zone of the date
+   * @param buffer    Buffer with room for {@link #SHORT_DATE_LENGTH} characters
+   * @param offset    Offset in the buffer
+   * @return          Number of characters written, e.g. 6/21/16
+   */
+  public static int formatShortDate(long epochMs, TimeZone zone, char[] buffer, int offset) {
+    int date = civilFromDays(floorDiv(epochMs + zone.getOffset(epochMs), MS_PER_DAY));
+    int month = date / 100 % 100;
+    int i = write(buffer, offset, month, month < 10 ? 1 : 2);
+    buffer[i++] = '/';
+    i = write(buffer, i, date % 100, 2);
+    buffer[i++] = '/';
+    i = write(buffer, i, date / 10000 % 100, 2);
+    return i - offset;
+  }
+
+  /**
+   * Days since the epoch of a date of the proleptic Gregorian calendar
+   */
+  private static long daysFromCivil(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = (y >= 0 ? y : y - 399) / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return (long) era * DAYS_PER_ERA + dayOfEra - EPOCH_DAYS;
+  }
+
+  /**
+   * Date of the proleptic Gregorian calendar of days since the epoch
+   *
+   * @return  Date packed as year * 10000 + month * 100 + day
+   */
+  private static int civilFromDays(long days) {
+    long z = days + EPOCH_DAYS;
+    long era = floorDiv(z, DAYS_PER_ERA);
+    int dayOfEra = (int) (z - era * DAYS_PER_ERA);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    if (year < 0 || year > 9999) {
+      throw new IllegalArgumentException("Year out of range: " + year);
+    }
+    return (int) year * 10000 + month * 100 + day;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    if (month == 2) {
+      boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+      return leap ? 29 : 28;
+    }
+    return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+  }
+
+  /**
+   * @return  Value of the digits or -1 if a character is not a digit
+   */
+  private static int digits(String value, int start, int count) {
+    if (start + count > value.length()) {
+      return -1;
+    }
+    int result = 0;
+    for (int i = start; i < start + count; i++) {
+      char c = value.charAt(i);
+      if (!isDigit(c)) {
+        return -1;
+      }
+      result = result * 10 + c - '0';
+    }
+    return result;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Write a value zero padded to a number of digits
+   *
+   * @return  Offset after the digits
+   */
+  private static int write(char[] buffer, int offset, int value, int count) {
+    for (int i = offset + count - 1; i >= offset; i--) {
+      buffer[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    return offset + count;
+  }
+
+  // Math.floorDiv is not available before API 24
+  private static long floorDiv(long x, long y) {
+    long q = x / y;
+    return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+  }
+
+  private static IllegalArgumentException invalid(String value) {
+    return new IllegalArgumentException("Invalid timestamp: " + value);
+  }
+
+}
@@ -0,0 +1,38 @@
+package co.brianberg.taiga.json;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Type adapter for a {@link Date}
+ *
+ * Dates are read either from an ISO-8601 timestamp or from epoch
+ * milliseconds, and always written as epoch milliseconds.
+ */
+class DateTypeAdapter extends TypeAdapter<Date> {
+
+  @Override
+  public void write(JsonWriter out, Date value) throws IOException {
+    out.value(value.getTime());
+  }
+
+  @Override
+  public Date read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NUMBER) {
+      return new Date(in.nextLong());
+    }
+    String value = in.nextString();
+    try {
+      return new Date(DateCodec.parse(value));
+    } catch (IllegalArgumentException e) {
+      throw new JsonSyntaxException(value, e);
+    }
+  }
+
+}
@@ -0,0 +1,127 @@
+package co.brianberg.taiga.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.List;
+
+import co.brianberg.taiga.auth.User;
+import co.brianberg.taiga.db.project.Project;
+import co.brianberg.taiga.db.timeline.TimelineEntry;
+
+/**
+ * Registry of hand-written JSON type adapters shared by the network,
+ * database and parcel code so that no reflective adapters are built
+ */
+public abstract class JsonCodec {
+
+  public static final TypeAdapter<Date> DATE = new DateTypeAdapter().nullSafe();
+
+  public static final TypeAdapter<List<String>> STRING_LIST = new StringListTypeAdapter().nullSafe();
+
+  public static final TypeAdapter<User> USER = new UserTypeAdapter().nullSafe();
+
+  public static final TypeAdapter<Project> PROJECT = new ProjectTypeAdapter(STRING_LIST).nullSafe();
+
+  public static final TypeAdapter<TimelineEntry.Member> TIMELINE_MEMBER = new TimelineMemberTypeAdapter().nullSafe();
+
+  public static final TypeAdapter<TimelineEntry.Item> TIMELINE_ITEM = new TimelineItemTypeAdapter().nullSafe();
+
+  public static final TypeAdapter<TimelineEntry.Data> TIMELINE_DATA =
+      new TimelineDataTypeAdapter(TIMELINE_MEMBER, TIMELINE_ITEM).nullSafe();
+
+  public static final TypeAdapter<TimelineEntry> TIMELINE_ENTRY =
+      new TimelineEntryTypeAdapter(TIMELINE_DATA, DATE).nullSafe();
+
+  private static final Gson sGson = new GsonBuilder()
+      .registerTypeAdapter(Date.class, DATE)
+      .registerTypeAdapter(User.class, USER)
+      .registerTypeAdapter(Project.class, PROJECT)
+      .registerTypeAdapter(TimelineEntry.class, TIMELINE_ENTRY)
+      .registerTypeAdapter(TimelineEntry.Data.class, TIMELINE_DATA)
+      .registerTypeAdapter(TimelineEntry.Member.class, TIMELINE_MEMBER)
+      .registerTypeAdapter(TimelineEntry.Item.class, TIMELINE_ITEM)
+      .create();
+
+  /**
+   * @return  Shared Gson instance backed by the registered type adapters
+   */
+  public static Gson getGson() {
+    return sGson;
+  }
+
+  /**
+   * Encode a value to a JSON string
+   *
+   * @param adapter   Type adapter
+   * @param value     Value to be encoded
+   * @return          JSON string
+   */
+  public static <T> String toJson(TypeAdapter<T> adapter, T value) {
+    StringWriter buffer = new StringWriter();
+    try {
+      // Lenient so that null values can be written at the top level
+      JsonWriter writer = new JsonWriter(buffer);
+      writer.setLenient(true);
+      adapter.write(writer, value);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+    return buffer.toString();
+  }
+
+  /**
+   * Decode a JSON string
+   *
+   * @param adapter   Type adapter
+   * @param json      JSON string, may be null
+   * @return          Decoded value or null
+   */
+  public static <T> T fromJson(TypeAdapter<T> adapter, String json) {
+    if (json == null) {
+      return null;
+    }
+    try {
+      JsonReader reader = new JsonReader(new StringReader(json));
+      reader.setLenient(true);
+      return adapter.read(reader);
+    } catch (IOException e) {
+      throw new JsonParseException(e);
+    }
+  }
+
+  static String nextString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+
+  static int nextInt(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return 0;
+    }
+    return in.nextInt();
+  }
+
+  static boolean nextBoolean(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return false;
+    }
+    return in.nextBoolean();
+  }
+
+}
@@ -0,0 +1,78 @@
+package co.brianberg.taiga.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+import co.brianberg.taiga.db.project.Project;
+
+/**
+ * Type adapter for {@link Project}
+ */
+class ProjectTypeAdapter extends TypeAdapter<Project> {
+
+  private final TypeAdapter<List<String>> mTagsAdapter;
+
+  ProjectTypeAdapter(TypeAdapter<List<String>> tagsAdapter) {
+    mTagsAdapter = tagsAdapter;
+  }
+
+  @Override
+  public void write(JsonWriter out, Project value) throws IOException {
+    out.beginObject();
+    out.name("id").value(value.getId());
+    out.name("name").value(value.getName());
+    out.name("description").value(value.getDescription());
+    out.name("tags");
+    mTagsAdapter.write(out, value.getTags());
+    out.name("logo_small_url").value(value.getLogoSmallUrl());
+    out.name("logo_big_url").value(value.getLogoBigUrl());
+    out.name("is_private").value(value.isPrivate());
+    out.endObject();
+  }
+
+  @Override
+  public Project read(JsonReader in) throws IOException {
+    int id = 0;
+    String name = null;
+    String description = null;
+    List<String> tags = null;
+    String logoSmallUrl = null;
+    String logoBigUrl = null;
+    boolean isPrivate = false;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id":
+          id = JsonCodec.nextInt(in);
+          break;
+        case "name":
+          name = JsonCodec.nextString(in);
+          break;
+        case "description":
+          description = JsonCodec.nextString(in);
+          break;
+        case "tags":
+          tags = mTagsAdapter.read(in);
+          break;
+        case "logo_small_url":
+          logoSmallUrl = JsonCodec.nextString(in);
+          break;
+        case "logo_big_url":
+          logoBigUrl = JsonCodec.nextString(in);
+          break;
+        case "is_private":
+          isPrivate = JsonCodec.nextBoolean(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new Project(id, name, description, tags, logoSmallUrl, logoBigUrl, isPrivate);
+  }
+
+}
@@ -0,0 +1,36 @@
+package co.brianberg.taiga.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Type adapter for a list of strings
+ */
+class StringListTypeAdapter extends TypeAdapter<List<String>> {
+
+  @Override
+  public void write(JsonWriter out, List<String> value) throws IOException {
+    out.beginArray();
+    for (int i = 0; i < value.size(); i++) {
+      out.value(value.get(i));
+    }
+    out.endArray();
+  }
+
+  @Override
+  public List<String> read(JsonReader in) throws IOException {
+    List<String> list = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      list.add(JsonCodec.nextString(in));
+    }
+    in.endArray();
+    return list;
+  }
+
+}
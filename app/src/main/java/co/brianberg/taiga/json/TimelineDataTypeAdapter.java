@@ -0,0 +1,69 @@
+package co.brianberg.taiga.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import co.brianberg.taiga.db.timeline.TimelineEntry;
+
+/**
+ * Type adapter for {@link TimelineEntry.Data}
+ */
+class TimelineDataTypeAdapter extends TypeAdapter<TimelineEntry.Data> {
+
+  private final TypeAdapter<TimelineEntry.Member> mMemberAdapter;
+
+  private final TypeAdapter<TimelineEntry.Item> mItemAdapter;
+
+  TimelineDataTypeAdapter(TypeAdapter<TimelineEntry.Member> memberAdapter,
+                          TypeAdapter<TimelineEntry.Item> itemAdapter) {
+    mMemberAdapter = memberAdapter;
+    mItemAdapter = itemAdapter;
+  }
+
+  @Override
+  public void write(JsonWriter out, TimelineEntry.Data value) throws IOException {
+    out.beginObject();
+    out.name("user");
+    mMemberAdapter.write(out, value.getUser());
+    out.name("userstory");
+    mItemAdapter.write(out, value.getUserStory());
+    out.name("task");
+    mItemAdapter.write(out, value.getTask());
+    out.name("issue");
+    mItemAdapter.write(out, value.getIssue());
+    out.endObject();
+  }
+
+  @Override
+  public TimelineEntry.Data read(JsonReader in) throws IOException {
+    TimelineEntry.Member user = null;
+    TimelineEntry.Item userStory = null;
+    TimelineEntry.Item task = null;
+    TimelineEntry.Item issue = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "user":
+          user = mMemberAdapter.read(in);
+          break;
+        case "userstory":
+          userStory = mItemAdapter.read(in);
+          break;
+        case "task":
+          task = mItemAdapter.read(in);
+          break;
+        case "issue":
+          issue = mItemAdapter.read(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new TimelineEntry.Data(user, userStory, task, issue);
+  }
+
+}
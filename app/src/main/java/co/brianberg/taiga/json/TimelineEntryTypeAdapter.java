@@ -0,0 +1,79 @@
+package co.brianberg.taiga.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+import co.brianberg.taiga.db.timeline.TimelineEntry;
+
+/**
+ * Type adapter for {@link TimelineEntry}
+ *
+ * The created date is read and written by the date adapter.
+ */
+class TimelineEntryTypeAdapter extends TypeAdapter<TimelineEntry> {
+
+  private final TypeAdapter<TimelineEntry.Data> mDataAdapter;
+
+  private final TypeAdapter<Date> mDateAdapter;
+
+  TimelineEntryTypeAdapter(TypeAdapter<TimelineEntry.Data> dataAdapter, TypeAdapter<Date> dateAdapter) {
+    mDataAdapter = dataAdapter;
+    mDateAdapter = dateAdapter;
+  }
+
+  @Override
+  public void write(JsonWriter out, TimelineEntry value) throws IOException {
+    out.beginObject();
+    out.name("id").value(value.getId());
+    out.name("content_type").value(value.getContentType());
+    out.name("event_type").value(value.getEventType());
+    out.name("created");
+    mDateAdapter.write(out, value.getCreatedDate());
+    out.name("data");
+    mDataAdapter.write(out, value.getData());
+    out.name("project").value(value.getProjectId());
+    out.endObject();
+  }
+
+  @Override
+  public TimelineEntry read(JsonReader in) throws IOException {
+    int id = 0;
+    int contentType = 0;
+    String eventType = null;
+    Date createdDate = null;
+    TimelineEntry.Data data = null;
+    int projectId = 0;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id":
+          id = JsonCodec.nextInt(in);
+          break;
+        case "content_type":
+          contentType = JsonCodec.nextInt(in);
+          break;
+        case "event_type":
+          eventType = JsonCodec.nextString(in);
+          break;
+        case "created":
+          createdDate = mDateAdapter.read(in);
+          break;
+        case "data":
+          data = mDataAdapter.read(in);
+          break;
+        case "project":
+          projectId = JsonCodec.nextInt(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new TimelineEntry(id, contentType, eventType, createdDate, data, projectId);
+  }
+
+}
@@ -0,0 +1,50 @@
+package co.brianberg.taiga.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import co.brianberg.taiga.db.timeline.TimelineEntry;
+
+/**
+ * Type adapter for {@link TimelineEntry.Item}
+ */
+class TimelineItemTypeAdapter extends TypeAdapter<TimelineEntry.Item> {
+
+  @Override
+  public void write(JsonWriter out, TimelineEntry.Item value) throws IOException {
+    out.beginObject();
+    out.name("id").value(value.getId());
+    out.name("subject").value(value.getSubject());
+    out.name("ref").value(value.getRef());
+    out.endObject();
+  }
+
+  @Override
+  public TimelineEntry.Item read(JsonReader in) throws IOException {
+    int id = 0;
+    String subject = null;
+    int ref = 0;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id":
+          id = JsonCodec.nextInt(in);
+          break;
+        case "subject":
+          subject = JsonCodec.nextString(in);
+          break;
+        case "ref":
+          ref = JsonCodec.nextInt(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new TimelineEntry.Item(id, subject, ref);
+  }
+
+}
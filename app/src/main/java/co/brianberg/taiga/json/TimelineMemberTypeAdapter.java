@@ -0,0 +1,50 @@
+package co.brianberg.taiga.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import co.brianberg.taiga.db.timeline.TimelineEntry;
+
+/**
+ * Type adapter for {@link TimelineEntry.Member}
+ */
+class TimelineMemberTypeAdapter extends TypeAdapter<TimelineEntry.Member> {
+
+  @Override
+  public void write(JsonWriter out, TimelineEntry.Member value) throws IOException {
+    out.beginObject();
+    out.name("id").value(value.getId());
+    out.name("name").value(value.getName());
+    out.name("photo").value(value.getPhotoUrl());
+    out.endObject();
+  }
+
+  @Override
+  public TimelineEntry.Member read(JsonReader in) throws IOException {
+    int id = 0;
+    String name = null;
+    String photoUrl = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id":
+          id = JsonCodec.nextInt(in);
+          break;
+        case "name":
+          name = JsonCodec.nextString(in);
+          break;
+        case "photo":
+          photoUrl = JsonCodec.nextString(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return new TimelineEntry.Member(id, name, photoUrl);
+  }
+
+}
@@ -0,0 +1,72 @@
+package co.brianberg.taiga.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import co.brianberg.taiga.auth.User;
+
+/**
+ * Type adapter for {@link User}
+ */
+class UserTypeAdapter extends TypeAdapter<User> {
+
+  @Override
+  public void write(JsonWriter out, User value) throws IOException {
+    out.beginObject();
+    out.name("id").value(value.getId());
+    out.name("full_name").value(value.getName());
+    out.name("full_name_display").value(value.getDisplayName());
+    out.name("auth_token").value(value.getAuthToken());
+    out.name("timezone").value(value.getTimezone());
+    out.name("is_active").value(value.isActive());
+    out.name("email").value(value.getEmail());
+    out.name("lang").value(value.getLang());
+    out.name("photo").value(value.getPhotoUrl());
+    out.endObject();
+  }
+
+  @Override
+  public User read(JsonReader in) throws IOException {
+    User user = new User();
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "id":
+          user.setId(JsonCodec.nextInt(in));
+          break;
+        case "full_name":
+          user.setName(JsonCodec.nextString(in));
+          break;
+        case "full_name_display":
+          user.setDisplayName(JsonCodec.nextString(in));
+          break;
+        case "auth_token":
+          user.setAuthToken(JsonCodec.nextString(in));
+          break;
+        case "timezone":
+          user.setTimezone(JsonCodec.nextString(in));
+          break;
+        case "is_active":
+          user.setActive(JsonCodec.nextBoolean(in));
+          break;
+        case "email":
+          user.setEmail(JsonCodec.nextString(in));
+          break;
+        case "lang":
+          user.setLang(JsonCodec.nextString(in));
+          break;
+        case "photo":
+          user.setPhotoUrl(JsonCodec.nextString(in));
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return user;
+  }
+
+}
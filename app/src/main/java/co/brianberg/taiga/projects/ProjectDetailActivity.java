@@ -83,22 +83,6 @@ public class ProjectDetailActivity extends AppCompatActivity
     return super.onOptionsItemSelected(item);
   }
 
-  @Override
-  public void onResume() {
-    super.onResume();
-    try {
-      mProjectManager.open();
-    } catch (SQLException e) {
-      e.printStackTrace();
-    }
-  }
-
-  @Override
-  public void onPause() {
-    mProjectManager.close();
-    super.onPause();
-  }
-
   @Override
   public void onProjectDetailFragmentInteraction(int eventId) {
     switch (eventId) {
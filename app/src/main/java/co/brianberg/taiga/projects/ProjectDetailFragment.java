@@ -2,7 +2,7 @@ package co.brianberg.taiga.projects;
 
 import android.app.Activity;
 import android.content.Context;
-import android.os.AsyncTask;
+import android.database.sqlite.SQLiteException;
 import android.os.Bundle;
 import android.support.design.widget.CollapsingToolbarLayout;
 import android.support.v4.app.Fragment;
@@ -22,13 +22,23 @@ import com.android.volley.VolleyError;
 import com.squareup.picasso.Picasso;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import co.brianberg.taiga.R;
+import co.brianberg.taiga.db.ChangeNotifier;
+import co.brianberg.taiga.db.DatabaseHelper;
+import co.brianberg.taiga.db.DatabaseReader;
+import co.brianberg.taiga.db.TableChange;
 import co.brianberg.taiga.db.project.Project;
+import co.brianberg.taiga.db.project.ProjectManager;
+import co.brianberg.taiga.db.timeline.MemberCache;
 import co.brianberg.taiga.db.timeline.TimelineEntry;
 import co.brianberg.taiga.db.timeline.TimelineEntryManager;
-import co.brianberg.taiga.service.Taiga;
+import co.brianberg.taiga.service.RequestPriority;
+import co.brianberg.taiga.service.TimelineSync;
 
 /**
  * A fragment representing a single Project detail screen.
@@ -36,6 +46,8 @@ import co.brianberg.taiga.service.Taiga;
  */
 public class ProjectDetailFragment extends Fragment {
 
+  private static final String TAG = ProjectDetailFragment.class.getSimpleName();
+
   /**
    * Key to identify the project bundle argument
    */
@@ -52,9 +64,14 @@ public class ProjectDetailFragment extends Fragment {
   private Project mProject;
 
   /**
-   * Keep track of the retrieve timeline task to ensure we can cancel it if requested.
+   * Number of latest timeline entries shown on the project detail screen
+   */
+  private static final int LATEST_ENTRIES = 3;
+
+  /**
+   * Keep track of the timeline sync to ensure we can cancel it if requested.
    */
-  private RetrieveTimelineTask mRetrieveTimelineTask;
+  private TimelineSync mTimelineSync;
 
   /**
    * Timeline database manager
@@ -62,12 +79,45 @@ public class ProjectDetailFragment extends Fragment {
   private TimelineEntryManager mTimelineEntryManager;
 
   /**
-   * Project timeline entry list view adapter
+   * Project database manager
+   */
+  private ProjectManager mProjectManager;
+
+  /**
+   * Latest timeline entries shown
+   */
+  private final List<TimelineEntry> mLatestEntries = new ArrayList<>();
+
+  /**
+   * Project timeline entry list view adapter, null until the latest entries were read
    */
   private ProjectTimelineRecyclerViewAdapter mRecyclerViewAdapter;
 
+  /**
+   * Number of times the project and the latest entries were read, the results of earlier reads are dropped
+   */
+  private int mProjectLoadCount;
+
+  private int mLatestLoadCount;
+
+  /**
+   * IDs of the changed entries not bound again yet, kept across dropped reads
+   */
+  private final Set<Integer> mChangedEntryIds = new HashSet<>();
+
+  /**
+   * Receives the changes of the stored projects and timeline entries
+   */
+  private final ChangeNotifier.Listener mChangeListener = new ChangeNotifier.Listener() {
+    @Override
+    public void onChange(TableChange change) {
+      onDataChanged(change);
+    }
+  };
+
   // UI references
   private ProgressBar mProgressBar;
+  private TextView mDescriptionView;
   private RecyclerView mProjectTimeline;
   private Button mViewTimelineBtn;
 
@@ -99,19 +149,14 @@ public class ProjectDetailFragment extends Fragment {
   @Override
   public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
     View rootView = inflater.inflate(R.layout.project_detail, container, false);
+    mDescriptionView = (TextView) rootView.findViewById(R.id.project_detail_desc);
 
     if (mProject != null) {
-      Activity activity = this.getActivity();
-      CollapsingToolbarLayout appBarLayout = (CollapsingToolbarLayout) activity.findViewById(R.id.toolbar_layout);
-      if (appBarLayout != null) {
-        appBarLayout.setTitle(mProject.getName());
-        ImageView projectLogoView = (ImageView) activity.findViewById(R.id.project_detail_logo_view);
-        Picasso.with(activity).load(mProject.getLogoBigUrl()).into(projectLogoView);
-      }
-      mRetrieveTimelineTask = new RetrieveTimelineTask(mProject.getId());
-      mRetrieveTimelineTask.execute();
+      showProject();
+      syncTimeline(mProject.getId());
     }
 
+    mProjectManager = new ProjectManager(getContext());
     mTimelineEntryManager = new TimelineEntryManager(getContext());
     try {
       mTimelineEntryManager.open();
@@ -119,7 +164,6 @@ public class ProjectDetailFragment extends Fragment {
       e.printStackTrace();
     }
 
-    ((TextView) rootView.findViewById(R.id.project_detail_desc)).setText(mProject.getDescription());
     mProgressBar = (ProgressBar) rootView.findViewById(R.id.progress_project_timeline);
     mProjectTimeline = (RecyclerView) rootView.findViewById(R.id.project_timeline_list);
 
@@ -131,9 +175,18 @@ public class ProjectDetailFragment extends Fragment {
       }
     });
 
+    ChangeNotifier.getInstance().register(DatabaseHelper.TABLE_PROJECT, mChangeListener);
+    ChangeNotifier.getInstance().register(DatabaseHelper.TABLE_TIMELINE_ENTRY, mChangeListener);
     return rootView;
   }
 
+  @Override
+  public void onDestroyView() {
+    ChangeNotifier.getInstance().unregister(DatabaseHelper.TABLE_PROJECT, mChangeListener);
+    ChangeNotifier.getInstance().unregister(DatabaseHelper.TABLE_TIMELINE_ENTRY, mChangeListener);
+    super.onDestroyView();
+  }
+
   @Override
   public void onAttach(Context context) {
     super.onAttach(context);
@@ -146,19 +199,12 @@ public class ProjectDetailFragment extends Fragment {
   }
 
   @Override
-  public void onResume() {
-    super.onResume();
-    try {
-      mTimelineEntryManager.open();
-    } catch(SQLException e) {
-      e.printStackTrace();
+  public void onDestroy() {
+    if (mTimelineSync != null) {
+      mTimelineSync.cancel();
+      mTimelineSync = null;
     }
-  }
-
-  @Override
-  public void onPause() {
-    mTimelineEntryManager.close();
-    super.onPause();
+    super.onDestroy();
   }
 
   @Override
@@ -173,23 +219,161 @@ public class ProjectDetailFragment extends Fragment {
     }
   }
 
-  private void onRetrieveTimelineSuccess(List<TimelineEntry> timelineEntries) {
-    for (TimelineEntry te : timelineEntries) {
-      mTimelineEntryManager.upsertTimelineEntry(te);
+  /**
+   * Show the project name, logo and description
+   */
+  private void showProject() {
+    Activity activity = this.getActivity();
+    CollapsingToolbarLayout appBarLayout = (CollapsingToolbarLayout) activity.findViewById(R.id.toolbar_layout);
+    if (appBarLayout != null) {
+      appBarLayout.setTitle(mProject.getName());
+      ImageView projectLogoView = (ImageView) activity.findViewById(R.id.project_detail_logo_view);
+      Picasso.with(activity).load(mProject.getLogoBigUrl()).into(projectLogoView);
     }
-    List<TimelineEntry> latestEntries;
-    if (timelineEntries.size() > 3) {
-      latestEntries = timelineEntries.subList(0, 3);
-    } else {
-      latestEntries = timelineEntries;
+    mDescriptionView.setText(mProject.getDescription());
+  }
+
+  /**
+   * Show the project again when it is updated and the latest entries again
+   * when entries of the project change, both read in the background
+   *
+   * @param change  Project or timeline entry changes
+   */
+  private void onDataChanged(TableChange change) {
+    if (mProject == null) {
+      return;
+    }
+    if (DatabaseHelper.TABLE_PROJECT.equals(change.getTable())) {
+      if (change.getUpdated().contains(mProject.getId())) {
+        showStoredProject();
+      }
+    } else if (mRecyclerViewAdapter != null && (isShown(change.getDeleted()) || !change.getChanged().isEmpty())) {
+      // The latest entries are read in a single small query, only the rows which changed are bound again
+      mChangedEntryIds.addAll(change.getChanged());
+      showLatestEntries();
     }
+  }
+
+  /**
+   * Read the stored project and show it
+   */
+  private void showStoredProject() {
+    final int load = ++mProjectLoadCount;
+    final int projectId = mProject.getId();
+    DatabaseReader.getInstance().execute(
+        new DatabaseReader.Query<Project>() {
+          @Override
+          public Project run() {
+            return mProjectManager.getProject(projectId);
+          }
+        },
+        new DatabaseReader.Callback<Project>() {
+          @Override
+          public void onResult(Project project) {
+            if (load == mProjectLoadCount && project != null && getView() != null) {
+              mProject = project;
+              showProject();
+            }
+          }
+
+          @Override
+          public void onError(SQLiteException e) {
+            Log.e(TAG, "Could not read the project", e);
+          }
+        }
+    );
+  }
+
+  /**
+   * @param ids   Timeline entry IDs
+   * @return      True if one of the entries is shown
+   */
+  private boolean isShown(Set<Integer> ids) {
+    for (TimelineEntry entry : mLatestEntries) {
+      if (ids.contains(entry.getId())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Read the latest stored timeline entries and show them
+   */
+  private void showLatestEntries() {
+    final int load = ++mLatestLoadCount;
+    final int projectId = mProject.getId();
+    DatabaseReader.getInstance().execute(
+        new DatabaseReader.Query<List<TimelineEntry>>() {
+          @Override
+          public List<TimelineEntry> run() {
+            return mTimelineEntryManager.getTimelineEntriesByProject(projectId, String.valueOf(LATEST_ENTRIES));
+          }
+        },
+        new DatabaseReader.Callback<List<TimelineEntry>>() {
+          @Override
+          public void onResult(List<TimelineEntry> latestEntries) {
+            if (load == mLatestLoadCount && getView() != null) {
+              bindLatestEntries(latestEntries);
+            }
+          }
+
+          @Override
+          public void onError(SQLiteException e) {
+            Log.e(TAG, "Could not read the latest timeline entries", e);
+          }
+        }
+    );
+  }
+
+  /**
+   * Show the latest entries, notifying only the rows removed, inserted and
+   * changed. Entries keep their order, so the rows kept are in the same order
+   * before and after.
+   *
+   * @param latestEntries   Latest timeline entries, newest first
+   */
+  private void bindLatestEntries(List<TimelineEntry> latestEntries) {
     hideProgressBar();
-    mRecyclerViewAdapter = new ProjectTimelineRecyclerViewAdapter(latestEntries);
-    mProjectTimeline.setVisibility(View.VISIBLE);
-    mProjectTimeline.setLayoutManager(new LinearLayoutManager(getContext()));
-    mProjectTimeline.setAdapter(mRecyclerViewAdapter);
-    mProjectTimeline.setHasFixedSize(true);
-    mViewTimelineBtn.setVisibility(View.VISIBLE);
+    if (mRecyclerViewAdapter == null) {
+      mLatestEntries.addAll(latestEntries);
+      mChangedEntryIds.clear();
+      mRecyclerViewAdapter = new ProjectTimelineRecyclerViewAdapter(mLatestEntries,
+          MemberCache.getInstance(getContext()));
+      mProjectTimeline.setVisibility(View.VISIBLE);
+      mProjectTimeline.setLayoutManager(new LinearLayoutManager(getContext()));
+      mProjectTimeline.setAdapter(mRecyclerViewAdapter);
+      mProjectTimeline.setHasFixedSize(true);
+      mViewTimelineBtn.setVisibility(View.VISIBLE);
+      return;
+    }
+    Set<Integer> ids = new HashSet<>();
+    for (TimelineEntry entry : latestEntries) {
+      ids.add(entry.getId());
+    }
+    Set<Integer> shownIds = new HashSet<>();
+    for (int position = mLatestEntries.size() - 1; position >= 0; position--) {
+      int id = mLatestEntries.get(position).getId();
+      if (ids.contains(id)) {
+        shownIds.add(id);
+      } else {
+        mLatestEntries.remove(position);
+        mRecyclerViewAdapter.notifyItemRemoved(position);
+      }
+    }
+    for (int position = 0; position < latestEntries.size(); position++) {
+      TimelineEntry entry = latestEntries.get(position);
+      if (!shownIds.contains(entry.getId())) {
+        mLatestEntries.add(position, entry);
+        mRecyclerViewAdapter.notifyItemInserted(position);
+      } else {
+        mLatestEntries.set(position, entry);
+        if (mChangedEntryIds.contains(entry.getId())) {
+          mRecyclerViewAdapter.notifyItemChanged(position);
+        }
+      }
+    }
+    mChangedEntryIds.clear();
   }
 
   private void hideProgressBar() {
@@ -207,44 +391,29 @@ public class ProjectDetailFragment extends Fragment {
   }
 
   /**
-   * Represents an asynchronous login/registration task used to authenticate
-   * the user.
+   * Downloads the timeline entries newer than the stored ones and shows the latest entries.
+   *
+   * @param projectId   Project ID
    */
-  private class RetrieveTimelineTask extends AsyncTask<Void, Void, List<TimelineEntry>> {
-
-    private final String TAG = RetrieveTimelineTask.class.getSimpleName();
-
-    private final int mProjectId;
-
-    RetrieveTimelineTask(int projectId) {
-      mProjectId = projectId;
-    }
-
-    @Override
-    protected List<TimelineEntry> doInBackground(Void... params) {
-      return Taiga.getProjectTimeline(getActivity().getBaseContext(), mProjectId,
-          new Response.ErrorListener() {
-            @Override
-            public void onErrorResponse(VolleyError error) {
-              Log.d(TAG, error.toString());
-            }
+  private void syncTimeline(int projectId) {
+    mTimelineSync = new TimelineSync(getContext(), projectId, RequestPriority.FOREGROUND);
+    mTimelineSync.start(
+        new Response.Listener<List<TimelineEntry>>() {
+          @Override
+          public void onResponse(List<TimelineEntry> newEntries) {
+            mTimelineSync = null;
+            showLatestEntries();
           }
-      );
-    }
-
-    @Override
-    protected void onPostExecute(final List<TimelineEntry> timelineEntries) {
-      mRetrieveTimelineTask = null;
-      if (timelineEntries != null) {
-        onRetrieveTimelineSuccess(timelineEntries);
-      }
-    }
-
-    @Override
-    protected void onCancelled() {
-      mRetrieveTimelineTask = null;
-      hideProgressBar();
-    }
+        },
+        new Response.ErrorListener() {
+          @Override
+          public void onErrorResponse(VolleyError error) {
+            Log.d(TAG, error.toString());
+            mTimelineSync = null;
+            showLatestEntries();
+          }
+        }
+    );
   }
 
 }
@@ -1,25 +1,48 @@
 package co.brianberg.taiga.projects;
 
 import android.content.Intent;
-import android.os.AsyncTask;
+import android.database.sqlite.SQLiteException;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.Snackbar;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
+import android.text.TextUtils;
 import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.FrameLayout;
+import android.widget.HorizontalScrollView;
+import android.widget.LinearLayout;
 import android.widget.ProgressBar;
+import android.widget.TextView;
 
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import co.brianberg.taiga.BuildConfig;
 import co.brianberg.taiga.R;
+import co.brianberg.taiga.db.ChangeNotifier;
+import co.brianberg.taiga.db.DatabaseHelper;
+import co.brianberg.taiga.db.DatabaseReader;
+import co.brianberg.taiga.db.MaintenanceJobService;
+import co.brianberg.taiga.db.TableChange;
 import co.brianberg.taiga.db.project.Project;
 import co.brianberg.taiga.db.project.ProjectManager;
+import co.brianberg.taiga.service.RequestHandle;
+import co.brianberg.taiga.service.RequestMetrics;
 import co.brianberg.taiga.service.Taiga;
 
 /**
@@ -30,18 +53,31 @@ import co.brianberg.taiga.service.Taiga;
 public class ProjectListActivity extends AppCompatActivity
     implements ProjectListFragment.OnProjectListFragmentInteractionListener {
 
+  private static final String TAG = ProjectListActivity.class.getSimpleName();
+
   /**
    * Key to identify the member ID bundle argument
    */
   public static final String ARG_MEMBER_ID = "member_id";
 
+  /**
+   * Delay after the last keystroke before the projects are searched
+   */
+  private static final long SEARCH_DELAY_MS = 300;
+
+  /**
+   * Name of the request metrics report written by debug builds
+   */
+  private static final String REQUEST_METRICS_FILE = "request_metrics.txt";
+
   /**
    * Member ID for which to retrieve projects
    */
   private int mMemberId;
 
   /**
-   * List of projects
+   * Projects retrieved for the member, null once the stored projects changed
+   * and the member's stored projects are shown instead
    */
   private List<Project> mProjects;
 
@@ -51,12 +87,54 @@ public class ProjectListActivity extends AppCompatActivity
   private ProjectManager mProjectManager;
 
   /**
-   * Keep track of the retrieve projects task to ensure we can cancel it if requested.
+   * Keep track of the retrieve projects request to ensure we can cancel it if requested.
+   */
+  private RequestHandle mRetrieveProjectsRequest;
+
+  /**
+   * Search text the list is filtered by, null if the projects are not being searched
+   */
+  private String mQuery;
+
+  /**
+   * Search text being typed, applied once typing pauses
+   */
+  private String mPendingQuery;
+
+  /**
+   * Tag the projects are filtered by, null if they are not filtered
+   */
+  private String mTag;
+
+  /**
+   * Number of times the list was loaded, the results of earlier loads are dropped
+   */
+  private int mLoadCount;
+
+  private final Handler mHandler = new Handler();
+
+  private final Runnable mSearch = new Runnable() {
+    @Override
+    public void run() {
+      mQuery = mPendingQuery;
+      showProjects();
+    }
+  };
+
+  /**
+   * Receives the changes of the stored projects
    */
-  private RetrieveProjectsTask mRetrieveProjectsTask;
+  private final ChangeNotifier.Listener mProjectChangeListener = new ChangeNotifier.Listener() {
+    @Override
+    public void onChange(TableChange change) {
+      onProjectsChanged(change);
+    }
+  };
 
   // UI references
   private ProgressBar mProgressBar;
+  private HorizontalScrollView mTagBar;
+  private LinearLayout mTagContainer;
   private FrameLayout mProjectListContainer;
   private ProjectListFragment mProjectListFragment;
 
@@ -77,38 +155,66 @@ public class ProjectListActivity extends AppCompatActivity
 
     mProjectListContainer = (FrameLayout) findViewById(R.id.project_list_container);
     mProgressBar = (ProgressBar) findViewById(R.id.progress_project_list);
+    mTagBar = (HorizontalScrollView) findViewById(R.id.project_tag_bar);
+    mTagContainer = (LinearLayout) findViewById(R.id.project_tags);
 
     // Get projects
     mProjectManager = new ProjectManager(this);
     try {
       mProjectManager.open();
-      mProjects = mProjectManager.getAllProjects();
-      if (mProjects.size() > 0) {
-        hideProgressBar();
-        showListFragment(mProjects);
-      }
     } catch (SQLException e) {
       e.printStackTrace();
     }
 
-    mRetrieveProjectsTask = new RetrieveProjectsTask(mMemberId);
-    mRetrieveProjectsTask.execute();
+    ChangeNotifier.getInstance().register(DatabaseHelper.TABLE_PROJECT, mProjectChangeListener);
+    retrieveProjects(mMemberId);
+    showProjects();
+    showTags();
+    MaintenanceJobService.schedule(this);
   }
 
   @Override
-  public void onResume() {
-    super.onResume();
-    try {
-      mProjectManager.open();
-    } catch (SQLException e) {
-      e.printStackTrace();
+  public boolean onCreateOptionsMenu(Menu menu) {
+    getMenuInflater().inflate(R.menu.menu_project_list, menu);
+    MenuItem searchItem = menu.findItem(R.id.action_search);
+    SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+    searchView.setQueryHint(getString(R.string.search_projects_hint));
+    searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+      @Override
+      public boolean onQueryTextSubmit(String query) {
+        return false;
+      }
+
+      @Override
+      public boolean onQueryTextChange(String query) {
+        mPendingQuery = query;
+        mHandler.removeCallbacks(mSearch);
+        mHandler.postDelayed(mSearch, SEARCH_DELAY_MS);
+        return true;
+      }
+    });
+    menu.findItem(R.id.action_dump_request_metrics).setVisible(BuildConfig.DEBUG);
+    return true;
+  }
+
+  @Override
+  public boolean onOptionsItemSelected(MenuItem item) {
+    if (item.getItemId() == R.id.action_dump_request_metrics) {
+      dumpRequestMetrics();
+      return true;
     }
+    return super.onOptionsItemSelected(item);
   }
 
   @Override
-  public void onPause() {
-    mProjectManager.close();
-    super.onPause();
+  protected void onDestroy() {
+    mHandler.removeCallbacks(mSearch);
+    ChangeNotifier.getInstance().unregister(DatabaseHelper.TABLE_PROJECT, mProjectChangeListener);
+    if (mRetrieveProjectsRequest != null) {
+      mRetrieveProjectsRequest.cancel();
+      mRetrieveProjectsRequest = null;
+    }
+    super.onDestroy();
   }
 
   @Override
@@ -121,15 +227,173 @@ public class ProjectListActivity extends AppCompatActivity
   }
 
   private void onRetrieveSuccess(List<Project> projects) {
-    for (Project p : projects) {
-      mProjectManager.upsertProject(p);
+    mProjects = projects;
+    showProjects();
+  }
+
+  /**
+   * Update the displayed projects and tags as stored projects change. Only
+   * the changed projects of the member are read again, along with the filter
+   * of the list, and only their rows are bound again.
+   *
+   * @param change  Project changes
+   */
+  private void onProjectsChanged(TableChange change) {
+    // The stored projects are shown from now on, the retrieved ones may be outdated
+    mProjects = null;
+    showTags();
+    if (mProjectListFragment == null) {
+      showProjects();
+      return;
+    }
+    final int memberId = mMemberId;
+    final String query = TextUtils.isEmpty(mQuery) ? null : mQuery;
+    final String tag = mTag;
+    final Set<Integer> ids = change.getChanged();
+    final Set<Integer> deleted = change.getDeleted();
+    final int load = mLoadCount;
+    DatabaseReader.getInstance().execute(
+        new DatabaseReader.Query<List<Project>>() {
+          @Override
+          public List<Project> run() {
+            if (ids.isEmpty()) {
+              return new ArrayList<>();
+            }
+            return mProjectManager.searchMemberProjects(memberId, query, tag, ids);
+          }
+        },
+        new DatabaseReader.Callback<List<Project>>() {
+          @Override
+          public void onResult(List<Project> changed) {
+            // A later load of the whole list includes the change
+            if (load != mLoadCount || isDestroyed()) {
+              return;
+            }
+            // Changed projects which no longer match the filter or left the member's list are removed as well
+            Set<Integer> removed = new HashSet<>(ids);
+            for (Project project : changed) {
+              removed.remove(project.getId());
+            }
+            removed.addAll(deleted);
+            mProjectListFragment.applyChanges(changed, removed);
+          }
+
+          @Override
+          public void onError(SQLiteException e) {
+            Log.e(TAG, "Could not read the changed projects", e);
+          }
+        }
+    );
+  }
+
+  /**
+   * Show the member's projects, or the member's stored projects matching the
+   * search text and the selected tag. Stored projects are read in the background.
+   */
+  private void showProjects() {
+    final int load = ++mLoadCount;
+    if (mProjects != null && TextUtils.isEmpty(mQuery) && mTag == null) {
+      displayProjects(mProjects);
+      return;
     }
+    final int memberId = mMemberId;
+    final String query = TextUtils.isEmpty(mQuery) ? null : mQuery;
+    final String tag = mTag;
+    DatabaseReader.getInstance().execute(
+        new DatabaseReader.Query<List<Project>>() {
+          @Override
+          public List<Project> run() {
+            return mProjectManager.searchMemberProjects(memberId, query, tag, null);
+          }
+        },
+        new DatabaseReader.Callback<List<Project>>() {
+          @Override
+          public void onResult(List<Project> projects) {
+            if (load == mLoadCount && !isDestroyed()) {
+              displayProjects(projects);
+            }
+          }
+
+          @Override
+          public void onError(SQLiteException e) {
+            Log.e(TAG, "Could not read the projects", e);
+          }
+        }
+    );
+  }
+
+  /**
+   * Bind projects to the list, the list is not shown empty while the
+   * member's projects are being retrieved
+   *
+   * @param projects  Projects
+   */
+  private void displayProjects(List<Project> projects) {
     if (mProjectListFragment != null) {
       mProjectListFragment.updateProjects(projects);
-    } else {
+    } else if (!projects.isEmpty() || mRetrieveProjectsRequest == null) {
+      hideProgressBar();
       showListFragment(projects);
     }
-    mProjects = projects;
+  }
+
+  /**
+   * Show a chip for each tag of the stored projects, read in the background
+   */
+  private void showTags() {
+    DatabaseReader.getInstance().execute(
+        new DatabaseReader.Query<List<String>>() {
+          @Override
+          public List<String> run() {
+            return mProjectManager.getTags();
+          }
+        },
+        new DatabaseReader.Callback<List<String>>() {
+          @Override
+          public void onResult(List<String> tags) {
+            if (!isDestroyed()) {
+              bindTags(tags);
+            }
+          }
+
+          @Override
+          public void onError(SQLiteException e) {
+            Log.e(TAG, "Could not read the project tags", e);
+          }
+        }
+    );
+  }
+
+  /**
+   * Bind a chip for each tag, selecting a chip filters the projects by its tag
+   *
+   * @param tags  Tag names
+   */
+  private void bindTags(List<String> tags) {
+    if (mTag != null && !tags.contains(mTag)) {
+      mTag = null;
+      showProjects();
+    }
+    mTagContainer.removeAllViews();
+    LayoutInflater inflater = getLayoutInflater();
+    for (final String tag : tags) {
+      TextView chip = (TextView) inflater.inflate(R.layout.project_tag_chip, mTagContainer, false);
+      chip.setText(tag);
+      chip.setSelected(tag.equals(mTag));
+      chip.setOnClickListener(new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+          mTag = tag.equals(mTag) ? null : tag;
+          for (int i = 0; i < mTagContainer.getChildCount(); i++) {
+            View child = mTagContainer.getChildAt(i);
+            child.setSelected(child == view && mTag != null);
+          }
+          showProjects();
+        }
+      });
+      mTagContainer.addView(chip);
+    }
+    mTagBar.setVisibility(tags.isEmpty() ? View.GONE : View.VISIBLE);
   }
 
   private void hideProgressBar() {
@@ -145,51 +409,49 @@ public class ProjectListActivity extends AppCompatActivity
   }
 
   /**
-   * Represents an asynchronous login/registration task used to authenticate
-   * the user.
+   * Write the request metrics collected since the app started to the app's
+   * files, where they can be pulled from a debug build:
+   *
+   *   adb pull /sdcard/Android/data/co.brianberg.taiga/files/request_metrics.txt
    */
-  private class RetrieveProjectsTask extends AsyncTask<Void, Void, List<Project>> {
-
-    private final String TAG = RetrieveProjectsTask.class.getSimpleName();
-
-    private final int mMemberId;
-
-    RetrieveProjectsTask(int memberId) {
-      mMemberId = memberId;
+  private void dumpRequestMetrics() {
+    File dir = getExternalFilesDir(null);
+    File file = new File(dir != null ? dir : getFilesDir(), REQUEST_METRICS_FILE);
+    try {
+      RequestMetrics.getInstance().dump(file);
+      Snackbar.make(mProjectListContainer, getString(R.string.request_metrics_dumped, file.getPath()),
+          Snackbar.LENGTH_LONG).show();
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to write request metrics", e);
+      Snackbar.make(mProjectListContainer, R.string.request_metrics_dump_error, Snackbar.LENGTH_LONG).show();
     }
+  }
 
-    @Override
-    protected List<Project> doInBackground(Void... params) {
-      return Taiga.getProjectList(ProjectListActivity.this.getBaseContext(), mMemberId,
-          new Response.ErrorListener() {
-            @Override
-            public void onErrorResponse(VolleyError error) {
-              Log.d(TAG, error.toString());
-              runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                  Snackbar.make(mProjectListContainer, R.string.project_list_retrieve_error, Snackbar.LENGTH_LONG);
-                }
-              });
-            }
+  /**
+   * Sends an asynchronous request to retrieve the member's projects.
+   *
+   * @param memberId  Member ID
+   */
+  private void retrieveProjects(int memberId) {
+    mRetrieveProjectsRequest = Taiga.getProjectList(getBaseContext(), memberId,
+        new Response.Listener<List<Project>>() {
+          @Override
+          public void onResponse(List<Project> projects) {
+            mRetrieveProjectsRequest = null;
+            hideProgressBar();
+            onRetrieveSuccess(projects);
           }
-      );
-    }
-
-    @Override
-    protected void onPostExecute(final List<Project> projects) {
-      mRetrieveProjectsTask = null;
-      hideProgressBar();
-      if (projects != null) {
-        onRetrieveSuccess(projects);
-      }
-    }
-
-    @Override
-    protected void onCancelled() {
-      mRetrieveProjectsTask = null;
-      hideProgressBar();
-    }
+        },
+        new Response.ErrorListener() {
+          @Override
+          public void onErrorResponse(VolleyError error) {
+            Log.d(TAG, error.toString());
+            mRetrieveProjectsRequest = null;
+            hideProgressBar();
+            Snackbar.make(mProjectListContainer, R.string.project_list_retrieve_error, Snackbar.LENGTH_LONG).show();
+          }
+        }
+    );
   }
 
 }
@@ -5,6 +5,7 @@ import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SimpleItemAnimator;
 
 import android.view.LayoutInflater;
 import android.view.View;
@@ -12,6 +13,7 @@ import android.view.ViewGroup;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import co.brianberg.taiga.R;
 import co.brianberg.taiga.db.project.Project;
@@ -82,6 +84,8 @@ public class ProjectListFragment extends Fragment {
       recyclerView.setLayoutManager(new LinearLayoutManager(context));
       recyclerView.setAdapter(mRecyclerViewAdapter);
       recyclerView.addItemDecoration(new SimpleDividerItemDecoration(context));
+      // Stored projects are bound again as they are written, unchanged rows must not flash
+      ((SimpleItemAnimator) recyclerView.getItemAnimator()).setSupportsChangeAnimations(false);
     }
     return view;
   }
@@ -105,7 +109,20 @@ public class ProjectListFragment extends Fragment {
 
   public void updateProjects(List<Project> projects) {
     mProjectList = projects;
-    mRecyclerViewAdapter.notifyDataSetChanged();
+    mRecyclerViewAdapter.setProjects(projects);
+  }
+
+  /**
+   * Update the displayed projects in place, see
+   * {@link ProjectRecyclerViewAdapter#applyChanges}
+   *
+   * @param changed   Projects to display which were inserted or updated
+   * @param removed   IDs of the projects not to display anymore
+   */
+  public void applyChanges(List<Project> changed, Set<Integer> removed) {
+    if (mRecyclerViewAdapter != null) {
+      mRecyclerViewAdapter.applyChanges(changed, removed);
+    }
   }
 
   /**
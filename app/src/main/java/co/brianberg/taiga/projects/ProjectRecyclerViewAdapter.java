@@ -9,7 +9,9 @@ import android.widget.TextView;
 
 import com.squareup.picasso.Picasso;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import co.brianberg.taiga.R;
 import co.brianberg.taiga.db.project.Project;
@@ -21,14 +23,72 @@ import co.brianberg.taiga.projects.ProjectListFragment.OnProjectListFragmentInte
  */
 public class ProjectRecyclerViewAdapter extends RecyclerView.Adapter<ProjectRecyclerViewAdapter.ViewHolder> {
 
-  private final List<Project> mValues;
+  private List<Project> mValues;
   private final OnProjectListFragmentInteractionListener mListener;
 
   public ProjectRecyclerViewAdapter(List<Project> items, OnProjectListFragmentInteractionListener listener) {
-    mValues = items;
+    mValues = new ArrayList<>(items);
     mListener = listener;
   }
 
+  /**
+   * Replace the displayed projects
+   *
+   * @param items   Projects to display
+   */
+  public void setProjects(List<Project> items) {
+    mValues = new ArrayList<>(items);
+    notifyDataSetChanged();
+  }
+
+  /**
+   * Update the displayed projects in place, only the affected rows are bound
+   * again. Projects not displayed yet are inserted before the first project
+   * with a greater name, and renamed projects are moved there.
+   *
+   * @param changed   Projects to display which were inserted or updated
+   * @param removed   IDs of the projects not to display anymore
+   */
+  public void applyChanges(List<Project> changed, Set<Integer> removed) {
+    for (int position = mValues.size() - 1; position >= 0; position--) {
+      if (removed.contains(mValues.get(position).getId())) {
+        mValues.remove(position);
+        notifyItemRemoved(position);
+      }
+    }
+    for (Project project : changed) {
+      int from = indexOf(project.getId());
+      if (from >= 0 && mValues.get(from).getName().equals(project.getName())) {
+        mValues.set(from, project);
+        notifyItemChanged(from);
+        continue;
+      }
+      if (from >= 0) {
+        mValues.remove(from);
+      }
+      int position = 0;
+      while (position < mValues.size() && mValues.get(position).getName().compareTo(project.getName()) <= 0) {
+        position++;
+      }
+      mValues.add(position, project);
+      if (from >= 0) {
+        notifyItemMoved(from, position);
+        notifyItemChanged(position);
+      } else {
+        notifyItemInserted(position);
+      }
+    }
+  }
+
+  private int indexOf(int projectId) {
+    for (int position = 0; position < mValues.size(); position++) {
+      if (mValues.get(position).getId() == projectId) {
+        return position;
+      }
+    }
+    return -1;
+  }
+
   @Override
   public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
     View view = LayoutInflater.from(parent.getContext())
@@ -9,11 +9,13 @@ import android.widget.TextView;
 
 import com.squareup.picasso.Picasso;
 
-import java.text.SimpleDateFormat;
 import java.util.List;
+import java.util.TimeZone;
 
 import co.brianberg.taiga.R;
+import co.brianberg.taiga.db.timeline.MemberCache;
 import co.brianberg.taiga.db.timeline.TimelineEntry;
+import co.brianberg.taiga.json.DateCodec;
 
 /**
  * {@link RecyclerView.Adapter} that can display a {@link TimelineEntry}.
@@ -21,10 +23,36 @@ import co.brianberg.taiga.db.timeline.TimelineEntry;
 public class ProjectTimelineRecyclerViewAdapter extends
     RecyclerView.Adapter<ProjectTimelineRecyclerViewAdapter.ViewHolder> {
 
-  private final List<TimelineEntry> mValues;
+  private List<TimelineEntry> mValues;
 
-  public ProjectTimelineRecyclerViewAdapter(List<TimelineEntry> items) {
+  private final MemberCache mMembers;
+
+  /**
+   * Time zone the entry dates are shown in
+   */
+  private final TimeZone mTimeZone = TimeZone.getDefault();
+
+  public ProjectTimelineRecyclerViewAdapter(List<TimelineEntry> items, MemberCache members) {
     mValues = items;
+    mMembers = members;
+  }
+
+  /**
+   * Replace the displayed timeline entries
+   *
+   * @param items   Timeline entries to display
+   */
+  public void setEntries(List<TimelineEntry> items) {
+    mValues = items;
+    notifyDataSetChanged();
+  }
+
+  /**
+   * @param position  Position of a displayed timeline entry
+   * @return          Timeline entry
+   */
+  public TimelineEntry getEntry(int position) {
+    return mValues.get(position);
   }
 
   @Override
@@ -39,17 +67,17 @@ public class ProjectTimelineRecyclerViewAdapter extends
     holder.mItem = mValues.get(position);
     holder.mDescriptionView.setText(holder.mItem.getDescription());
 
-    SimpleDateFormat format = new SimpleDateFormat("M/dd/yy");
-    holder.mDateView.setText(format.format(holder.mItem.getCreatedDate()));
+    // Formatted into the buffer of the view holder so binding does not allocate
+    int length = DateCodec.formatShortDate(holder.mItem.getCreatedDate().getTime(), mTimeZone,
+        holder.mDateBuffer, 0);
+    holder.mDateView.setText(holder.mDateBuffer, 0, length);
 
-    TimelineEntry.Member user = holder.mItem.getData().getUser();
+    // The shared member already has an absolute photo URL
+    TimelineEntry.Member user = mMembers.intern(holder.mItem.getData().getUser());
     if (user != null) {
       holder.mUserNameView.setText(user.getName());
       String userPhotoUrl = user.getPhotoUrl();
       if (userPhotoUrl != null) {
-        if (userPhotoUrl.startsWith("//")) {
-          userPhotoUrl = "https:" + userPhotoUrl;
-        }
         Picasso.with(holder.mView.getContext()).load(userPhotoUrl).into(holder.mPhotoView);
         holder.mPhotoView.setVisibility(View.VISIBLE);
       }
@@ -68,6 +96,7 @@ public class ProjectTimelineRecyclerViewAdapter extends
     public final TextView mUserNameView;
     public final TextView mDescriptionView;
     public final TextView mDateView;
+    public final char[] mDateBuffer = new char[DateCodec.SHORT_DATE_LENGTH];
     public TimelineEntry mItem;
 
     public ViewHolder(View view) {
@@ -0,0 +1,75 @@
+package co.brianberg.taiga.service;
+
+import java.util.Random;
+
+/**
+ * Retry policy for a request: how many attempts may be made, how long a
+ * single attempt may take and how long to wait between attempts. The wait
+ * grows exponentially with a random jitter so that clients do not retry in
+ * lockstep. All attempts share the deadline of the request.
+ *
+ * Only idempotent requests are ever retried, see {@link HttpHelper}.
+ */
+public class BackoffPolicy {
+
+  /**
+   * Single attempt which may take until the deadline
+   */
+  public static final BackoffPolicy NONE = new BackoffPolicy(1, Integer.MAX_VALUE, 0, 0);
+
+  /**
+   * Up to three attempts of at most 10 seconds each, waiting about 1 then 2 seconds in between
+   */
+  public static final BackoffPolicy DEFAULT = new BackoffPolicy(3, 10000, 1000, 8000);
+
+  private final int maxAttempts;
+
+  private final int attemptTimeoutMs;
+
+  private final int initialBackoffMs;
+
+  private final int maxBackoffMs;
+
+  /**
+   * @param maxAttempts         Maximum number of attempts, including the first one
+   * @param attemptTimeoutMs    Maximum duration of a single attempt in milliseconds
+   * @param initialBackoffMs    Wait before the first retry in milliseconds, doubled for each further retry
+   * @param maxBackoffMs        Maximum wait between attempts in milliseconds
+   */
+  public BackoffPolicy(int maxAttempts, int attemptTimeoutMs, int initialBackoffMs, int maxBackoffMs) {
+    this.maxAttempts = maxAttempts;
+    this.attemptTimeoutMs = attemptTimeoutMs;
+    this.initialBackoffMs = initialBackoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public int getAttemptTimeoutMs() {
+    return attemptTimeoutMs;
+  }
+
+  /**
+   * Get the wait before the next attempt, a random duration between half and
+   * all of the exponential backoff
+   *
+   * @param attempt   Number of attempts made so far, starting at 1
+   * @param random    Source of jitter
+   * @return          Wait in milliseconds
+   */
+  public long getBackoffMs(int attempt, Random random) {
+    long backoff = initialBackoffMs;
+    for (int i = 1; i < attempt && backoff < maxBackoffMs; i++) {
+      backoff *= 2;
+    }
+    backoff = Math.min(backoff, maxBackoffMs);
+    if (backoff <= 0) {
+      return 0;
+    }
+    long half = backoff / 2;
+    return half + (long) (random.nextDouble() * (backoff - half));
+  }
+
+}
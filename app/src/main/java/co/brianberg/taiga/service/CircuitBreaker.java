@@ -0,0 +1,161 @@
+package co.brianberg.taiga.service;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import com.android.volley.NetworkError;
+import com.android.volley.NoConnectionError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Circuit breaker for a host. After a run of consecutive failures the circuit
+ * opens and requests to the host fail immediately instead of occupying a
+ * dispatcher until they time out. Once the open period has passed a single
+ * probe request is let through: success closes the circuit, failure opens it
+ * again.
+ *
+ * Times are passed in by the caller as milliseconds of a monotonic clock.
+ */
+public class CircuitBreaker {
+
+  /**
+   * Consecutive failures after which the circuit opens
+   */
+  static final int FAILURE_THRESHOLD = 5;
+
+  /**
+   * Time the circuit stays open before a probe is let through
+   */
+  static final long OPEN_MS = 30000;
+
+  private static final Map<String, CircuitBreaker> sBreakers = new HashMap<>();
+
+  private int mFailures;
+
+  private boolean mOpen;
+
+  private long mRetryAt;
+
+  CircuitBreaker() {}
+
+  /**
+   * Get the circuit breaker of the host a URL points to
+   *
+   * @param url   Request URL
+   * @return      Circuit breaker shared by all requests to the host
+   */
+  public static CircuitBreaker forUrl(String url) {
+    String host;
+    try {
+      host = URI.create(url).getHost();
+    } catch (IllegalArgumentException e) {
+      host = null;
+    }
+    if (host == null) {
+      host = url;
+    }
+    synchronized (sBreakers) {
+      CircuitBreaker breaker = sBreakers.get(host);
+      if (breaker == null) {
+        breaker = new CircuitBreaker();
+        sBreakers.put(host, breaker);
+      }
+      return breaker;
+    }
+  }
+
+  /**
+   * @param context   Context
+   * @param error     Request error
+   * @return          True if the error indicates that the host is unhealthy,
+   *                  and that the request may succeed if retried later
+   */
+  public static boolean isHostFailure(Context context, VolleyError error) {
+    // Only a missing connection needs the network state to be told apart
+    return isHostFailure(error, !(error instanceof NoConnectionError) || isDeviceOnline(context));
+  }
+
+  /**
+   * Volley reports every connection failure without a response as a missing
+   * connection, including a refused or reset connection, a failed DNS lookup
+   * or TLS handshake. Those are only host failures while the device has a
+   * network, without one they say nothing about the host.
+   *
+   * @param error           Request error
+   * @param deviceOnline    True if the device has a connected network
+   * @return                True if the error indicates that the host is unhealthy
+   */
+  static boolean isHostFailure(VolleyError error, boolean deviceOnline) {
+    if (error instanceof CircuitOpenError) {
+      return false;
+    }
+    if (error instanceof NoConnectionError) {
+      return deviceOnline;
+    }
+    if (error.networkResponse != null) {
+      int status = error.networkResponse.statusCode;
+      return status >= 500 || status == 429;
+    }
+    return error instanceof TimeoutError || error instanceof NetworkError;
+  }
+
+  private static boolean isDeviceOnline(Context context) {
+    ConnectivityManager connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    NetworkInfo network = connectivity.getActiveNetworkInfo();
+    return network != null && network.isConnected();
+  }
+
+  /**
+   * Check whether a request may be sent. While the circuit is open this lets
+   * one probe through per open period.
+   *
+   * @param nowMs   Current time
+   * @return        True if the request may be sent
+   */
+  public synchronized boolean allowRequest(long nowMs) {
+    if (!mOpen) {
+      return true;
+    }
+    if (nowMs >= mRetryAt) {
+      // Hold further requests back until the probe has had its chance
+      mRetryAt = nowMs + OPEN_MS;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Record a response from the host, closing the circuit
+   */
+  public synchronized void onSuccess() {
+    mFailures = 0;
+    mOpen = false;
+  }
+
+  /**
+   * Record a failed request to the host
+   *
+   * @param nowMs   Current time
+   */
+  public synchronized void onFailure(long nowMs) {
+    mFailures++;
+    if (mOpen || mFailures >= FAILURE_THRESHOLD) {
+      mOpen = true;
+      mRetryAt = nowMs + OPEN_MS;
+    }
+  }
+
+  /**
+   * @return  True if requests to the host are currently failing fast
+   */
+  public synchronized boolean isOpen() {
+    return mOpen;
+  }
+
+}
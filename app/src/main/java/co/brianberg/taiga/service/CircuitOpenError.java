@@ -0,0 +1,15 @@
+package co.brianberg.taiga.service;
+
+import com.android.volley.VolleyError;
+
+/**
+ * Error delivered without sending the request because the circuit of its
+ * host is open, see {@link CircuitBreaker}
+ */
+public class CircuitOpenError extends VolleyError {
+
+  public CircuitOpenError(String url) {
+    super("Circuit open for " + url);
+  }
+
+}
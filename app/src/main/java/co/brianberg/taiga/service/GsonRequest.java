@@ -0,0 +1,329 @@
+package co.brianberg.taiga.service;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Response;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.JsonRequest;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request which decodes the response body straight from the network bytes
+ * into objects of the given type, without building an intermediate
+ * JSON tree or string
+ */
+public class GsonRequest<T> extends JsonRequest<T> {
+
+  private final Context mContext;
+
+  private final Gson mGson;
+
+  private final Type mType;
+
+  private final Map<String, String> mHeaders;
+
+  private ValidatorStore mValidatorStore;
+
+  private Map<String, String> mResponseHeaders;
+
+  /**
+   * Identical requests attached to this one while it is in flight, see {@link #attach}
+   */
+  private final List<GsonRequest<T>> mFollowers = new ArrayList<>();
+
+  /**
+   * In-flight request this one is attached to, if any
+   */
+  private GsonRequest<?> mLeader;
+
+  /**
+   * True once this request has been cancelled by its own caller
+   */
+  private boolean mCancelRequested;
+
+  /**
+   * True once the outcome of the request has been recorded, a request kept
+   * running past its deadline for its followers must not be recorded twice
+   */
+  private boolean mOutcomeRecorded;
+
+  private RequestPriority mPriority = RequestPriority.FOREGROUND;
+
+  // Timings recorded in RequestMetrics, written on the network thread before delivery
+  private final String mEndpoint;
+  private final long mQueuedAtMs;
+  private long mParseStartMs;
+  private long mNetworkMs;
+  private long mParseMs;
+  private int mBytes;
+
+  /**
+   * @param context         Context
+   * @param method          Request method
+   * @param url             Request URL
+   * @param headers         Request headers, may be null
+   * @param requestBody     JSON request body, may be null
+   * @param gson            Gson instance used to decode the response
+   * @param type            Type of the decoded response
+   * @param listener        Response listener
+   * @param errorListener   Error listener
+   */
+  public GsonRequest(Context context, int method, String url, Map<String, String> headers, String requestBody,
+                     Gson gson, Type type, Response.Listener<T> listener, Response.ErrorListener errorListener) {
+    super(method, url, requestBody, listener, errorListener);
+    mContext = context.getApplicationContext();
+    mGson = gson;
+    mType = type;
+    mHeaders = headers;
+    mEndpoint = RequestMetrics.endpointOf(method, url);
+    mQueuedAtMs = SystemClock.elapsedRealtime();
+  }
+
+  /**
+   * Make the request conditional on the validators stored for its URL. A
+   * 304 Not Modified response is delivered as a null result, see {@link #notModified},
+   * and the validators of a successful response are handed to the listener as
+   * pending, see {@link ValidatorStore#takePending}.
+   *
+   * @param validatorStore    Validator store
+   */
+  public void setConditional(ValidatorStore validatorStore) {
+    mValidatorStore = validatorStore;
+    // Bodies are kept in the database, there is no point in also caching them on disk
+    setShouldCache(false);
+  }
+
+  /**
+   * Set the scheduling priority, must be called before the request is queued
+   *
+   * @param priority  Request priority
+   */
+  public void setPriority(RequestPriority priority) {
+    mPriority = priority;
+  }
+
+  /**
+   * @return  Scheduling priority
+   */
+  public RequestPriority getRequestPriority() {
+    return mPriority;
+  }
+
+  @Override
+  public Priority getPriority() {
+    return mPriority.getVolleyPriority();
+  }
+
+  @Override
+  public Map<String, String> getHeaders() {
+    if (mValidatorStore == null) {
+      return mHeaders != null ? mHeaders : new HashMap<String, String>();
+    }
+    Map<String, String> headers = mHeaders != null ? new HashMap<>(mHeaders) : new HashMap<String, String>();
+    mValidatorStore.addConditionalHeaders(getUrl(), headers);
+    return headers;
+  }
+
+  @Override
+  protected Response<T> parseNetworkResponse(NetworkResponse response) {
+    if (response.statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      mParseStartMs = SystemClock.elapsedRealtime();
+      mNetworkMs = response.networkTimeMs;
+      return Response.success(notModified(), null);
+    }
+    try {
+      mResponseHeaders = response.headers;
+      T result = decode(response);
+      return Response.success(result, HttpHeaderParser.parseCacheHeaders(response));
+    } catch (UnsupportedEncodingException | JsonParseException e) {
+      return Response.error(new ParseError(e));
+    }
+  }
+
+  @Override
+  protected void deliverResponse(T response) {
+    if (mLeader == null && markOutcomeRecorded()) {
+      recordResponse();
+      CircuitBreaker.forUrl(getUrl()).onSuccess();
+    }
+    // The listener which stores the body saves the validators once it is stored
+    boolean pending = mValidatorStore != null && mResponseHeaders != null;
+    if (pending) {
+      mValidatorStore.setPending(getUrl(), mResponseHeaders);
+    }
+    if (!mCancelRequested) {
+      super.deliverResponse(response);
+    }
+    for (GsonRequest<T> follower : mFollowers) {
+      if (!follower.isCanceled()) {
+        follower.deliverResponse(response);
+      }
+    }
+    if (pending) {
+      // Nobody took them, the body was not stored
+      mValidatorStore.setPending(getUrl(), null);
+    }
+  }
+
+  @Override
+  public void deliverError(VolleyError error) {
+    if (mLeader == null && markOutcomeRecorded()) {
+      RequestMetrics.getInstance().recordError(mEndpoint, error instanceof TimeoutError);
+      if (CircuitBreaker.isHostFailure(mContext, error)) {
+        CircuitBreaker.forUrl(getUrl()).onFailure(SystemClock.elapsedRealtime());
+      } else if (error.networkResponse != null) {
+        // The host answered, it is healthy even if the request was refused
+        CircuitBreaker.forUrl(getUrl()).onSuccess();
+      }
+    }
+    if (!mCancelRequested) {
+      super.deliverError(error);
+    }
+    for (GsonRequest<T> follower : mFollowers) {
+      if (!follower.isCanceled()) {
+        follower.deliverError(error);
+      }
+    }
+  }
+
+  /**
+   * Cancel the request. While other callers are still attached to it the
+   * request keeps running for them and only this caller stops receiving the result.
+   */
+  @Override
+  public void cancel() {
+    mCancelRequested = true;
+    if (mLeader != null) {
+      super.cancel();
+      mLeader.onFollowerCancelled();
+    } else if (!hasActiveFollowers()) {
+      super.cancel();
+    }
+  }
+
+  /**
+   * @return  Key shared by requests which can be served by the same response,
+   *          or null if the request must not be coalesced
+   */
+  String getCoalescingKey() {
+    if (getMethod() != Method.GET) {
+      return null;
+    }
+    return getUrl() + " " + HttpHelper.getHeader(mHeaders, "Authorization");
+  }
+
+  /**
+   * Attach an identical request so that it receives the result of this one
+   * instead of being sent. Like {@link RequestHandle}, this should only be
+   * called from the main thread.
+   *
+   * @param follower  Request with the same coalescing key
+   * @return          True if attached, false if the follower has to be sent itself
+   */
+  @SuppressWarnings("unchecked")
+  boolean attach(GsonRequest<?> follower) {
+    if (isCanceled() || hasHadResponseDelivered() || follower.getClass() != getClass()
+        || !mType.equals(follower.mType) || (mValidatorStore != null && follower.mValidatorStore == null)) {
+      // A conditional response could be a 304 the follower has no local data for
+      return false;
+    }
+    if (follower.mPriority.compareTo(mPriority) < 0) {
+      // Queued requests cannot be moved up, send the more urgent one itself
+      return false;
+    }
+    follower.mLeader = this;
+    mFollowers.add((GsonRequest<T>) follower);
+    return true;
+  }
+
+  private void onFollowerCancelled() {
+    if (mCancelRequested && !hasActiveFollowers()) {
+      // Nobody is waiting for the response anymore
+      super.cancel();
+    }
+  }
+
+  private boolean hasActiveFollowers() {
+    for (GsonRequest<T> follower : mFollowers) {
+      if (!follower.isCanceled()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return  Result delivered when a conditional request was answered with 304 Not Modified
+   */
+  protected T notModified() {
+    return null;
+  }
+
+  /**
+   * Decode the response body into the type given to the constructor
+   *
+   * @param response  Network response
+   * @return          Decoded body
+   * @throws UnsupportedEncodingException
+   */
+  protected <R> R decode(NetworkResponse response) throws UnsupportedEncodingException {
+    mParseStartMs = SystemClock.elapsedRealtime();
+    mNetworkMs = response.networkTimeMs;
+    mBytes = response.data != null ? response.data.length : 0;
+    String charset = HttpHeaderParser.parseCharset(response.headers, PROTOCOL_CHARSET);
+    JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(response.data), charset));
+    R result = mGson.fromJson(reader, mType);
+    mParseMs = SystemClock.elapsedRealtime() - mParseStartMs;
+    return result;
+  }
+
+  /**
+   * Record that the caller gave up on the request at its deadline, unless its
+   * outcome has been recorded already. Should be called from the main thread.
+   *
+   * @return  True if the timeout was recorded
+   */
+  boolean recordTimeout() {
+    if (!markOutcomeRecorded()) {
+      return false;
+    }
+    RequestMetrics.getInstance().recordError(mEndpoint, true);
+    return true;
+  }
+
+  /**
+   * @return  True if no outcome was recorded before, the caller records it
+   */
+  private boolean markOutcomeRecorded() {
+    if (mOutcomeRecorded) {
+      return false;
+    }
+    mOutcomeRecorded = true;
+    return true;
+  }
+
+  private void recordResponse() {
+    long now = SystemClock.elapsedRealtime();
+    // Whatever happened before parsing that was not spent on the network was spent queued
+    long queueMs = Math.max(0, mParseStartMs - mQueuedAtMs - mNetworkMs);
+    RequestMetrics.getInstance().recordResponse(mEndpoint, queueMs, mNetworkMs, mParseMs, now - mQueuedAtMs, mBytes);
+  }
+
+}
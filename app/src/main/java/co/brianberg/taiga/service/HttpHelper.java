@@ -2,61 +2,187 @@ package co.brianberg.taiga.service;
 
 import android.content.Context;
 
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Request;
 import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonArrayRequest;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.RequestFuture;
+import com.google.gson.Gson;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.util.HashMap;
+import java.lang.reflect.Type;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Helper class for http requests
  */
 public abstract class HttpHelper {
 
-  private static final int REQUEST_TIMEOUT = 30;
+  /**
+   * Default request deadline in milliseconds
+   */
+  public static final int REQUEST_TIMEOUT_MS = 30000;
 
-  public static JSONObject requestJsonObject(Context context, int method, Map<String, String> headers, String url,
-                                             JSONObject params, Response.ErrorListener errorListener) {
-    RequestFuture<JSONObject> future = RequestFuture.newFuture();
-    final Map<String, String> reqHeaders = headers;
-    JsonObjectRequest request = new JsonObjectRequest(method, url, params, future, future) {
-      public Map<String, String> getHeaders() {
-        return reqHeaders != null ? reqHeaders : new HashMap<String, String>();
+  /**
+   * Send a request whose JSON response is decoded into the given type on
+   * the network thread
+   *
+   * @param context         Context
+   * @param method          Request method
+   * @param headers         Request headers, may be null
+   * @param url             Request URL
+   * @param params          JSON request body, may be null
+   * @param gson            Gson instance used to decode the response
+   * @param type            Type of the decoded response
+   * @param timeoutMs       Deadline in milliseconds
+   * @param listener        Response listener
+   * @param errorListener   Error listener
+   * @return                Handle which can be used to cancel the request
+   */
+  public static <T> RequestHandle request(Context context, int method, Map<String, String> headers, String url,
+                                          JSONObject params, Gson gson, Type type, int timeoutMs,
+                                          Response.Listener<T> listener, Response.ErrorListener errorListener) {
+    return request(context, method, headers, url, params, gson, type, null, RequestPriority.FOREGROUND,
+        BackoffPolicy.DEFAULT, timeoutMs, listener, errorListener);
+  }
+
+  /**
+   * Send a request whose JSON response is decoded into the given type on
+   * the network thread, optionally made conditional on the validators stored
+   * for its URL. A 304 Not Modified response is delivered as a null result
+   * and the validators of a successful response are left pending for the
+   * listener to save once it has stored the body, see {@link ValidatorStore#takePending}.
+   *
+   * Failed attempts are retried according to the backoff policy as long as
+   * the method is idempotent; other requests are sent once.
+   *
+   * @param context         Context
+   * @param method          Request method
+   * @param headers         Request headers, may be null
+   * @param url             Request URL
+   * @param params          JSON request body, may be null
+   * @param gson            Gson instance used to decode the response
+   * @param type            Type of the decoded response
+   * @param validators      Validator store, null for an unconditional request
+   * @param priority        Scheduling priority
+   * @param backoffPolicy   Retry policy of idempotent requests
+   * @param timeoutMs       Deadline in milliseconds
+   * @param listener        Response listener
+   * @param errorListener   Error listener
+   * @return                Handle which can be used to cancel the request
+   */
+  public static <T> RequestHandle request(final Context context, final int method, final Map<String, String> headers,
+                                          final String url, JSONObject params, final Gson gson, final Type type,
+                                          final ValidatorStore validators, final RequestPriority priority,
+                                          BackoffPolicy backoffPolicy, int timeoutMs, Response.Listener<T> listener,
+                                          Response.ErrorListener errorListener) {
+    RequestHandle handle = new RequestHandle(errorListener);
+    final String body = params != null ? params.toString() : null;
+    final Response.Listener<T> guardedListener = handle.guard(listener);
+    final Response.ErrorListener guardedErrorListener = handle.guardError();
+    RequestHandle.RequestFactory factory = new RequestHandle.RequestFactory() {
+      @Override
+      public Request<?> create() {
+        GsonRequest<T> request = new GsonRequest<>(context, method, url, headers, body, gson, type,
+            guardedListener, guardedErrorListener);
+        if (validators != null) {
+          request.setConditional(validators);
+        }
+        request.setPriority(priority);
+        return request;
       }
     };
-    RequestManager.getInstance(context).addToRequestQueue(request);
-    try {
-      return future.get(REQUEST_TIMEOUT, TimeUnit.SECONDS);
-    } catch (Exception e) {
-      errorListener.onErrorResponse(new VolleyError(e));
-    }
-    return null;
+    handle.start(context, factory, isIdempotent(method) ? backoffPolicy : BackoffPolicy.NONE, url, timeoutMs);
+    return handle;
   }
 
-  public static JSONArray requestJsonArray(Context context, int method, Map<String, String> headers, String url,
-                                           JSONObject params, Response.ErrorListener errorListener) {
-    RequestFuture<JSONArray> future = RequestFuture.newFuture();
-    final Map<String, String> reqHeaders = headers;
-    JsonArrayRequest request = new JsonArrayRequest(method, url, params, future, future) {
-      public Map<String, String> getHeaders() {
-        return reqHeaders != null ? reqHeaders : new HashMap<String, String>();
+  /**
+   * Send a request for one page of a paginated list endpoint
+   *
+   * @param context         Context
+   * @param headers         Request headers, may be null
+   * @param url             Request URL including the page query parameter
+   * @param gson            Gson instance used to decode the items
+   * @param listType        Type of a list of items
+   * @param number          Requested page number
+   * @param priority        Scheduling priority
+   * @param timeoutMs       Deadline in milliseconds
+   * @param listener        Page listener
+   * @param errorListener   Error listener
+   * @return                Handle which can be used to cancel the request
+   */
+  public static <T> RequestHandle requestPage(final Context context, final Map<String, String> headers, final String url,
+                                              final Gson gson, final Type listType, final int number,
+                                              final RequestPriority priority, int timeoutMs,
+                                              Response.Listener<Page<T>> listener,
+                                              Response.ErrorListener errorListener) {
+    RequestHandle handle = new RequestHandle(errorListener);
+    final Response.Listener<Page<T>> guardedListener = handle.guard(listener);
+    final Response.ErrorListener guardedErrorListener = handle.guardError();
+    RequestHandle.RequestFactory factory = new RequestHandle.RequestFactory() {
+      @Override
+      public Request<?> create() {
+        PageRequest<T> request = new PageRequest<>(context, url, headers, gson, listType, number,
+            guardedListener, guardedErrorListener);
+        request.setPriority(priority);
+        return request;
       }
     };
-    RequestManager.getInstance(context).addToRequestQueue(request);
-    try {
-      return future.get(REQUEST_TIMEOUT, TimeUnit.SECONDS);
-    } catch (Exception e) {
-      errorListener.onErrorResponse(new VolleyError(e));
+    handle.start(context, factory, BackoffPolicy.DEFAULT, url, timeoutMs);
+    return handle;
+  }
+
+  /**
+   * Get a response header value ignoring the case of its name
+   *
+   * @param headers   Response headers
+   * @param name      Header name
+   * @return          Header value or null
+   */
+  public static String getHeader(Map<String, String> headers, String name) {
+    if (headers == null) {
+      return null;
+    }
+    String value = headers.get(name);
+    if (value != null) {
+      return value;
+    }
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey())) {
+        return header.getValue();
+      }
     }
     return null;
   }
 
-  
+  /**
+   * Add a single attempt of a request to the queue without blocking the calling thread
+   *
+   * @param context     Context
+   * @param request     Request to be executed
+   * @param timeoutMs   Timeout of the attempt in milliseconds
+   */
+  static void send(Context context, Request<?> request, int timeoutMs) {
+    // Retries are made by the handle, never let Volley retry or the socket outlive the attempt
+    request.setRetryPolicy(new DefaultRetryPolicy(timeoutMs, 0, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+    RequestManager.getInstance(context).addToRequestQueue(request);
+  }
+
+  /**
+   * @param method  Request method
+   * @return        True if sending the request more than once has the same effect as sending it once
+   */
+  private static boolean isIdempotent(int method) {
+    switch (method) {
+      case Request.Method.GET:
+      case Request.Method.HEAD:
+      case Request.Method.OPTIONS:
+      case Request.Method.PUT:
+      case Request.Method.DELETE:
+      case Request.Method.TRACE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
 }
@@ -0,0 +1,109 @@
+package co.brianberg.taiga.service;
+
+/**
+ * Histogram of latencies in milliseconds over fixed, roughly logarithmic
+ * buckets. Recording is constant time and memory does not grow with the
+ * number of samples.
+ */
+public class LatencyHistogram {
+
+  /**
+   * Inclusive upper bound of each bucket in milliseconds, the last bucket is unbounded
+   */
+  private static final long[] BOUNDS = {
+      10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, Long.MAX_VALUE
+  };
+
+  private final long[] mCounts;
+
+  private long mCount;
+
+  private long mSum;
+
+  private long mMax;
+
+  public LatencyHistogram() {
+    mCounts = new long[BOUNDS.length];
+  }
+
+  /**
+   * Copy a histogram
+   *
+   * @param other   Histogram to be copied
+   */
+  public LatencyHistogram(LatencyHistogram other) {
+    mCounts = other.mCounts.clone();
+    mCount = other.mCount;
+    mSum = other.mSum;
+    mMax = other.mMax;
+  }
+
+  /**
+   * Record a sample
+   *
+   * @param ms  Latency in milliseconds, negative values are recorded as 0
+   */
+  public void record(long ms) {
+    if (ms < 0) {
+      ms = 0;
+    }
+    int i = 0;
+    while (ms > BOUNDS[i]) {
+      i++;
+    }
+    mCounts[i]++;
+    mCount++;
+    mSum += ms;
+    mMax = Math.max(mMax, ms);
+  }
+
+  /**
+   * @return  Number of samples
+   */
+  public long getCount() {
+    return mCount;
+  }
+
+  /**
+   * @return  Mean latency in milliseconds, or 0 if there are no samples
+   */
+  public long getMean() {
+    return mCount > 0 ? mSum / mCount : 0;
+  }
+
+  /**
+   * @return  Largest latency recorded in milliseconds
+   */
+  public long getMax() {
+    return mMax;
+  }
+
+  /**
+   * Estimate a percentile as the upper bound of the bucket it falls in,
+   * capped at the largest recorded latency
+   *
+   * @param percentile  Percentile between 0 and 100
+   * @return            Latency in milliseconds, or 0 if there are no samples
+   */
+  public long getPercentile(double percentile) {
+    if (mCount == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile / 100 * mCount);
+    long seen = 0;
+    for (int i = 0; i < mCounts.length; i++) {
+      seen += mCounts[i];
+      if (seen >= rank && mCounts[i] > 0) {
+        return Math.min(BOUNDS[i], mMax);
+      }
+    }
+    return mMax;
+  }
+
+  @Override
+  public String toString() {
+    return "n=" + mCount + " mean=" + getMean() + "ms p50=" + getPercentile(50) + "ms p90=" + getPercentile(90)
+        + "ms p99=" + getPercentile(99) + "ms max=" + mMax + "ms";
+  }
+
+}
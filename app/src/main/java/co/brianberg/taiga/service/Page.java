@@ -0,0 +1,94 @@
+package co.brianberg.taiga.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single page of a paginated Taiga API response
+ */
+public class Page<T> {
+
+  // Taiga pagination response headers
+  static final String HEADER_PAGINATED = "x-paginated";
+  static final String HEADER_PAGINATED_BY = "x-paginated-by";
+  static final String HEADER_COUNT = "x-pagination-count";
+  static final String HEADER_CURRENT = "x-pagination-current";
+  static final String HEADER_NEXT = "x-pagination-next";
+
+  private final List<T> items;
+
+  private final int number;
+
+  private final int pageSize;
+
+  private final int totalCount;
+
+  private final boolean hasNext;
+
+  public Page(List<T> items, int number, int pageSize, int totalCount, boolean hasNext) {
+    this.items = items;
+    this.number = number;
+    this.pageSize = pageSize;
+    this.totalCount = totalCount;
+    this.hasNext = hasNext;
+  }
+
+  /**
+   * Build a page from the response items and Taiga's pagination headers
+   *
+   * @param items     Items of the page
+   * @param headers   Response headers
+   * @param number    Requested page number, used if the response does not provide one
+   * @return          Page
+   */
+  static <T> Page<T> fromHeaders(List<T> items, Map<String, String> headers, int number) {
+    if (!"true".equalsIgnoreCase(HttpHelper.getHeader(headers, HEADER_PAGINATED))) {
+      // The whole collection was returned at once
+      return new Page<>(items, number, items.size(), items.size(), false);
+    }
+    int current = parseInt(HttpHelper.getHeader(headers, HEADER_CURRENT), number);
+    int pageSize = parseInt(HttpHelper.getHeader(headers, HEADER_PAGINATED_BY), items.size());
+    int totalCount = parseInt(HttpHelper.getHeader(headers, HEADER_COUNT), -1);
+    String next = HttpHelper.getHeader(headers, HEADER_NEXT);
+    boolean hasNext = next != null && !next.isEmpty() && !items.isEmpty();
+    return new Page<>(items, current, pageSize, totalCount, hasNext);
+  }
+
+  private static int parseInt(String value, int defaultValue) {
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  public List<T> getItems() {
+    return items;
+  }
+
+  /**
+   * @return  One-based page number
+   */
+  public int getNumber() {
+    return number;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * @return  Total number of items across all pages, or -1 if unknown
+   */
+  public int getTotalCount() {
+    return totalCount;
+  }
+
+  public boolean hasNext() {
+    return hasNext;
+  }
+
+}
@@ -0,0 +1,131 @@
+package co.brianberg.taiga.service;
+
+import android.content.Context;
+
+import com.android.volley.Response;
+import com.google.gson.Gson;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Iterates over the pages of a paginated Taiga list endpoint, fetching one
+ * page per call to {@link #next}.
+ *
+ * Like {@link RequestHandle}, the iterator should only be used from the main thread.
+ */
+public class PageIterator<T> {
+
+  private final Context mContext;
+
+  private final String mUrl;
+
+  private final Map<String, String> mHeaders;
+
+  private final Gson mGson;
+
+  private final Type mListType;
+
+  private int mNextPage = 1;
+
+  private boolean mHasNext = true;
+
+  private RequestHandle mPending;
+
+  private RequestPriority mPriority;
+
+  /**
+   * @param context     Context
+   * @param url         Endpoint URL without the page parameter
+   * @param headers     Request headers
+   * @param gson        Gson instance used to decode items
+   * @param listType    Type of a list of items
+   * @param priority    Scheduling priority of the page requests
+   */
+  PageIterator(Context context, String url, Map<String, String> headers, Gson gson, Type listType,
+               RequestPriority priority) {
+    mContext = context.getApplicationContext();
+    mUrl = url;
+    mHeaders = headers;
+    mGson = gson;
+    mListType = listType;
+    mPriority = priority;
+  }
+
+  /**
+   * Set the scheduling priority of the following page requests
+   *
+   * @param priority  Request priority
+   */
+  public void setPriority(RequestPriority priority) {
+    mPriority = priority;
+  }
+
+  /**
+   * @return  True if there may be further pages to fetch
+   */
+  public boolean hasNext() {
+    return mHasNext;
+  }
+
+  /**
+   * @return  True if a page is currently being fetched
+   */
+  public boolean isLoading() {
+    return mPending != null && !mPending.isDone();
+  }
+
+  /**
+   * @return  Number of the page the next call to {@link #next} will fetch
+   */
+  public int getNextPageNumber() {
+    return mNextPage;
+  }
+
+  /**
+   * Continue the iteration from another page
+   *
+   * @param page  Number of the page the next call to {@link #next} will fetch
+   */
+  public void setNextPageNumber(int page) {
+    mNextPage = page;
+    mHasNext = true;
+  }
+
+  /**
+   * Fetch the next page. The iterator only advances once the page has been received.
+   *
+   * @param listener        Page listener
+   * @param errorListener   Error listener
+   * @return                Handle for the page request, or null if a page is already loading
+   *                        or there are no more pages
+   */
+  public RequestHandle next(final Response.Listener<Page<T>> listener, Response.ErrorListener errorListener) {
+    if (!mHasNext || isLoading()) {
+      return null;
+    }
+    String separator = mUrl.contains("?") ? "&" : "?";
+    String url = mUrl + separator + "page=" + mNextPage;
+    mPending = HttpHelper.requestPage(mContext, mHeaders, url, mGson, mListType, mNextPage, mPriority,
+        HttpHelper.REQUEST_TIMEOUT_MS, new Response.Listener<Page<T>>() {
+          @Override
+          public void onResponse(Page<T> page) {
+            mNextPage = page.getNumber() + 1;
+            mHasNext = page.hasNext();
+            listener.onResponse(page);
+          }
+        }, errorListener);
+    return mPending;
+  }
+
+  /**
+   * Cancel the page currently being fetched, if any
+   */
+  public void cancel() {
+    if (mPending != null) {
+      mPending.cancel();
+      mPending = null;
+    }
+  }
+
+}
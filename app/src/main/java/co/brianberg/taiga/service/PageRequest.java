@@ -0,0 +1,56 @@
+package co.brianberg.taiga.service;
+
+import android.content.Context;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request for one page of a paginated list endpoint. The body is decoded as
+ * a list of items and combined with Taiga's pagination headers.
+ */
+public class PageRequest<T> extends GsonRequest<Page<T>> {
+
+  private final int mNumber;
+
+  /**
+   * @param context         Context
+   * @param url             Request URL including the page query parameter
+   * @param headers         Request headers, may be null
+   * @param gson            Gson instance used to decode the response
+   * @param listType        Type of the list of items
+   * @param number          Requested page number
+   * @param listener        Response listener
+   * @param errorListener   Error listener
+   */
+  public PageRequest(Context context, String url, Map<String, String> headers, Gson gson, Type listType, int number,
+                     Response.Listener<Page<T>> listener, Response.ErrorListener errorListener) {
+    super(context, Method.GET, url, headers, null, gson, listType, listener, errorListener);
+    mNumber = number;
+  }
+
+  @Override
+  protected Response<Page<T>> parseNetworkResponse(NetworkResponse response) {
+    try {
+      List<T> items = decode(response);
+      if (items == null) {
+        items = new ArrayList<>();
+      }
+      Page<T> page = Page.fromHeaders(items, response.headers, mNumber);
+      return Response.success(page, HttpHeaderParser.parseCacheHeaders(response));
+    } catch (UnsupportedEncodingException | JsonParseException e) {
+      return Response.error(new ParseError(e));
+    }
+  }
+
+}
@@ -0,0 +1,204 @@
+package co.brianberg.taiga.service;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import java.util.Random;
+
+/**
+ * Handle for an in-flight request which delivers the result to the caller's
+ * listeners at most once and allows the request to be cancelled or to expire
+ * after a deadline.
+ *
+ * Failed attempts are retried according to a {@link BackoffPolicy} within the
+ * deadline. Waiting between attempts happens on the main thread so no
+ * dispatcher is held up, and attempts are not sent while the circuit of the
+ * host is open, see {@link CircuitBreaker}.
+ *
+ * All callbacks are delivered on the main thread, and cancel() should be
+ * called from the main thread as well.
+ */
+public class RequestHandle {
+
+  /**
+   * Creates a fresh request for each attempt
+   */
+  interface RequestFactory {
+    Request<?> create();
+  }
+
+  private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+  private static final Random sRandom = new Random();
+
+  private final Response.ErrorListener mErrorListener;
+
+  private final Runnable mDeadline = new Runnable() {
+    @Override
+    public void run() {
+      if (!mDone) {
+        finish();
+        if (mRequest != null) {
+          mRequest.cancel();
+          // A request kept running for its followers does not record its response again
+          if (!(mRequest instanceof GsonRequest) || ((GsonRequest<?>) mRequest).recordTimeout()) {
+            mCircuitBreaker.onFailure(SystemClock.elapsedRealtime());
+          }
+        }
+        mErrorListener.onErrorResponse(new TimeoutError());
+      }
+    }
+  };
+
+  private final Runnable mRetry = new Runnable() {
+    @Override
+    public void run() {
+      sendAttempt();
+    }
+  };
+
+  private Context mContext;
+
+  private RequestFactory mFactory;
+
+  private BackoffPolicy mBackoffPolicy;
+
+  private String mUrl;
+
+  private CircuitBreaker mCircuitBreaker;
+
+  private long mDeadlineAt;
+
+  private int mAttempts;
+
+  /**
+   * Request of the attempt in flight, null while waiting to retry
+   */
+  private Request<?> mRequest;
+
+  private boolean mDone;
+
+  RequestHandle(Response.ErrorListener errorListener) {
+    mErrorListener = errorListener;
+  }
+
+  /**
+   * Send the first attempt and start the deadline timer
+   *
+   * @param context         Context
+   * @param factory         Request factory
+   * @param backoffPolicy   Retry policy
+   * @param url             Request URL, used to find the circuit breaker of the host
+   * @param timeoutMs       Deadline in milliseconds from now
+   */
+  void start(Context context, RequestFactory factory, BackoffPolicy backoffPolicy, String url, int timeoutMs) {
+    mContext = context.getApplicationContext();
+    mFactory = factory;
+    mBackoffPolicy = backoffPolicy;
+    mUrl = url;
+    mCircuitBreaker = CircuitBreaker.forUrl(url);
+    mDeadlineAt = SystemClock.elapsedRealtime() + timeoutMs;
+    sMainHandler.postDelayed(mDeadline, timeoutMs);
+    sendAttempt();
+  }
+
+  /**
+   * Cancel the request, no listener will be called afterwards
+   */
+  public void cancel() {
+    finish();
+    if (mRequest != null) {
+      mRequest.cancel();
+    }
+  }
+
+  /**
+   * @return  True if the request was cancelled, timed out or has completed
+   */
+  public boolean isDone() {
+    return mDone;
+  }
+
+  /**
+   * Wrap a response listener so it is only called while the handle is active
+   *
+   * @param listener  Caller's response listener
+   * @return          Guarded response listener
+   */
+  <T> Response.Listener<T> guard(final Response.Listener<T> listener) {
+    return new Response.Listener<T>() {
+      @Override
+      public void onResponse(T response) {
+        if (!mDone) {
+          finish();
+          listener.onResponse(response);
+        }
+      }
+    };
+  }
+
+  /**
+   * Wrap the caller's error listener so it is only called while the handle is
+   * active, and only once no further attempt will be made
+   *
+   * @return  Guarded error listener
+   */
+  Response.ErrorListener guardError() {
+    return new Response.ErrorListener() {
+      @Override
+      public void onErrorResponse(VolleyError error) {
+        if (mDone) {
+          return;
+        }
+        mRequest = null;
+        long now = SystemClock.elapsedRealtime();
+        long backoff = mBackoffPolicy.getBackoffMs(mAttempts, sRandom);
+        if (mAttempts < mBackoffPolicy.getMaxAttempts() && CircuitBreaker.isHostFailure(mContext, error)
+            && now + backoff < mDeadlineAt) {
+          sMainHandler.postDelayed(mRetry, backoff);
+        } else {
+          finish();
+          mErrorListener.onErrorResponse(error);
+        }
+      }
+    };
+  }
+
+  private void sendAttempt() {
+    if (mDone) {
+      return;
+    }
+    long now = SystemClock.elapsedRealtime();
+    if (!mCircuitBreaker.allowRequest(now)) {
+      // Fail asynchronously like any other request
+      sMainHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          if (!mDone) {
+            finish();
+            mErrorListener.onErrorResponse(new CircuitOpenError(mUrl));
+          }
+        }
+      });
+      return;
+    }
+    mRequest = mFactory.create();
+    mAttempts++;
+    int attemptTimeoutMs = (int) Math.max(1, Math.min(mBackoffPolicy.getAttemptTimeoutMs(), mDeadlineAt - now));
+    HttpHelper.send(mContext, mRequest, attemptTimeoutMs);
+  }
+
+  private void finish() {
+    mDone = true;
+    sMainHandler.removeCallbacks(mDeadline);
+    sMainHandler.removeCallbacks(mRetry);
+  }
+
+}
@@ -2,21 +2,72 @@ package co.brianberg.taiga.service;
 
 import android.content.Context;
 
+import com.android.volley.Cache;
+import com.android.volley.Network;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HurlStack;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
- * Request service for managing a volley request queue
+ * Request service for managing the volley request queues.
+ *
+ * API requests and background bulk requests are dispatched from separate,
+ * bounded thread pools so that background traffic cannot occupy every
+ * dispatcher. Within a pool requests are taken in priority order, see
+ * {@link RequestPriority}.
+ *
+ * Identical GET requests are coalesced: while one is in flight, requests
+ * with the same method, URL and credentials are attached to it and receive
+ * its parsed result instead of being sent again.
  */
 public class RequestManager {
 
+  private static final String CACHE_DIR = "volley";
+
+  /**
+   * Number of dispatchers serving foreground and prefetch requests
+   */
+  private static final int API_POOL_SIZE = 4;
+
+  /**
+   * Number of dispatchers serving background requests
+   */
+  private static final int BULK_POOL_SIZE = 2;
+
   private static RequestManager mInstance;
 
   private RequestQueue mRequestQueue;
 
+  private RequestQueue mBulkRequestQueue;
+
+  /**
+   * In-flight requests by coalescing key
+   */
+  private final Map<String, GsonRequest<?>> mInFlight = new HashMap<>();
+
   private RequestManager(Context context) {
-    mRequestQueue = Volley.newRequestQueue(context.getApplicationContext());
+    Cache cache = new DiskBasedCache(new File(context.getApplicationContext().getCacheDir(), CACHE_DIR));
+    Network network = new BasicNetwork(new HurlStack());
+    RequestQueue.RequestFinishedListener<Object> finishedListener = new RequestQueue.RequestFinishedListener<Object>() {
+      @Override
+      public void onRequestFinished(Request<Object> request) {
+        if (request instanceof GsonRequest) {
+          removeInFlight((GsonRequest<?>) request);
+        }
+      }
+    };
+    mRequestQueue = new RequestQueue(cache, network, API_POOL_SIZE);
+    mRequestQueue.addRequestFinishedListener(finishedListener);
+    mRequestQueue.start();
+    mBulkRequestQueue = new RequestQueue(cache, network, BULK_POOL_SIZE);
+    mBulkRequestQueue.addRequestFinishedListener(finishedListener);
+    mBulkRequestQueue.start();
   }
 
   public static synchronized RequestManager getInstance(Context context) {
@@ -27,7 +78,49 @@ public class RequestManager {
   }
 
   public <T> void addToRequestQueue(Request<T> request) {
-    mRequestQueue.add(request);
+    if (request instanceof GsonRequest && attachToInFlight((GsonRequest<?>) request)) {
+      return;
+    }
+    // Background requests, and any other request queued with a low priority, go to the bulk pool
+    if (request.getPriority() == Request.Priority.LOW) {
+      mBulkRequestQueue.add(request);
+    } else {
+      mRequestQueue.add(request);
+    }
+  }
+
+  /**
+   * Attach a request to an identical one in flight, or register it as in flight
+   *
+   * @param request   Request about to be sent
+   * @return          True if attached, in which case the request must not be sent
+   */
+  private boolean attachToInFlight(GsonRequest<?> request) {
+    String key = request.getCoalescingKey();
+    if (key == null) {
+      return false;
+    }
+    synchronized (mInFlight) {
+      GsonRequest<?> leader = mInFlight.get(key);
+      if (leader != null && leader.attach(request)) {
+        return true;
+      }
+      mInFlight.put(key, request);
+      return false;
+    }
+  }
+
+  private void removeInFlight(GsonRequest<?> request) {
+    String key = request.getCoalescingKey();
+    if (key == null) {
+      return;
+    }
+    // Finished requests are reported from both the main and network threads
+    synchronized (mInFlight) {
+      if (mInFlight.get(key) == request) {
+        mInFlight.remove(key);
+      }
+    }
   }
 
 }
@@ -0,0 +1,313 @@
+package co.brianberg.taiga.service;
+
+import com.android.volley.Request;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-process record of request latency, payload size, parse time and errors
+ * per endpoint. Requests sent through {@link HttpHelper} are recorded
+ * automatically, once per network response however many callers were
+ * attached to the request.
+ *
+ * Endpoints are identified by method and path with numeric path segments
+ * replaced by {id}, e.g. "GET /timeline/project/{id}". Debug builds write
+ * a report from the project list menu.
+ */
+public class RequestMetrics {
+
+  private static RequestMetrics sInstance;
+
+  private final Map<String, EndpointStats> mStats = new TreeMap<>();
+
+  RequestMetrics() {}
+
+  public static synchronized RequestMetrics getInstance() {
+    if (sInstance == null) {
+      sInstance = new RequestMetrics();
+    }
+    return sInstance;
+  }
+
+  /**
+   * Get the endpoint a request URL belongs to
+   *
+   * @param method  Request method
+   * @param url     Request URL
+   * @return        Endpoint name
+   */
+  public static String endpointOf(int method, String url) {
+    String path = url;
+    int query = path.indexOf('?');
+    if (query >= 0) {
+      path = path.substring(0, query);
+    }
+    if (path.startsWith(Taiga.BASE_URL)) {
+      path = path.substring(Taiga.BASE_URL.length());
+    } else {
+      int scheme = path.indexOf("://");
+      if (scheme >= 0) {
+        int slash = path.indexOf('/', scheme + 3);
+        path = slash >= 0 ? path.substring(slash) : "/";
+      }
+    }
+    StringBuilder endpoint = new StringBuilder(methodName(method)).append(' ');
+    for (String segment : path.split("/")) {
+      if (segment.isEmpty()) {
+        continue;
+      }
+      endpoint.append('/').append(isNumber(segment) ? "{id}" : segment);
+    }
+    if (endpoint.charAt(endpoint.length() - 1) == ' ') {
+      endpoint.append('/');
+    }
+    return endpoint.toString();
+  }
+
+  /**
+   * Record a response
+   *
+   * @param endpoint    Endpoint name
+   * @param queueMs     Time spent waiting for a dispatcher
+   * @param networkMs   Time spent on the network
+   * @param parseMs     Time spent decoding the body
+   * @param totalMs     Time from queueing to delivery
+   * @param bytes       Size of the response body
+   */
+  public synchronized void recordResponse(String endpoint, long queueMs, long networkMs, long parseMs, long totalMs,
+                                          int bytes) {
+    EndpointStats stats = getOrCreate(endpoint);
+    stats.responseCount++;
+    stats.totalBytes += bytes;
+    stats.maxBytes = Math.max(stats.maxBytes, bytes);
+    stats.queueMs += queueMs;
+    stats.networkMs += networkMs;
+    stats.parseMs += parseMs;
+    stats.latency.record(totalMs);
+  }
+
+  /**
+   * Record a failed request
+   *
+   * @param endpoint  Endpoint name
+   * @param timeout   True if the request failed because its deadline expired
+   */
+  public synchronized void recordError(String endpoint, boolean timeout) {
+    EndpointStats stats = getOrCreate(endpoint);
+    stats.errorCount++;
+    if (timeout) {
+      stats.timeoutCount++;
+    }
+  }
+
+  /**
+   * @return  Copy of the statistics of every endpoint, ordered by endpoint name
+   */
+  public synchronized List<EndpointStats> getStats() {
+    List<EndpointStats> stats = new ArrayList<>(mStats.size());
+    for (EndpointStats s : mStats.values()) {
+      stats.add(new EndpointStats(s));
+    }
+    return stats;
+  }
+
+  /**
+   * @param endpoint  Endpoint name
+   * @return          Copy of the statistics of the endpoint, or null if nothing was recorded
+   */
+  public synchronized EndpointStats getStats(String endpoint) {
+    EndpointStats stats = mStats.get(endpoint);
+    return stats != null ? new EndpointStats(stats) : null;
+  }
+
+  /**
+   * Forget everything recorded so far
+   */
+  public synchronized void reset() {
+    mStats.clear();
+  }
+
+  /**
+   * Write a plain text report of every endpoint
+   *
+   * @param writer  Writer, not closed
+   */
+  public void dump(Writer writer) {
+    PrintWriter out = new PrintWriter(writer);
+    for (EndpointStats stats : getStats()) {
+      out.println(stats);
+    }
+    out.flush();
+  }
+
+  /**
+   * Write a plain text report of every endpoint to a file, replacing its contents
+   *
+   * @param file  Report file
+   * @throws IOException
+   */
+  public void dump(File file) throws IOException {
+    Writer writer = new FileWriter(file);
+    try {
+      dump(writer);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private EndpointStats getOrCreate(String endpoint) {
+    EndpointStats stats = mStats.get(endpoint);
+    if (stats == null) {
+      stats = new EndpointStats(endpoint);
+      mStats.put(endpoint, stats);
+    }
+    return stats;
+  }
+
+  private static boolean isNumber(String segment) {
+    for (int i = 0; i < segment.length(); i++) {
+      if (!Character.isDigit(segment.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String methodName(int method) {
+    switch (method) {
+      case Request.Method.GET:
+        return "GET";
+      case Request.Method.POST:
+        return "POST";
+      case Request.Method.PUT:
+        return "PUT";
+      case Request.Method.DELETE:
+        return "DELETE";
+      case Request.Method.HEAD:
+        return "HEAD";
+      case Request.Method.OPTIONS:
+        return "OPTIONS";
+      case Request.Method.TRACE:
+        return "TRACE";
+      case Request.Method.PATCH:
+        return "PATCH";
+      default:
+        return "GET_OR_POST";
+    }
+  }
+
+  /**
+   * Statistics of a single endpoint
+   */
+  public static class EndpointStats {
+
+    private final String endpoint;
+
+    private long responseCount;
+
+    private long errorCount;
+
+    private long timeoutCount;
+
+    private long totalBytes;
+
+    private int maxBytes;
+
+    private long queueMs;
+
+    private long networkMs;
+
+    private long parseMs;
+
+    private final LatencyHistogram latency;
+
+    EndpointStats(String endpoint) {
+      this.endpoint = endpoint;
+      this.latency = new LatencyHistogram();
+    }
+
+    EndpointStats(EndpointStats other) {
+      this.endpoint = other.endpoint;
+      this.responseCount = other.responseCount;
+      this.errorCount = other.errorCount;
+      this.timeoutCount = other.timeoutCount;
+      this.totalBytes = other.totalBytes;
+      this.maxBytes = other.maxBytes;
+      this.queueMs = other.queueMs;
+      this.networkMs = other.networkMs;
+      this.parseMs = other.parseMs;
+      this.latency = new LatencyHistogram(other.latency);
+    }
+
+    public String getEndpoint() {
+      return endpoint;
+    }
+
+    /**
+     * @return  Number of responses received, including 304 Not Modified
+     */
+    public long getResponseCount() {
+      return responseCount;
+    }
+
+    /**
+     * @return  Number of failed requests, including timeouts
+     */
+    public long getErrorCount() {
+      return errorCount;
+    }
+
+    public long getTimeoutCount() {
+      return timeoutCount;
+    }
+
+    public long getTotalBytes() {
+      return totalBytes;
+    }
+
+    public int getMaxBytes() {
+      return maxBytes;
+    }
+
+    public long getMeanBytes() {
+      return responseCount > 0 ? totalBytes / responseCount : 0;
+    }
+
+    public long getMeanQueueMs() {
+      return responseCount > 0 ? queueMs / responseCount : 0;
+    }
+
+    public long getMeanNetworkMs() {
+      return responseCount > 0 ? networkMs / responseCount : 0;
+    }
+
+    public long getMeanParseMs() {
+      return responseCount > 0 ? parseMs / responseCount : 0;
+    }
+
+    /**
+     * @return  Histogram of the time from queueing to delivery
+     */
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    @Override
+    public String toString() {
+      return endpoint + ": responses=" + responseCount + " errors=" + errorCount + " timeouts=" + timeoutCount
+          + " bytes(mean=" + getMeanBytes() + " max=" + maxBytes + ")"
+          + " queue=" + getMeanQueueMs() + "ms network=" + getMeanNetworkMs() + "ms parse=" + getMeanParseMs() + "ms"
+          + " latency(" + latency + ")";
+    }
+
+  }
+
+}
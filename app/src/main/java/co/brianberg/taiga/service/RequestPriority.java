@@ -0,0 +1,40 @@
+package co.brianberg.taiga.service;
+
+import com.android.volley.Request;
+
+/**
+ * Scheduling priority of a request. Higher priority requests are taken off
+ * the queue first, and background requests run on their own smaller pool
+ * so that they never hold up the API dispatchers.
+ */
+public enum RequestPriority {
+
+  /**
+   * Data for the screen the user is looking at
+   */
+  FOREGROUND(Request.Priority.HIGH),
+
+  /**
+   * Data which is about to become visible, e.g. the next page of a list
+   */
+  PREFETCH(Request.Priority.NORMAL),
+
+  /**
+   * Sync and maintenance work nobody is waiting for
+   */
+  BACKGROUND(Request.Priority.LOW);
+
+  private final Request.Priority mVolleyPriority;
+
+  RequestPriority(Request.Priority volleyPriority) {
+    mVolleyPriority = volleyPriority;
+  }
+
+  /**
+   * @return  Priority used by the Volley request queue
+   */
+  public Request.Priority getVolleyPriority() {
+    return mVolleyPriority;
+  }
+
+}
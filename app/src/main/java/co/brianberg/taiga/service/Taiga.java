@@ -1,28 +1,30 @@
 package co.brianberg.taiga.service;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
+import android.database.sqlite.SQLiteException;
 import android.util.Log;
 
 import com.android.volley.Request;
 import com.android.volley.Response;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.android.volley.VolleyError;
+import com.google.gson.reflect.TypeToken;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.lang.reflect.Type;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 
+import co.brianberg.taiga.auth.Session;
 import co.brianberg.taiga.auth.User;
+import co.brianberg.taiga.db.DatabaseWriter;
 import co.brianberg.taiga.db.project.Project;
+import co.brianberg.taiga.db.project.ProjectManager;
 import co.brianberg.taiga.db.timeline.TimelineEntry;
+import co.brianberg.taiga.db.timeline.TimelineEntryManager;
+import co.brianberg.taiga.json.JsonCodec;
 
 /**
  * Service for interacting with the Taiga API
@@ -33,57 +35,173 @@ public abstract class Taiga {
 
   public static final String BASE_URL = "https://api.taiga.io/api/v1";
 
-  public static final String DATE_FORMAT = "yyyy-MM-dd'T'hh:mm:ssZ";
+  private static final Type PROJECT_LIST_TYPE = new TypeToken<List<Project>>() {}.getType();
 
-  public static User signIn(Context context, String username, String password, Response.ErrorListener errorListener) {
+  private static final Type TIMELINE_TYPE = new TypeToken<List<TimelineEntry>>() {}.getType();
+
+  public static RequestHandle signIn(Context context, String username, String password,
+                                     Response.Listener<User> listener, Response.ErrorListener errorListener) {
     String url = getAbsoluteUrl("/auth");
+    JSONObject data = new JSONObject();
     try {
-      JSONObject data = new JSONObject();
       data.put("type", "normal");
       data.put("username", username);
       data.put("password", password);
-      JSONObject response = HttpHelper.requestJsonObject(context, Request.Method.POST, null, url, data, errorListener);
-      if (response != null) {
-        return new Gson().fromJson(response.toString(), User.class);
-      }
     } catch (JSONException e) {
       Log.e(TAG, "Error building sign in request data");
+      errorListener.onErrorResponse(new VolleyError(e));
+      return null;
     }
-    return null;
+    return HttpHelper.request(context, Request.Method.POST, null, url, data, JsonCodec.getGson(), User.class,
+        HttpHelper.REQUEST_TIMEOUT_MS, listener, errorListener);
   }
 
-  public static List<Project> getProjectList(Context context, int memberId, Response.ErrorListener errorListener) {
+  /**
+   * Get the projects of a member. The list is stored in the local database and
+   * served from it when the server reports that it has not changed.
+   *
+   * @param context         Context
+   * @param memberId        Member ID
+   * @param listener        Response listener
+   * @param errorListener   Error listener
+   * @return                Handle which can be used to cancel the request
+   */
+  public static RequestHandle getProjectList(Context context, final int memberId,
+                                             Response.Listener<List<Project>> listener,
+                                             Response.ErrorListener errorListener) {
     String url = getAbsoluteUrl("/projects?member=" + memberId);
     Map<String, String> headers = getRequestHeaders(context);
-    JSONArray response = HttpHelper.requestJsonArray(context, Request.Method.GET, headers, url, null, errorListener);
-    if (response != null) {
-      Project[] projects = new Gson().fromJson(response.toString(), Project[].class);
-      return new ArrayList<>(Arrays.asList(projects));
+    final ProjectManager projectManager = new ProjectManager(context);
+    ValidatorStore validators = null;
+    try {
+      projectManager.open();
+      validators = getValidators(context, url, projectManager.getMemberProjectCount(memberId) > 0);
+    } catch (SQLException e) {
+      Log.e(TAG, "Error opening database, requesting projects unconditionally");
     }
-    return new ArrayList<>();
+    return HttpHelper.request(context, Request.Method.GET, headers, url, null, JsonCodec.getGson(), PROJECT_LIST_TYPE,
+        validators, RequestPriority.FOREGROUND, BackoffPolicy.DEFAULT, HttpHelper.REQUEST_TIMEOUT_MS,
+        new ReadThrough<List<Project>>(listener, validators, url) {
+          @Override
+          void store(List<Project> projects) {
+            projectManager.upsertMemberProjects(memberId, projects);
+          }
+
+          @Override
+          List<Project> load() {
+            return projectManager.getMemberProjects(memberId);
+          }
+        }, errorListener);
   }
 
-  public static Project getProject(Context context, int projectId, Response.ErrorListener errorListener) {
+  /**
+   * Get a project. The project is stored in the local database and served
+   * from it when the server reports that it has not changed.
+   *
+   * @param context         Context
+   * @param projectId       Project ID
+   * @param listener        Response listener
+   * @param errorListener   Error listener
+   * @return                Handle which can be used to cancel the request
+   */
+  public static RequestHandle getProject(Context context, final int projectId, Response.Listener<Project> listener,
+                                         Response.ErrorListener errorListener) {
     String url = getAbsoluteUrl("/projects/" + projectId);
     Map<String, String> headers = getRequestHeaders(context);
-    JSONObject response = HttpHelper.requestJsonObject(context, Request.Method.GET, headers, url, null, errorListener);
-    if (response != null) {
-      return new Gson().fromJson(response.toString(), Project.class);
+    final ProjectManager projectManager = new ProjectManager(context);
+    ValidatorStore validators = null;
+    try {
+      projectManager.open();
+      validators = getValidators(context, url, projectManager.getProject(projectId) != null);
+    } catch (SQLException e) {
+      Log.e(TAG, "Error opening database, requesting project unconditionally");
     }
-    return null;
+    return HttpHelper.request(context, Request.Method.GET, headers, url, null, JsonCodec.getGson(), Project.class,
+        validators, RequestPriority.FOREGROUND, BackoffPolicy.DEFAULT, HttpHelper.REQUEST_TIMEOUT_MS,
+        new ReadThrough<Project>(listener, validators, url) {
+          @Override
+          void store(Project project) {
+            projectManager.upsertProject(project);
+          }
+
+          @Override
+          Project load() {
+            return projectManager.getProject(projectId);
+          }
+        }, errorListener);
   }
 
-  public static List<TimelineEntry> getProjectTimeline(Context context, int projectId,
-                                                       Response.ErrorListener errorListener) {
+  /**
+   * Get the timeline of a project, newest entries first. The entries are
+   * stored in the local database and served from it when the server reports
+   * that the timeline has not changed.
+   *
+   * @param context         Context
+   * @param projectId       Project ID
+   * @param listener        Response listener
+   * @param errorListener   Error listener
+   * @return                Handle which can be used to cancel the request
+   */
+  public static RequestHandle getProjectTimeline(Context context, final int projectId,
+                                                 Response.Listener<List<TimelineEntry>> listener,
+                                                 Response.ErrorListener errorListener) {
     String url = getAbsoluteUrl("/timeline/project/" + projectId);
     Map<String, String> headers = getRequestHeaders(context);
-    JSONArray response = HttpHelper.requestJsonArray(context, Request.Method.GET, headers, url, null, errorListener);
-    if (response != null) {
-      Gson gson = new GsonBuilder().setDateFormat(DATE_FORMAT).create();
-      TimelineEntry[] timelineEntries = gson.fromJson(response.toString(), TimelineEntry[].class);
-      return Arrays.asList(timelineEntries);
+    final TimelineEntryManager timelineEntryManager = new TimelineEntryManager(context);
+    ValidatorStore validators = null;
+    try {
+      timelineEntryManager.open();
+      validators = getValidators(context, url, timelineEntryManager.getTimelineEntryCount(projectId) > 0);
+    } catch (SQLException e) {
+      Log.e(TAG, "Error opening database, requesting timeline unconditionally");
+    }
+    return HttpHelper.request(context, Request.Method.GET, headers, url, null, JsonCodec.getGson(), TIMELINE_TYPE,
+        validators, RequestPriority.FOREGROUND, BackoffPolicy.DEFAULT, HttpHelper.REQUEST_TIMEOUT_MS,
+        new ReadThrough<List<TimelineEntry>>(listener, validators, url) {
+          @Override
+          void store(List<TimelineEntry> entries) {
+            timelineEntryManager.upsertTimelineEntries(entries);
+          }
+
+          @Override
+          List<TimelineEntry> load() {
+            return timelineEntryManager.getTimelineEntriesByProject(projectId, null);
+          }
+        }, errorListener);
+  }
+
+  /**
+   * Get an iterator over the pages of a project's timeline, newest entries first
+   *
+   * @param context     Context
+   * @param projectId   Project ID
+   * @param pageSize    Number of entries per page
+   * @param priority    Scheduling priority of the page requests
+   * @return            Page iterator
+   */
+  public static PageIterator<TimelineEntry> getProjectTimelinePages(Context context, int projectId, int pageSize,
+                                                                    RequestPriority priority) {
+    String url = getAbsoluteUrl("/timeline/project/" + projectId + "?page_size=" + pageSize);
+    Map<String, String> headers = getRequestHeaders(context);
+    return new PageIterator<TimelineEntry>(context, url, headers, JsonCodec.getGson(), TIMELINE_TYPE, priority);
+  }
+
+  /**
+   * Get the validator store for a conditional request. Validators are only
+   * sent when there is local data to fall back on, otherwise a 304 Not Modified
+   * response would leave nothing to show.
+   *
+   * @param context     Context
+   * @param url         Request URL
+   * @param hasLocal    True if the response is available in the local database
+   * @return            Validator store
+   */
+  private static ValidatorStore getValidators(Context context, String url, boolean hasLocal) {
+    ValidatorStore validators = ValidatorStore.getInstance(context);
+    if (!hasLocal) {
+      validators.remove(url);
     }
-    return new ArrayList<>();
+    return validators;
   }
 
   private static String getAbsoluteUrl(String relativeUrl) {
@@ -91,15 +209,74 @@ public abstract class Taiga {
   }
 
   private static Map<String, String> getRequestHeaders(Context context) {
-    Map<String, String> headers = new HashMap<>();
-    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-    if (prefs.contains("user")) {
-      User user  = new Gson().fromJson(prefs.getString("user", null), User.class);
-      if (user != null) {
-        headers.put("Authorization", "Bearer " + user.getAuthToken());
+    return Session.getInstance(context).getAuthHeaders();
+  }
+
+  /**
+   * Listener which queues a response to be stored in the local database and
+   * delivers it, and serves a 304 Not Modified response, delivered as null,
+   * from the local database instead. The validators of the response are only
+   * saved once it has been stored, and dropped if it could not be stored.
+   */
+  private static abstract class ReadThrough<T> implements Response.Listener<T> {
+
+    private final Response.Listener<T> mListener;
+
+    private final ValidatorStore mValidators;
+
+    private final String mUrl;
+
+    /**
+     * @param listener      Response listener
+     * @param validators    Validator store of a conditional request, may be null
+     * @param url           Request URL
+     */
+    ReadThrough(Response.Listener<T> listener, ValidatorStore validators, String url) {
+      mListener = listener;
+      mValidators = validators;
+      mUrl = url;
+    }
+
+    @Override
+    public void onResponse(final T response) {
+      if (response != null) {
+        final Map<String, String> responseHeaders = mValidators != null ? mValidators.takePending(mUrl) : null;
+        DatabaseWriter.getInstance().execute(new Runnable() {
+          @Override
+          public void run() {
+            store(response);
+          }
+        }, new DatabaseWriter.Callback() {
+          @Override
+          public void onComplete() {
+            if (responseHeaders != null) {
+              mValidators.save(mUrl, responseHeaders);
+            }
+          }
+
+          @Override
+          public void onError(SQLiteException e) {
+            Log.e(TAG, "Error storing response of " + mUrl, e);
+            if (mValidators != null) {
+              mValidators.remove(mUrl);
+            }
+          }
+        });
+        mListener.onResponse(response);
+      } else {
+        mListener.onResponse(load());
       }
     }
-    return headers;
+
+    /**
+     * Store the response, called on the database writer thread
+     *
+     * @param response  Response
+     */
+    abstract void store(T response);
+
+    abstract T load();
+
   }
 
 }
@@ -0,0 +1,323 @@
+package co.brianberg.taiga.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteException;
+
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import co.brianberg.taiga.db.DatabaseWriter;
+import co.brianberg.taiga.db.timeline.TimelineEntry;
+import co.brianberg.taiga.db.timeline.TimelineEntryManager;
+
+/**
+ * Incremental sync of a project timeline into the local database.
+ *
+ * The newest entry seen by the last completed sync is remembered per project
+ * as a high-water mark. A sync pages through the remote timeline, newest first,
+ * and stops at the first entry at or below the mark, so refreshing a project
+ * which has not changed much costs a single small request.
+ *
+ * A sync which reaches the page limit before the mark leaves a gap between the
+ * stored entries and the mark. The mark is then kept and a resume cursor, the
+ * next page and the newest entry of the sync, is remembered instead. The next
+ * sync first stores the entries newer than the cursor and then continues from
+ * the cursor page until it reaches the mark, and only then advances the mark.
+ */
+public class TimelineSync {
+
+  private static final String PREFS_NAME = "timeline_sync";
+
+  private static final String KEY_NEWEST_ID = "newest_id_";
+
+  private static final String KEY_NEWEST_CREATED = "newest_created_";
+
+  private static final String KEY_RESUME_PAGE = "resume_page_";
+
+  private static final String KEY_RESUME_ID = "resume_id_";
+
+  private static final String KEY_RESUME_CREATED = "resume_created_";
+
+  /**
+   * Number of timeline entries fetched per page
+   */
+  private static final int PAGE_SIZE = 20;
+
+  /**
+   * Maximum number of pages fetched by a single sync. Older entries are left
+   * to be paged in by the timeline screen.
+   */
+  private static final int MAX_PAGES = 5;
+
+  private final Context mContext;
+
+  private final int mProjectId;
+
+  private final TimelineEntryManager mTimelineEntryManager;
+
+  private final SharedPreferences mPrefs;
+
+  private final RequestPriority mPriority;
+
+  private long mMarkId;
+
+  private long mMarkCreated;
+
+  /**
+   * Page the interrupted sync continues from, or 0 if there is no gap
+   */
+  private int mResumePage;
+
+  /**
+   * Newest entry seen by the interrupted sync
+   */
+  private long mResumeId;
+
+  private long mResumeCreated;
+
+  /**
+   * True while filling the gap left by an interrupted sync
+   */
+  private boolean mResuming;
+
+  /**
+   * Entry the current pass stops at, the resume cursor or the mark
+   */
+  private long mStopId;
+
+  private long mStopCreated;
+
+  private int mPageCount;
+
+  private int mHeadCount;
+
+  private PageIterator<TimelineEntry> mPages;
+
+  private List<TimelineEntry> mNewEntries;
+
+  private TimelineEntry mNewest;
+
+  /**
+   * @param context     Context
+   * @param projectId   Project ID
+   * @param priority    Scheduling priority of the first page, the following pages
+   *                    are fetched in the background
+   */
+  public TimelineSync(Context context, int projectId, RequestPriority priority) {
+    mContext = context.getApplicationContext();
+    mProjectId = projectId;
+    mPriority = priority;
+    mTimelineEntryManager = new TimelineEntryManager(mContext);
+    mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+  }
+
+  /**
+   * Download and store the entries newer than the high-water mark
+   *
+   * @param listener        Called with the newly stored entries, newest first
+   * @param errorListener   Error listener
+   */
+  public void start(Response.Listener<List<TimelineEntry>> listener, Response.ErrorListener errorListener) {
+    cancel();
+    mMarkId = mPrefs.getLong(KEY_NEWEST_ID + mProjectId, -1);
+    mMarkCreated = mPrefs.getLong(KEY_NEWEST_CREATED + mProjectId, -1);
+    mResumePage = mPrefs.getInt(KEY_RESUME_PAGE + mProjectId, 0);
+    mResumeId = mPrefs.getLong(KEY_RESUME_ID + mProjectId, -1);
+    mResumeCreated = mPrefs.getLong(KEY_RESUME_CREATED + mProjectId, -1);
+    mResuming = false;
+    if (mResumePage > 0) {
+      mStopId = mResumeId;
+      mStopCreated = mResumeCreated;
+    } else {
+      mStopId = mMarkId;
+      mStopCreated = mMarkCreated;
+    }
+    mPageCount = 0;
+    mHeadCount = 0;
+    mNewEntries = new ArrayList<>();
+    mNewest = null;
+    mPages = Taiga.getProjectTimelinePages(mContext, mProjectId, PAGE_SIZE, mPriority);
+    fetchNextPage(listener, errorListener);
+  }
+
+  /**
+   * Cancel the sync in progress, if any. Entries stored so far are kept
+   * but neither the high-water mark nor the resume cursor is changed.
+   */
+  public void cancel() {
+    if (mPages != null) {
+      mPages.cancel();
+      mPages = null;
+    }
+  }
+
+  private void fetchNextPage(final Response.Listener<List<TimelineEntry>> listener,
+                             final Response.ErrorListener errorListener) {
+    mPages.next(
+        new Response.Listener<Page<TimelineEntry>>() {
+          @Override
+          public void onResponse(Page<TimelineEntry> page) {
+            onPage(page, listener, errorListener);
+          }
+        },
+        errorListener
+    );
+  }
+
+  private void onPage(final Page<TimelineEntry> page, final Response.Listener<List<TimelineEntry>> listener,
+                      final Response.ErrorListener errorListener) {
+    final List<TimelineEntry> fresh = new ArrayList<>();
+    boolean atStop = false;
+    for (TimelineEntry entry : page.getItems()) {
+      if (isAtOrBelow(entry, mStopId, mStopCreated)) {
+        atStop = true;
+        break;
+      }
+      fresh.add(entry);
+    }
+    if (!mResuming) {
+      if (mNewest == null && !page.getItems().isEmpty()) {
+        mNewest = page.getItems().get(0);
+      }
+      mHeadCount += fresh.size();
+    }
+    mPageCount++;
+
+    final boolean reachedStop = atStop;
+    final boolean capped = mPageCount >= MAX_PAGES;
+    final PageIterator<TimelineEntry> pages = mPages;
+    store(fresh, new DatabaseWriter.Callback() {
+      @Override
+      public void onComplete() {
+        if (mPages != pages) {
+          // Cancelled or restarted while the page was being stored
+          return;
+        }
+        mNewEntries.addAll(fresh);
+        if (!reachedStop && page.hasNext() && !capped) {
+          mPages.setPriority(RequestPriority.BACKGROUND);
+          fetchNextPage(listener, errorListener);
+        } else if (reachedStop && !mResuming && mResumePage > 0 && !capped) {
+          resume(listener, errorListener);
+        } else {
+          finish(reachedStop, !page.hasNext(), page.getNumber() + 1);
+          mPages = null;
+          listener.onResponse(mNewEntries);
+        }
+      }
+
+      @Override
+      public void onError(SQLiteException e) {
+        if (mPages == pages) {
+          mPages = null;
+          errorListener.onErrorResponse(new VolleyError(e));
+        }
+      }
+    });
+  }
+
+  /**
+   * Continue from the resume cursor down to the high-water mark. The entries
+   * stored since the cursor was saved pushed the older ones further down, so
+   * the cursor page is moved down by as many pages, less one page of overlap
+   * in case entries were deleted meanwhile.
+   */
+  private void resume(Response.Listener<List<TimelineEntry>> listener, Response.ErrorListener errorListener) {
+    mResuming = true;
+    mStopId = mMarkId;
+    mStopCreated = mMarkCreated;
+    mPages.setPriority(RequestPriority.BACKGROUND);
+    mPages.setNextPageNumber(Math.max(1, shiftedResumePage() - 1));
+    fetchNextPage(listener, errorListener);
+  }
+
+  /**
+   * Record the outcome of a sync which stopped
+   *
+   * @param reachedStop   True if the last pass reached the entry it stops at
+   * @param reachedEnd    True if the last pass reached the oldest entry of the timeline
+   * @param nextPage      Number of the page following the last fetched page
+   */
+  private void finish(boolean reachedStop, boolean reachedEnd, int nextPage) {
+    long headId = mNewest != null ? mNewest.getId() : mResumeId;
+    long headCreated = mNewest != null ? mNewest.getCreatedDate().getTime() : mResumeCreated;
+    if (headId < 0) {
+      return;
+    }
+    if (reachedEnd) {
+      saveMark(headId, headCreated);
+    } else if (mResuming || mResumePage == 0) {
+      if (reachedStop || mMarkId < 0) {
+        // Without a mark no older entries were stored, so stopping early leaves no gap
+        saveMark(headId, headCreated);
+      } else {
+        saveResume(nextPage, headId, headCreated);
+      }
+    } else if (reachedStop) {
+      // Caught up with the resume cursor but out of pages, the cursor moves to the new head
+      saveResume(shiftedResumePage(), headId, headCreated);
+    } else {
+      // The gap grew past the resume cursor, the pages below it are fetched again
+      saveResume(nextPage, headId, headCreated);
+    }
+  }
+
+  /**
+   * @return  Resume cursor page moved down by the pages of entries stored above the cursor
+   */
+  private int shiftedResumePage() {
+    return mResumePage + mHeadCount / PAGE_SIZE;
+  }
+
+  /**
+   * @param entry       Timeline entry
+   * @param id          ID of the entry to compare with, or -1 for none
+   * @param created     Creation time of the entry to compare with
+   * @return            True if the entry is at or below the other entry
+   */
+  private static boolean isAtOrBelow(TimelineEntry entry, long id, long created) {
+    if (id < 0) {
+      return false;
+    }
+    long entryCreated = entry.getCreatedDate().getTime();
+    return entryCreated < created || (entryCreated == created && entry.getId() <= id);
+  }
+
+  /**
+   * Store entries on the database writer thread
+   *
+   * @param entries     Timeline entries
+   * @param callback    Called on the main thread once the entries are stored
+   */
+  private void store(final List<TimelineEntry> entries, DatabaseWriter.Callback callback) {
+    DatabaseWriter.getInstance().execute(new Runnable() {
+      @Override
+      public void run() {
+        mTimelineEntryManager.upsertTimelineEntries(entries);
+      }
+    }, callback);
+  }
+
+  private void saveMark(long id, long created) {
+    mPrefs.edit()
+        .putLong(KEY_NEWEST_ID + mProjectId, id)
+        .putLong(KEY_NEWEST_CREATED + mProjectId, created)
+        .remove(KEY_RESUME_PAGE + mProjectId)
+        .remove(KEY_RESUME_ID + mProjectId)
+        .remove(KEY_RESUME_CREATED + mProjectId)
+        .apply();
+  }
+
+  private void saveResume(int page, long id, long created) {
+    mPrefs.edit()
+        .putInt(KEY_RESUME_PAGE + mProjectId, page)
+        .putLong(KEY_RESUME_ID + mProjectId, id)
+        .putLong(KEY_RESUME_CREATED + mProjectId, created)
+        .apply();
+  }
+
+}
@@ -0,0 +1,134 @@
+package co.brianberg.taiga.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores the HTTP cache validators (ETag and Last-Modified) returned for each
+ * URL so that repeat requests can be made conditional.
+ *
+ * The validators of a response are only saved once its body has been stored
+ * in the local database, otherwise a later 304 Not Modified response would be
+ * served from rows which were never written. Until then they are kept as
+ * pending, see {@link #setPending} and {@link #takePending}.
+ */
+public class ValidatorStore {
+
+  private static final String PREFS_NAME = "http_validators";
+
+  private static final String KEY_ETAG = "etag:";
+
+  private static final String KEY_LAST_MODIFIED = "last_modified:";
+
+  private static final String HEADER_ETAG = "ETag";
+
+  private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+  private static ValidatorStore sInstance;
+
+  private final SharedPreferences mPrefs;
+
+  /**
+   * Response headers of the responses being delivered, by URL
+   */
+  private final Map<String, Map<String, String>> mPending = new HashMap<>();
+
+  private ValidatorStore(Context context) {
+    mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+  }
+
+  public static synchronized ValidatorStore getInstance(Context context) {
+    if (sInstance == null) {
+      sInstance = new ValidatorStore(context.getApplicationContext());
+    }
+    return sInstance;
+  }
+
+  /**
+   * Add If-None-Match and If-Modified-Since headers for the validators stored for a URL
+   *
+   * @param url       Request URL
+   * @param headers   Request headers to add to
+   */
+  public void addConditionalHeaders(String url, Map<String, String> headers) {
+    String etag = mPrefs.getString(KEY_ETAG + url, null);
+    if (etag != null) {
+      headers.put("If-None-Match", etag);
+    }
+    String lastModified = mPrefs.getString(KEY_LAST_MODIFIED + url, null);
+    if (lastModified != null) {
+      headers.put("If-Modified-Since", lastModified);
+    }
+  }
+
+  /**
+   * Store the validators of a response, replacing the ones stored for the URL
+   *
+   * @param url               Request URL
+   * @param responseHeaders   Response headers
+   */
+  public void save(String url, Map<String, String> responseHeaders) {
+    String etag = HttpHelper.getHeader(responseHeaders, HEADER_ETAG);
+    String lastModified = HttpHelper.getHeader(responseHeaders, HEADER_LAST_MODIFIED);
+    SharedPreferences.Editor editor = mPrefs.edit();
+    if (etag != null) {
+      editor.putString(KEY_ETAG + url, etag);
+    } else {
+      editor.remove(KEY_ETAG + url);
+    }
+    if (lastModified != null) {
+      editor.putString(KEY_LAST_MODIFIED + url, lastModified);
+    } else {
+      editor.remove(KEY_LAST_MODIFIED + url);
+    }
+    editor.apply();
+  }
+
+  /**
+   * Keep the headers of a response while it is being delivered so that the
+   * listener storing the body can save the validators once it is stored
+   *
+   * @param url               Request URL
+   * @param responseHeaders   Response headers, or null to drop the pending headers
+   */
+  public synchronized void setPending(String url, Map<String, String> responseHeaders) {
+    if (responseHeaders != null) {
+      mPending.put(url, responseHeaders);
+    } else {
+      mPending.remove(url);
+    }
+  }
+
+  /**
+   * Take the headers of the response being delivered for a URL
+   *
+   * @param url   Request URL
+   * @return      Response headers, or null if no response is being delivered
+   */
+  public synchronized Map<String, String> takePending(String url) {
+    return mPending.remove(url);
+  }
+
+  /**
+   * Forget the validators stored for a URL
+   *
+   * @param url   Request URL
+   */
+  public void remove(String url) {
+    mPrefs.edit()
+        .remove(KEY_ETAG + url)
+        .remove(KEY_LAST_MODIFIED + url)
+        .apply();
+  }
+
+  /**
+   * Forget all stored validators
+   */
+  public void clear() {
+    mPrefs.edit().clear().apply();
+  }
+
+}
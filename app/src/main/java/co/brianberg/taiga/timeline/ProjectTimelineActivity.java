@@ -7,13 +7,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.view.MenuItem;
 
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
-
 import co.brianberg.taiga.R;
-import co.brianberg.taiga.db.timeline.TimelineEntry;
-import co.brianberg.taiga.db.timeline.TimelineEntryManager;
 import co.brianberg.taiga.projects.ProjectDetailActivity;
 
 public class ProjectTimelineActivity extends AppCompatActivity {
@@ -28,16 +22,6 @@ public class ProjectTimelineActivity extends AppCompatActivity {
    */
   private int mProjectId;
 
-  /**
-   * List of project timeline entries
-   */
-  private List<TimelineEntry> mTimelineEntries;
-
-  /**
-   * Timeline entry database manager
-   */
-  private TimelineEntryManager mTimelineEntryManager;
-
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -51,20 +35,11 @@ public class ProjectTimelineActivity extends AppCompatActivity {
       actionBar.setDisplayHomeAsUpEnabled(true);
     }
 
-    mTimelineEntryManager = new TimelineEntryManager(this);
-
     if (savedInstanceState == null) {
       Bundle args = getIntent().getExtras();
       if (args != null && args.containsKey(ARG_PROJECT_ID)) {
         mProjectId = args.getInt(ARG_PROJECT_ID);
-        try {
-          mTimelineEntryManager.open();
-          mTimelineEntries = mTimelineEntryManager.getTimelineEntriesByProject(mProjectId, null);
-        } catch (SQLException e) {
-          e.printStackTrace();
-          mTimelineEntries = new ArrayList<>();
-        }
-        ProjectTimelineFragment timelineFragment = ProjectTimelineFragment.newInstance(mTimelineEntries);
+        ProjectTimelineFragment timelineFragment = ProjectTimelineFragment.newInstance(mProjectId);
         getSupportFragmentManager().beginTransaction()
             .add(R.id.project_timeline_container, timelineFragment)
             .commit();
@@ -85,20 +60,4 @@ public class ProjectTimelineActivity extends AppCompatActivity {
     return super.onOptionsItemSelected(item);
   }
 
-  @Override
-  public void onResume() {
-    super.onResume();
-    try {
-      mTimelineEntryManager.open();
-    } catch (SQLException e) {
-      e.printStackTrace();
-    }
-  }
-
-  @Override
-  public void onPause() {
-    mTimelineEntryManager.close();
-    super.onPause();
-  }
-
 }
@@ -1,52 +1,135 @@
 package co.brianberg.taiga.timeline;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteException;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SimpleItemAnimator;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import co.brianberg.taiga.R;
+import co.brianberg.taiga.db.ChangeNotifier;
+import co.brianberg.taiga.db.CursorList;
+import co.brianberg.taiga.db.CursorPageList;
+import co.brianberg.taiga.db.DatabaseHelper;
+import co.brianberg.taiga.db.DatabaseReader;
+import co.brianberg.taiga.db.TableChange;
+import co.brianberg.taiga.db.timeline.MemberCache;
 import co.brianberg.taiga.db.timeline.TimelineEntry;
+import co.brianberg.taiga.db.timeline.TimelineEntryManager;
 import co.brianberg.taiga.projects.ProjectTimelineRecyclerViewAdapter;
+import co.brianberg.taiga.service.Page;
+import co.brianberg.taiga.service.PageIterator;
+import co.brianberg.taiga.service.RequestPriority;
+import co.brianberg.taiga.service.Taiga;
 import co.brianberg.taiga.ui.SimpleDividerItemDecoration;
 
 /**
- * A placeholder fragment containing a simple view.
+ * A fragment displaying a project timeline which fetches further pages
+ * as the user scrolls.
  */
 public class ProjectTimelineFragment extends Fragment {
 
+  private static final String TAG = ProjectTimelineFragment.class.getSimpleName();
+
   /**
-   * Key to identify the project timeline bundle argument
+   * Key to identify the project ID bundle argument
    */
-  private static final String ARG_PROJECT_TIMELINE = "project_timeline";
+  private static final String ARG_PROJECT_ID = "project_id";
 
   /**
-   * List of timeline entries for the project
+   * Number of timeline entries fetched or read from the database per page
+   */
+  private static final int PAGE_SIZE = 20;
+
+  /**
+   * Number of rows from the end of the list at which the next page is fetched
+   */
+  private static final int LOAD_THRESHOLD = 5;
+
+  /**
+   * Project ID for which to display the timeline
+   */
+  private int mProjectId;
+
+  /**
+   * List of timeline entries loaded so far
    */
   private List<TimelineEntry> mTimelineEntryList;
 
+  /**
+   * Iterator over the remote timeline pages
+   */
+  private PageIterator<TimelineEntry> mTimelinePages;
+
+  /**
+   * Timeline entry database manager
+   */
+  private TimelineEntryManager mTimelineEntryManager;
+
+  /**
+   * Stored entries shown when the timeline could not be fetched, read a page
+   * at a time, null while showing the remote timeline
+   */
+  private CursorPageList<TimelineEntry> mCachedEntries;
+
+  /**
+   * Last entry of each stored page as it was read, the following page is read
+   * from there. Null for a last page which reached the end of the stored timeline.
+   */
+  private List<TimelineEntry> mCachedPageEnds;
+
+  /**
+   * True while a stored page is being read
+   */
+  private boolean mLoadingCached;
+
+  /**
+   * True while there may be further stored entries to read
+   */
+  private boolean mHasMoreCached;
+
   /**
    * Project timeline entry list view adapter
    */
   private ProjectTimelineRecyclerViewAdapter mRecyclerViewAdapter;
 
+  /**
+   * Receives the changes of the stored timeline entries
+   */
+  private final ChangeNotifier.Listener mChangeListener = new ChangeNotifier.Listener() {
+    @Override
+    public void onChange(TableChange change) {
+      onEntriesChanged(change);
+    }
+  };
+
   /**
    * Mandatory empty constructor for the fragment manager to instantiate the
    * fragment (e.g. upon screen orientation changes).
    */
   public ProjectTimelineFragment() {}
 
-  public static ProjectTimelineFragment newInstance(List<TimelineEntry> timelineEntries) {
+  public static ProjectTimelineFragment newInstance(int projectId) {
     ProjectTimelineFragment fragment = new ProjectTimelineFragment();
     Bundle args = new Bundle();
-    args.putParcelableArrayList(ARG_PROJECT_TIMELINE, (ArrayList<TimelineEntry>) timelineEntries);
+    args.putInt(ARG_PROJECT_ID, projectId);
     fragment.setArguments(args);
     return fragment;
   }
@@ -54,15 +137,19 @@ public class ProjectTimelineFragment extends Fragment {
   @Override
   public void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
-    if (savedInstanceState == null) {
-      Bundle args = getArguments();
-      if (args != null && args.containsKey(ARG_PROJECT_TIMELINE)) {
-        mTimelineEntryList = args.getParcelableArrayList(ARG_PROJECT_TIMELINE);
-      } else {
-        mTimelineEntryList = new ArrayList<>();
-      }
-      mRecyclerViewAdapter = new ProjectTimelineRecyclerViewAdapter(mTimelineEntryList);
+    // Keep loaded pages and in-flight requests across configuration changes
+    setRetainInstance(true);
+    Bundle args = getArguments();
+    if (args != null && args.containsKey(ARG_PROJECT_ID)) {
+      mProjectId = args.getInt(ARG_PROJECT_ID);
     }
+    mTimelineEntryList = new ArrayList<>();
+    mRecyclerViewAdapter = new ProjectTimelineRecyclerViewAdapter(mTimelineEntryList,
+        MemberCache.getInstance(getContext()));
+    mTimelineEntryManager = new TimelineEntryManager(getContext());
+    mTimelinePages = Taiga.getProjectTimelinePages(getContext(), mProjectId, PAGE_SIZE, RequestPriority.FOREGROUND);
+    ChangeNotifier.getInstance().register(DatabaseHelper.TABLE_TIMELINE_ENTRY, mChangeListener);
+    loadNextPage();
   }
 
   @Override
@@ -72,10 +159,328 @@ public class ProjectTimelineFragment extends Fragment {
     if (view instanceof RecyclerView) {
       Context context = view.getContext();
       RecyclerView recyclerView = (RecyclerView) view;
-      recyclerView.setLayoutManager(new LinearLayoutManager(context));
+      final LinearLayoutManager layoutManager = new LinearLayoutManager(context);
+      recyclerView.setLayoutManager(layoutManager);
       recyclerView.setAdapter(mRecyclerViewAdapter);
       recyclerView.addItemDecoration(new SimpleDividerItemDecoration(context));
+      // Loaded entries are bound again as they are stored, unchanged rows must not flash
+      ((SimpleItemAnimator) recyclerView.getItemAnimator()).setSupportsChangeAnimations(false);
+      recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+          int lastVisible = layoutManager.findLastVisibleItemPosition();
+          if (lastVisible >= mRecyclerViewAdapter.getItemCount() - LOAD_THRESHOLD) {
+            loadNextPage();
+          }
+        }
+      });
     }
     return view;
   }
+
+  @Override
+  public void onDestroy() {
+    ChangeNotifier.getInstance().unregister(DatabaseHelper.TABLE_TIMELINE_ENTRY, mChangeListener);
+    mTimelinePages.cancel();
+    if (mCachedEntries != null) {
+      mCachedEntries.close();
+      mCachedEntries = null;
+    }
+    super.onDestroy();
+  }
+
+  /**
+   * Fetch the next timeline page unless one is already loading or all pages
+   * were loaded, or read the next stored page when showing stored entries
+   */
+  private void loadNextPage() {
+    if (mCachedEntries != null) {
+      loadNextCachedPage();
+      return;
+    }
+    mTimelinePages.next(
+        new Response.Listener<Page<TimelineEntry>>() {
+          @Override
+          public void onResponse(Page<TimelineEntry> page) {
+            // Further pages are fetched ahead of the rows on screen
+            mTimelinePages.setPriority(RequestPriority.PREFETCH);
+            onPageLoaded(page.getItems());
+          }
+        },
+        new Response.ErrorListener() {
+          @Override
+          public void onErrorResponse(VolleyError error) {
+            Log.d(TAG, error.toString());
+            if (mTimelineEntryList.isEmpty()) {
+              showCachedEntries();
+            }
+          }
+        }
+    );
+  }
+
+  private void onPageLoaded(List<TimelineEntry> entries) {
+    int start = mTimelineEntryList.size();
+    mTimelineEntryList.addAll(entries);
+    mRecyclerViewAdapter.notifyItemRangeInserted(start, entries.size());
+  }
+
+  /**
+   * Update the displayed entries as stored entries of the project change.
+   * Only the changed entries are read again, in the background, and only
+   * their rows are bound again. Entries older than the loaded ones are left
+   * to the following pages.
+   *
+   * @param change  Timeline entry changes
+   */
+  private void onEntriesChanged(TableChange change) {
+    if (mCachedEntries != null) {
+      onCachedEntriesChanged(change);
+      return;
+    }
+    final int projectId = mProjectId;
+    final Set<Integer> ids = change.getChanged();
+    final Set<Integer> deleted = change.getDeleted();
+    DatabaseReader.getInstance().execute(
+        new DatabaseReader.Query<List<TimelineEntry>>() {
+          @Override
+          public List<TimelineEntry> run() {
+            return mTimelineEntryManager.getTimelineEntries(projectId, ids);
+          }
+        },
+        new DatabaseReader.Callback<List<TimelineEntry>>() {
+          @Override
+          public void onResult(List<TimelineEntry> changed) {
+            // Deletions are applied in the order of the changes as well, after any earlier read
+            if (mCachedEntries == null) {
+              applyChanges(changed, deleted);
+            }
+          }
+
+          @Override
+          public void onError(SQLiteException e) {
+            Log.e(TAG, "Could not read the changed timeline entries", e);
+          }
+        }
+    );
+  }
+
+  private void applyChanges(List<TimelineEntry> changed, Set<Integer> deleted) {
+    for (int position = mTimelineEntryList.size() - 1; position >= 0; position--) {
+      if (deleted.contains(mTimelineEntryList.get(position).getId())) {
+        mTimelineEntryList.remove(position);
+        mRecyclerViewAdapter.notifyItemRemoved(position);
+      }
+    }
+    if (mTimelineEntryList.isEmpty()) {
+      return;
+    }
+    for (TimelineEntry entry : changed) {
+      int position = indexOf(entry.getId());
+      if (position >= 0) {
+        mTimelineEntryList.set(position, entry);
+        mRecyclerViewAdapter.notifyItemChanged(position);
+        continue;
+      }
+      position = 0;
+      while (position < mTimelineEntryList.size() && !isNewer(entry, mTimelineEntryList.get(position))) {
+        position++;
+      }
+      if (position < mTimelineEntryList.size()) {
+        mTimelineEntryList.add(position, entry);
+        mRecyclerViewAdapter.notifyItemInserted(position);
+      }
+    }
+  }
+
+  /**
+   * Update the stored entries shown as they change. Only the stored pages
+   * holding a changed entry are read again, each bounded by the entries it
+   * was read between, and only the rows which changed are bound again.
+   *
+   * @param change  Timeline entry changes
+   */
+  private void onCachedEntriesChanged(TableChange change) {
+    final CursorPageList<TimelineEntry> entries = mCachedEntries;
+    final int projectId = mProjectId;
+    final List<TimelineEntry> ends = new ArrayList<>(mCachedPageEnds);
+    final Set<Integer> ids = change.getChanged();
+    // Deleted entries cannot be read anymore, their pages are found by the IDs of the loaded rows
+    final Set<Integer> pages = new TreeSet<>();
+    if (!change.getDeleted().isEmpty()) {
+      for (int index = 0; index < entries.getPageCount(); index++) {
+        CursorList<TimelineEntry> page = entries.getPage(index);
+        for (int row = 0; row < page.size(); row++) {
+          if (change.getDeleted().contains((int) page.getItemId(row))) {
+            pages.add(index);
+            break;
+          }
+        }
+      }
+    }
+    DatabaseReader.getInstance().execute(
+        new DatabaseReader.Query<Map<Integer, CursorList<TimelineEntry>>>() {
+          @Override
+          public Map<Integer, CursorList<TimelineEntry>> run() {
+            for (TimelineEntry entry : mTimelineEntryManager.getTimelineEntries(projectId, ids)) {
+              int index = 0;
+              while (index < ends.size() && ends.get(index) != null && isNewer(ends.get(index), entry)) {
+                index++;
+              }
+              if (index < ends.size()) {
+                pages.add(index);
+              }
+            }
+            Map<Integer, CursorList<TimelineEntry>> read = new TreeMap<>();
+            for (int index : pages) {
+              TimelineEntry until = ends.get(index);
+              read.put(index, mTimelineEntryManager.getLazyTimelineEntriesByProject(projectId,
+                  index > 0 ? ends.get(index - 1) : null, until, until != null ? 0 : PAGE_SIZE));
+            }
+            return read;
+          }
+        },
+        new DatabaseReader.Callback<Map<Integer, CursorList<TimelineEntry>>>() {
+          @Override
+          public void onResult(Map<Integer, CursorList<TimelineEntry>> read) {
+            for (Map.Entry<Integer, CursorList<TimelineEntry>> page : read.entrySet()) {
+              if (entries != mCachedEntries) {
+                // Destroyed or read again meanwhile
+                page.getValue().close();
+              } else {
+                replaceCachedPage(page.getKey(), page.getValue(), ids);
+              }
+            }
+          }
+
+          @Override
+          public void onError(SQLiteException e) {
+            Log.e(TAG, "Could not read the changed timeline entries", e);
+          }
+        }
+    );
+  }
+
+  /**
+   * Replace a stored page read again, notifying the rows removed, inserted
+   * and changed. Entries keep their order, so the rows kept by the page are
+   * in the same order before and after.
+   *
+   * @param index     Page index
+   * @param page      Page read again
+   * @param changed   IDs of the changed entries
+   */
+  private void replaceCachedPage(int index, CursorList<TimelineEntry> page, Set<Integer> changed) {
+    int start = mCachedEntries.getPageStart(index);
+    CursorList<TimelineEntry> previous = mCachedEntries.getPage(index);
+    Set<Long> previousIds = new HashSet<>();
+    List<Integer> removed = new ArrayList<>();
+    for (int row = 0; row < previous.size(); row++) {
+      previousIds.add(previous.getItemId(row));
+    }
+    Set<Long> ids = new HashSet<>();
+    for (int row = 0; row < page.size(); row++) {
+      ids.add(page.getItemId(row));
+    }
+    for (int row = previous.size() - 1; row >= 0; row--) {
+      if (!ids.contains(previous.getItemId(row))) {
+        removed.add(start + row);
+      }
+    }
+    mCachedEntries.setPage(index, page);
+    if (mCachedPageEnds.get(index) == null && page.size() == PAGE_SIZE) {
+      // The last page filled up, the entries following it are read as the list is scrolled
+      mCachedPageEnds.set(index, page.get(page.size() - 1));
+      mHasMoreCached = true;
+    }
+    for (int position : removed) {
+      mRecyclerViewAdapter.notifyItemRemoved(position);
+    }
+    for (int row = 0; row < page.size(); row++) {
+      long id = page.getItemId(row);
+      if (!previousIds.contains(id)) {
+        mRecyclerViewAdapter.notifyItemInserted(start + row);
+      } else if (changed.contains((int) id)) {
+        mRecyclerViewAdapter.notifyItemChanged(start + row);
+      }
+    }
+  }
+
+  private int indexOf(int entryId) {
+    for (int position = 0; position < mTimelineEntryList.size(); position++) {
+      if (mTimelineEntryList.get(position).getId() == entryId) {
+        return position;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return  True if the first entry comes before the second one in the timeline, newest first
+   */
+  private static boolean isNewer(TimelineEntry entry, TimelineEntry other) {
+    int order = entry.getCreatedDate().compareTo(other.getCreatedDate());
+    return order > 0 || (order == 0 && entry.getId() > other.getId());
+  }
+
+  /**
+   * Show the stored entries when the timeline cannot be fetched. The entries
+   * are read from the database a page at a time as the list is scrolled, and
+   * only converted as their rows are bound.
+   */
+  private void showCachedEntries() {
+    mCachedEntries = new CursorPageList<>();
+    mCachedPageEnds = new ArrayList<>();
+    mLoadingCached = false;
+    mHasMoreCached = true;
+    mRecyclerViewAdapter.setEntries(mCachedEntries);
+    loadNextCachedPage();
+  }
+
+  /**
+   * Read the stored page following the last one shown in the background,
+   * seeking from the last entry of the last page
+   */
+  private void loadNextCachedPage() {
+    if (mLoadingCached || !mHasMoreCached) {
+      return;
+    }
+    mLoadingCached = true;
+    final CursorPageList<TimelineEntry> entries = mCachedEntries;
+    final int projectId = mProjectId;
+    final TimelineEntry after = mCachedPageEnds.isEmpty() ? null : mCachedPageEnds.get(mCachedPageEnds.size() - 1);
+    DatabaseReader.getInstance().execute(
+        new DatabaseReader.Query<CursorList<TimelineEntry>>() {
+          @Override
+          public CursorList<TimelineEntry> run() {
+            return mTimelineEntryManager.getLazyTimelineEntriesByProject(projectId, after, null, PAGE_SIZE);
+          }
+        },
+        new DatabaseReader.Callback<CursorList<TimelineEntry>>() {
+          @Override
+          public void onResult(CursorList<TimelineEntry> page) {
+            if (entries != mCachedEntries) {
+              // Destroyed or read again meanwhile
+              page.close();
+              return;
+            }
+            mLoadingCached = false;
+            mHasMoreCached = page.size() == PAGE_SIZE;
+            int start = entries.size();
+            entries.addPage(page);
+            mCachedPageEnds.add(mHasMoreCached ? page.get(page.size() - 1) : null);
+            mRecyclerViewAdapter.notifyItemRangeInserted(start, page.size());
+          }
+
+          @Override
+          public void onError(SQLiteException e) {
+            Log.e(TAG, "Could not read the stored timeline", e);
+            if (entries == mCachedEntries) {
+              mLoadingCached = false;
+            }
+          }
+        }
+    );
+  }
+
 }
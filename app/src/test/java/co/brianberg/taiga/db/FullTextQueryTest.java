@@ -0,0 +1,25 @@
+package co.brianberg.taiga.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FullTextQueryTest {
+
+  @Test
+  public void matchesEachWordAsPrefix() throws Exception {
+    assertEquals("Login* page*", FullTextQuery.fromUserInput("  Login page "));
+  }
+
+  @Test
+  public void dropsMatchOperators() throws Exception {
+    assertEquals("fix* crash* 42*", FullTextQuery.fromUserInput("\"fix\" -crash* (#42)"));
+  }
+
+  @Test
+  public void returnsNullWithoutWords() throws Exception {
+    assertNull(FullTextQuery.fromUserInput(null));
+    assertNull(FullTextQuery.fromUserInput(" *\"- "));
+  }
+
+}
@@ -0,0 +1,31 @@
+package co.brianberg.taiga.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StringPoolTest {
+
+  @Test
+  public void returnsSameInstanceForEqualValues() throws Exception {
+    StringPool pool = new StringPool(16);
+    char[] chars = "issues.issue.create issues.issue.create".toCharArray();
+    String first = pool.intern(chars, 0, 19);
+    String second = pool.intern(chars, 20, 19);
+    assertEquals("issues.issue.create", first);
+    assertSame(first, second);
+    assertEquals("issues", pool.intern(chars, 0, 6));
+  }
+
+  @Test
+  public void stopsPoolingWhenFull() throws Exception {
+    StringPool pool = new StringPool(1);
+    char[] chars = "ab".toCharArray();
+    String a = pool.intern(chars, 0, 1);
+    String b = pool.intern(chars, 1, 1);
+    assertSame(a, pool.intern(chars, 0, 1));
+    assertEquals(b, pool.intern(chars, 1, 1));
+    assertNotSame(b, pool.intern(chars, 1, 1));
+  }
+
+}
@@ -0,0 +1,81 @@
+package co.brianberg.taiga.json;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class DateCodecTest {
+
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+  @Test
+  public void parsesTimestamps() throws Exception {
+    assertEquals(1466498457000L, DateCodec.parse("2016-06-21T08:40:57+0000"));
+    assertEquals(1466498457000L, DateCodec.parse("2016-06-21T08:40:57Z"));
+    assertEquals(1466498457000L, DateCodec.parse("2016-06-21T10:40:57+02:00"));
+    assertEquals(1466498457000L, DateCodec.parse("2016-06-21T03:40:57-05"));
+    assertEquals(1466498457123L, DateCodec.parse("2016-06-21T08:40:57.123456+0000"));
+    assertEquals(1466498457500L, DateCodec.parse("2016-06-21T08:40:57.5Z"));
+    // Afternoon hours, which the former hh pattern rejected
+    assertEquals(1466541657000L, DateCodec.parse("2016-06-21T20:40:57+0000"));
+    assertEquals(-1000L, DateCodec.parse("1969-12-31T23:59:59Z"));
+    assertEquals(951782400000L, DateCodec.parse("2000-02-29T00:00:00Z"));
+  }
+
+  @Test
+  public void rejectsInvalidTimestamps() throws Exception {
+    String[] values = {
+        "", "2016-06-21", "2016-06-21T08:40:57", "2016-06-21 08:40:57+0000", "2016-13-21T08:40:57+0000",
+        "2015-02-29T08:40:57+0000", "2016-06-21T24:40:57+0000", "2016-06-21T08:40:57.+0000",
+        "2016-06-21T08:40:57+00000", "2016-06-21T08:40:57+0a00", "2016-06-21T08:40:57Zx"
+    };
+    for (String value : values) {
+      try {
+        DateCodec.parse(value);
+        fail(value);
+      } catch (IllegalArgumentException expected) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void formatsTimestamps() throws Exception {
+    assertEquals("2016-06-21T08:40:57+0000", DateCodec.format(1466498457000L));
+    assertEquals("2016-06-21T08:40:57.123+0000", DateCodec.format(1466498457123L));
+    assertEquals("1969-12-31T23:59:59.999+0000", DateCodec.format(-1L));
+  }
+
+  @Test
+  public void matchesSimpleDateFormat() throws Exception {
+    SimpleDateFormat timestamp = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
+    timestamp.setTimeZone(UTC);
+    TimeZone zone = TimeZone.getTimeZone("America/New_York");
+    SimpleDateFormat shortDate = new SimpleDateFormat("M/dd/yy", Locale.US);
+    shortDate.setTimeZone(zone);
+    char[] buffer = new char[DateCodec.SHORT_DATE_LENGTH];
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      // Whole seconds between 1900 and 2100
+      long epochMs = (random.nextLong() % 6311390400L) * 1000;
+      String value = timestamp.format(epochMs);
+      assertEquals(value, DateCodec.format(epochMs));
+      assertEquals(epochMs, DateCodec.parse(value));
+      int length = DateCodec.formatShortDate(epochMs, zone, buffer, 0);
+      assertEquals(shortDate.format(epochMs), new String(buffer, 0, length));
+    }
+  }
+
+  @Test
+  public void readsDatesFromJson() throws Exception {
+    assertEquals(1466498457000L, JsonCodec.fromJson(JsonCodec.DATE, "\"2016-06-21T08:40:57+0000\"").getTime());
+    assertEquals(1466498457000L, JsonCodec.fromJson(JsonCodec.DATE, "1466498457000").getTime());
+    assertNull(JsonCodec.fromJson(JsonCodec.DATE, "null"));
+  }
+
+}
@@ -0,0 +1,80 @@
+package co.brianberg.taiga.json;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import co.brianberg.taiga.auth.User;
+import co.brianberg.taiga.db.project.Project;
+import co.brianberg.taiga.db.timeline.TimelineEntry;
+
+import static org.junit.Assert.*;
+
+public class JsonCodecTest {
+
+  private static final String TIMELINE_JSON = "[{" +
+      "\"id\": 42, \"content_type\": 31, \"event_type\": \"tasks.task.create\"," +
+      "\"created\": \"2016-06-21T08:40:57+0000\", \"project\": 7, \"unknown\": [1, {\"a\": null}]," +
+      "\"data\": {" +
+      "\"user\": {\"id\": 3, \"name\": \"Jane\", \"photo\": null, \"big_photo\": \"//x\"}," +
+      "\"task\": {\"id\": 9, \"subject\": \"Fix it\", \"ref\": 12}," +
+      "\"project\": {\"id\": 7, \"name\": \"Taiga\"}" +
+      "}}]";
+
+  @Test
+  public void decodesTimelineEntries() throws Exception {
+    TimelineEntry[] entries = JsonCodec.getGson().fromJson(TIMELINE_JSON, TimelineEntry[].class);
+    assertEquals(1, entries.length);
+    TimelineEntry entry = entries[0];
+    assertEquals(42, entry.getId());
+    assertEquals(31, entry.getContentType());
+    assertEquals("tasks.task.create", entry.getEventType());
+    assertEquals(1466498457000L, entry.getCreatedDate().getTime());
+    assertEquals(7, entry.getProjectId());
+    assertEquals("Jane", entry.getData().getUser().getName());
+    assertNull(entry.getData().getUser().getPhotoUrl());
+    assertEquals(12, entry.getData().getTask().getRef());
+    assertNull(entry.getData().getUserStory());
+  }
+
+  @Test
+  public void roundTripsTimelineEntry() throws Exception {
+    TimelineEntry entry = JsonCodec.getGson().fromJson(TIMELINE_JSON, TimelineEntry[].class)[0];
+    TimelineEntry copy = JsonCodec.fromJson(JsonCodec.TIMELINE_ENTRY, JsonCodec.toJson(JsonCodec.TIMELINE_ENTRY, entry));
+    assertEquals(entry.getCreatedDate(), copy.getCreatedDate());
+    assertEquals("Fix it", copy.getData().getTask().getSubject());
+  }
+
+  @Test
+  public void roundTripsProject() throws Exception {
+    List<String> tags = Arrays.asList("android", "mobile");
+    Project project = new Project(5, "Taiga", "Agile", tags, null, "big.png", true);
+    Project copy = JsonCodec.fromJson(JsonCodec.PROJECT, JsonCodec.toJson(JsonCodec.PROJECT, project));
+    assertEquals(5, copy.getId());
+    assertEquals("Taiga", copy.getName());
+    assertEquals(tags, copy.getTags());
+    assertNull(copy.getLogoSmallUrl());
+    assertTrue(copy.isPrivate());
+  }
+
+  @Test
+  public void roundTripsUser() throws Exception {
+    User user = new User();
+    user.setId(3);
+    user.setAuthToken("token");
+    user.setActive(true);
+    User copy = JsonCodec.fromJson(JsonCodec.USER, JsonCodec.toJson(JsonCodec.USER, user));
+    assertEquals(3, copy.getId());
+    assertEquals("token", copy.getAuthToken());
+    assertTrue(copy.isActive());
+    assertNull(copy.getEmail());
+  }
+
+  @Test
+  public void decodesNullAsNull() throws Exception {
+    assertNull(JsonCodec.fromJson(JsonCodec.STRING_LIST, null));
+    assertNull(JsonCodec.fromJson(JsonCodec.STRING_LIST, "null"));
+  }
+
+}
@@ -0,0 +1,88 @@
+package co.brianberg.taiga.service;
+
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.ParseError;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+  @Test
+  public void opensAfterConsecutiveFailures() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker();
+    for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD - 1; i++) {
+      breaker.onFailure(0);
+    }
+    assertTrue(breaker.allowRequest(0));
+    breaker.onFailure(0);
+    assertTrue(breaker.isOpen());
+    assertFalse(breaker.allowRequest(1));
+  }
+
+  @Test
+  public void successResetsFailures() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker();
+    for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD - 1; i++) {
+      breaker.onFailure(0);
+    }
+    breaker.onSuccess();
+    breaker.onFailure(0);
+    assertFalse(breaker.isOpen());
+  }
+
+  @Test
+  public void letsOneProbeThroughPerOpenPeriod() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker();
+    for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+      breaker.onFailure(0);
+    }
+    long later = CircuitBreaker.OPEN_MS;
+    assertTrue(breaker.allowRequest(later));
+    assertFalse(breaker.allowRequest(later + 1));
+
+    // A failed probe opens the circuit again at once
+    breaker.onFailure(later + 100);
+    assertFalse(breaker.allowRequest(later + CircuitBreaker.OPEN_MS));
+    assertTrue(breaker.allowRequest(later + 100 + CircuitBreaker.OPEN_MS));
+
+    breaker.onSuccess();
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest(later + 101 + CircuitBreaker.OPEN_MS));
+  }
+
+  @Test
+  public void classifiesHostFailures() throws Exception {
+    assertTrue(CircuitBreaker.isHostFailure(new TimeoutError(), true));
+    assertTrue(CircuitBreaker.isHostFailure(new NetworkError(), true));
+    assertTrue(CircuitBreaker.isHostFailure(new NoConnectionError(), true));
+    assertFalse(CircuitBreaker.isHostFailure(new NoConnectionError(), false));
+    assertTrue(CircuitBreaker.isHostFailure(new ServerError(new NetworkResponse(503, null, null, false)), true));
+    assertFalse(CircuitBreaker.isHostFailure(new ServerError(new NetworkResponse(404, null, null, false)), true));
+    assertFalse(CircuitBreaker.isHostFailure(new ParseError(), true));
+    assertFalse(CircuitBreaker.isHostFailure(new CircuitOpenError("https://api.taiga.io"), true));
+  }
+
+  @Test
+  public void backoffGrowsWithJitter() throws Exception {
+    BackoffPolicy policy = new BackoffPolicy(5, 1000, 100, 350);
+    Random random = new Random(1);
+    for (int i = 0; i < 20; i++) {
+      long first = policy.getBackoffMs(1, random);
+      assertTrue(first >= 50 && first <= 100);
+      long second = policy.getBackoffMs(2, random);
+      assertTrue(second >= 100 && second <= 200);
+      long capped = policy.getBackoffMs(4, random);
+      assertTrue(capped >= 175 && capped <= 350);
+    }
+    assertEquals(0, BackoffPolicy.NONE.getBackoffMs(1, random));
+  }
+
+}
@@ -0,0 +1,51 @@
+package co.brianberg.taiga.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PageTest {
+
+  private static final List<String> ITEMS = Arrays.asList("a", "b");
+
+  @Test
+  public void readsPaginationHeaders() throws Exception {
+    Map<String, String> headers = new HashMap<>();
+    headers.put("X-Paginated", "true");
+    headers.put("X-Paginated-By", "2");
+    headers.put("X-Pagination-Count", "5");
+    headers.put("X-Pagination-Current", "2");
+    headers.put("X-Pagination-Next", "https://api.taiga.io/api/v1/timeline/project/1?page=3");
+    Page<String> page = Page.fromHeaders(ITEMS, headers, 1);
+    assertEquals(2, page.getNumber());
+    assertEquals(2, page.getPageSize());
+    assertEquals(5, page.getTotalCount());
+    assertTrue(page.hasNext());
+  }
+
+  @Test
+  public void lastPageHasNoNext() throws Exception {
+    Map<String, String> headers = new HashMap<>();
+    headers.put("x-paginated", "true");
+    headers.put("x-pagination-current", "3");
+    headers.put("x-pagination-next", "");
+    Page<String> page = Page.fromHeaders(ITEMS, headers, 3);
+    assertEquals(3, page.getNumber());
+    assertEquals(-1, page.getTotalCount());
+    assertFalse(page.hasNext());
+  }
+
+  @Test
+  public void unpaginatedResponseIsSinglePage() throws Exception {
+    Page<String> page = Page.fromHeaders(ITEMS, new HashMap<String, String>(), 1);
+    assertEquals(1, page.getNumber());
+    assertEquals(2, page.getTotalCount());
+    assertFalse(page.hasNext());
+  }
+
+}
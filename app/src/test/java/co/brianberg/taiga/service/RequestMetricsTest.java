@@ -0,0 +1,66 @@
+package co.brianberg.taiga.service;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class RequestMetricsTest {
+
+  @Test
+  public void endpointReplacesIdsAndDropsQuery() throws Exception {
+    assertEquals("GET /timeline/project/{id}",
+        RequestMetrics.endpointOf(0, Taiga.BASE_URL + "/timeline/project/42?page_size=20&page=3"));
+    assertEquals("GET /projects", RequestMetrics.endpointOf(0, Taiga.BASE_URL + "/projects?member=7"));
+    assertEquals("POST /auth", RequestMetrics.endpointOf(1, Taiga.BASE_URL + "/auth"));
+    assertEquals("GET /projects/{id}", RequestMetrics.endpointOf(0, "http://localhost:8080/projects/1"));
+    assertEquals("GET /", RequestMetrics.endpointOf(0, "http://localhost:8080"));
+  }
+
+  @Test
+  public void histogramPercentiles() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 90; i++) {
+      histogram.record(40);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(700);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(106, histogram.getMean());
+    assertEquals(50, histogram.getPercentile(50));
+    assertEquals(50, histogram.getPercentile(90));
+    assertEquals(700, histogram.getPercentile(99));
+    assertEquals(700, histogram.getMax());
+  }
+
+  @Test
+  public void recordsPerEndpoint() throws Exception {
+    RequestMetrics metrics = new RequestMetrics();
+    metrics.recordResponse("GET /projects", 5, 100, 20, 130, 2048);
+    metrics.recordResponse("GET /projects", 15, 300, 40, 360, 0);
+    metrics.recordError("GET /projects", true);
+    metrics.recordError("GET /auth", false);
+
+    RequestMetrics.EndpointStats stats = metrics.getStats("GET /projects");
+    assertEquals(2, stats.getResponseCount());
+    assertEquals(1, stats.getErrorCount());
+    assertEquals(1, stats.getTimeoutCount());
+    assertEquals(1024, stats.getMeanBytes());
+    assertEquals(2048, stats.getMaxBytes());
+    assertEquals(10, stats.getMeanQueueMs());
+    assertEquals(200, stats.getMeanNetworkMs());
+    assertEquals(30, stats.getMeanParseMs());
+    assertEquals(2, stats.getLatency().getCount());
+    assertEquals(2, metrics.getStats().size());
+
+    StringWriter report = new StringWriter();
+    metrics.dump(report);
+    assertTrue(report.toString().startsWith("GET /auth: responses=0 errors=1"));
+
+    metrics.reset();
+    assertNull(metrics.getStats("GET /projects"));
+  }
+
+}